@@ -0,0 +1,124 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.util.zip.ZipEntry;
+
+/**
+ * The compression of the uploaded archives.
+ */
+enum ArchiveCompression {
+
+    /**
+     * No compression, which costs no CPU time on both sides but sends the whole content
+     */
+    STORED,
+
+    /**
+     * Deflate compression, at the configured level
+     */
+    DEFLATED,
+
+    /**
+     * STORED when the DAS runs on this host, where the bytes saved cost more than the deflating and
+     * the inflating, or for a small archive, which takes a few round trips either way. DEFLATED otherwise.
+     */
+    AUTO;
+
+    /**
+     * The content size up to which AUTO does not compress
+     */
+    static final long AUTO_STORED_SIZE = 256 * 1024;
+
+    static ArchiveCompression fromString(String compression) {
+        for (ArchiveCompression value : values()) {
+            if (value.name().equalsIgnoreCase(compression)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Resolve the ZIP method of an archive
+     *
+     * @param localHost
+     *     true if the DAS runs on this host
+     *
+     * @return {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     */
+    int getMethod(Archive<?> archive, boolean localHost) throws IOException {
+        if (this == STORED) {
+            return ZipEntry.STORED;
+        } else if (this == DEFLATED) {
+            return ZipEntry.DEFLATED;
+        }
+        return (localHost || getContentSize(archive, AUTO_STORED_SIZE) <= AUTO_STORED_SIZE)
+            ? ZipEntry.STORED : ZipEntry.DEFLATED;
+    }
+
+    /**
+     * Sum the content sizes of the archive entries, nested archives included,
+     * until the sum exceeds the limit
+     */
+    private static long getContentSize(Archive<?> archive, long limit) throws IOException {
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        for (Node node : archive.getContent().values()) {
+            Asset asset = node.getAsset();
+            if (asset instanceof ArchiveAsset) {
+                size += getContentSize(((ArchiveAsset) asset).getArchive(), limit - size);
+            } else if (asset != null) {
+                InputStream input = asset.openStream();
+                try {
+                    for (int read = input.read(buffer); read != -1 && size <= limit; read = input.read(buffer)) {
+                        size += read;
+                    }
+                } finally {
+                    input.close();
+                }
+            }
+            if (size > limit) {
+                break;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return true if the host is an address of this host
+     */
+    static boolean isLocalHost(String host) {
+        try {
+            InetAddress address = InetAddress.getByName(host);
+            return address.isLoopbackAddress() || address.isAnyLocalAddress()
+                || NetworkInterface.getByInetAddress(address) != null;
+        } catch (IOException e) {
+            // an unknown host, or its interface can not be looked up
+            return false;
+        }
+    }
+}
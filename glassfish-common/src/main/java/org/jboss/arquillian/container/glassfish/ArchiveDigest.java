@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ArchivePath;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes the digest of the content of an archive: the path and the bytes of
+ * each entry, in path order.
+ * <p>
+ * The exported ZIP itself can not be digested, as the ZIP exporter stamps every
+ * entry with the time of the export. For the same reason nested archives are
+ * digested by their content.
+ */
+final class ArchiveDigest {
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private ArchiveDigest() {
+    }
+
+    /**
+     * @return the hex digest of the archive content
+     */
+    static String of(Archive<?> archive) {
+        MessageDigest digest = createDigest();
+        try {
+            update(digest, archive, new byte[8192]);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the content of " + archive.getName(), e);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return the hex digest of the content of an archive entry
+     */
+    static String of(Asset asset) throws IOException {
+        MessageDigest digest = createDigest();
+        update(digest, asset, new byte[8192]);
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported by the JVM", e);
+        }
+    }
+
+    private static void update(MessageDigest digest, Archive<?> archive, byte[] buffer) throws IOException {
+        Map<ArchivePath, Node> content = new TreeMap<ArchivePath, Node>(archive.getContent());
+        for (Map.Entry<ArchivePath, Node> entry : content.entrySet()) {
+            digest.update(entry.getKey().get().getBytes("UTF-8"));
+            digest.update((byte) 0);
+
+            long length = update(digest, entry.getValue().getAsset(), buffer);
+            // the length separates the content of the entry from the path of the next one
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                digest.update((byte) (length >>> shift));
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes digested, 0 for a directory or a nested archive
+     */
+    private static long update(MessageDigest digest, Asset asset, byte[] buffer) throws IOException {
+        long length = 0;
+        if (asset instanceof ArchiveAsset) {
+            update(digest, ((ArchiveAsset) asset).getArchive(), buffer);
+        } else if (asset != null) {
+            InputStream input = asset.openStream();
+            try {
+                for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                    digest.update(buffer, 0, read);
+                    length += read;
+                }
+            } finally {
+                input.close();
+            }
+        }
+        return length;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.shrinkwrap.api.Archive;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The archive entity of a deploy request.
+ * <p>
+ * The archive is exported as a ZIP straight into the request stream while the
+ * request is sent, so no copy of the archive is held in memory. The export is
+ * coalesced into writes of the chunk size, each of them sent as one chunk of
+ * the chunked transfer encoding.
+ */
+class ArchiveStreamingOutput implements StreamingOutput {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final Archive<?> archive;
+
+    private final ZipArchiveWriter writer;
+
+    private final int chunkSize;
+
+    /**
+     * @param archive
+     *     the archive to upload
+     * @param writer
+     *     the writer of the archive, with its compression
+     * @param chunkSize
+     *     the size of the writes to the request stream, 0 for the default buffer size
+     */
+    ArchiveStreamingOutput(Archive<?> archive, ZipArchiveWriter writer, int chunkSize) {
+        this.archive = archive;
+        this.writer = writer;
+        this.chunkSize = (chunkSize > 0) ? chunkSize : DEFAULT_BUFFER_SIZE;
+    }
+
+    public void write(OutputStream output) throws IOException {
+        OutputStream chunks = new BufferedOutputStream(new EntityOutputStream(output), chunkSize);
+        writer.write(archive, chunks);
+        chunks.flush();
+    }
+
+    /**
+     * Passes the writes through to the request stream, which is left open for
+     * the rest of the multipart body
+     */
+    private static class EntityOutputStream extends FilterOutputStream {
+
+        EntityOutputStream(OutputStream output) {
+            super(output);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
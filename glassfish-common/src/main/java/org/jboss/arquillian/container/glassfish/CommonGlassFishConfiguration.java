@@ -17,6 +17,7 @@
 package org.jboss.arquillian.container.glassfish;
 
 import org.jboss.arquillian.container.glassfish.clientutils.GlassFishClient;
+import org.jboss.arquillian.container.glassfish.clientutils.ResponseFormat;
 import org.jboss.arquillian.container.spi.ConfigurationException;
 import org.jboss.arquillian.container.spi.client.container.ContainerConfiguration;
 import org.jboss.arquillian.container.spi.client.deployment.Validate;
@@ -53,6 +54,50 @@ public class CommonGlassFishConfiguration implements ContainerConfiguration {
 
     private int retries = 5;
 
+    private int maxConnections = 8;
+
+    private int connectionIdleTimeoutMs = 30000;
+
+    private String responseFormat = "xml";
+
+    private int discoveryThreads = 4;
+
+    private String topologyCacheFile = null;
+
+    private boolean dottedNameDiscovery = false;
+
+    private int asyncThreads = 2;
+
+    private int maxParallelDeployments = 4;
+
+    private int uploadChunkSize = 0;
+
+    private boolean reuseIdenticalDeployments = false;
+
+    private String deploymentDirectory = null;
+
+    private boolean explodedDeployment = false;
+
+    private String archiveCompression = "deflated";
+
+    private int compressionLevel = -1;
+
+    private int moduleResolutionThreads = 4;
+
+    private boolean detachedDeployment = false;
+
+    private int detachedDeploymentTimeoutMs = 600000;
+
+    private boolean deploymentProgress = false;
+
+    private boolean hoistLibraries = false;
+
+    private String deployProfile = null;
+
+    private int probeConnectTimeoutMs = 500;
+
+    private int probeReadTimeoutMs = 2000;
+
     public CommonGlassFishConfiguration() {
         super();
     }
@@ -213,12 +258,16 @@ public class CommonGlassFishConfiguration implements ContainerConfiguration {
 
     /**
      * @param waitTimeMs
-     *     Wait for next retries.
+     *     The longest interval between two probes of a starting server.
      */
     public void setWaitTimeMs(int waitTimeMs) {
         this.waitTimeMs = waitTimeMs;
     }
 
+    /**
+     * @deprecated no longer used, see {@link #setRetries(int)}
+     */
+    @Deprecated
     public int getRetries() {
         return retries;
     }
@@ -226,11 +275,317 @@ public class CommonGlassFishConfiguration implements ContainerConfiguration {
     /**
      * @param retries
      *     Number of times need to poll.
+     *
+     * @deprecated no longer used. The start of the managed container waits up to its
+     * startupTimeoutMs instead of retries times waitTimeMs.
      */
+    @Deprecated
     public void setRetries(int retries) {
         this.retries = retries;
     }
 
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @param maxConnections
+     *     Maximum number of persistent connections the REST client keeps open to the DAS.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public int getConnectionIdleTimeoutMs() {
+        return connectionIdleTimeoutMs;
+    }
+
+    /**
+     * @param connectionIdleTimeoutMs
+     *     Time a pooled connection to the DAS may stay idle before it is closed.
+     */
+    public void setConnectionIdleTimeoutMs(int connectionIdleTimeoutMs) {
+        this.connectionIdleTimeoutMs = connectionIdleTimeoutMs;
+    }
+
+    public String getResponseFormat() {
+        return responseFormat;
+    }
+
+    /**
+     * @param responseFormat
+     *     Format of the management REST API responses: xml, json or auto.
+     *     The json responses are smaller, auto accepts either format and
+     *     lets the server choose. The default is xml.
+     */
+    public void setResponseFormat(String responseFormat) {
+        this.responseFormat = responseFormat;
+    }
+
+    public int getDiscoveryThreads() {
+        return discoveryThreads;
+    }
+
+    /**
+     * @param discoveryThreads
+     *     Maximum number of cluster instances whose addresses and ports are
+     *     resolved concurrently on start-up.
+     */
+    public void setDiscoveryThreads(int discoveryThreads) {
+        this.discoveryThreads = discoveryThreads;
+    }
+
+    public String getTopologyCacheFile() {
+        return topologyCacheFile;
+    }
+
+    /**
+     * @param topologyCacheFile
+     *     Optional file caching the node addresses discovered on start-up.
+     *     The following runs against the same admin host, port and target
+     *     reuse them after checking the GlassFish version and a digest of
+     *     the dotted names of the target configuration, the servers, the
+     *     nodes and the cluster with the DAS, instead of running the whole
+     *     discovery. Requires dottedNameDiscovery.
+     */
+    public void setTopologyCacheFile(String topologyCacheFile) {
+        this.topologyCacheFile = topologyCacheFile;
+    }
+
+    public boolean isDottedNameDiscovery() {
+        return dottedNameDiscovery;
+    }
+
+    /**
+     * @param dottedNameDiscovery
+     *     Flag indicating the listeners, protocols and system properties of the
+     *     target configuration are fetched on start-up by a single dotted-name
+     *     get request, instead of one request per resource. Required by the
+     *     topology cache.
+     */
+    public void setDottedNameDiscovery(boolean dottedNameDiscovery) {
+        this.dottedNameDiscovery = dottedNameDiscovery;
+    }
+
+    public int getAsyncThreads() {
+        return asyncThreads;
+    }
+
+    /**
+     * @param asyncThreads
+     *     Number of threads running the asynchronous requests of the
+     *     GlassFish client, like the deployments started with doDeployAsync.
+     */
+    public void setAsyncThreads(int asyncThreads) {
+        this.asyncThreads = asyncThreads;
+    }
+
+    public int getMaxParallelDeployments() {
+        return maxParallelDeployments;
+    }
+
+    /**
+     * @param maxParallelDeployments
+     *     Maximum number of archives deployed at the same time, when several
+     *     archives are deployed together.
+     */
+    public void setMaxParallelDeployments(int maxParallelDeployments) {
+        this.maxParallelDeployments = maxParallelDeployments;
+    }
+
+    public int getUploadChunkSize() {
+        return uploadChunkSize;
+    }
+
+    /**
+     * @param uploadChunkSize
+     *     Size in bytes of the chunks the archive is uploaded in, with chunked transfer
+     *     encoding, while it is exported. Zero buffers the whole upload to send its length,
+     *     by default, as some proxies and older DAS versions do not accept chunked requests.
+     */
+    public void setUploadChunkSize(int uploadChunkSize) {
+        this.uploadChunkSize = uploadChunkSize;
+    }
+
+    public boolean isReuseIdenticalDeployments() {
+        return reuseIdenticalDeployments;
+    }
+
+    /**
+     * @param reuseIdenticalDeployments
+     *     Flag to leave the applications deployed until the container is stopped, and to skip
+     *     the deployment of an archive whose content is already deployed under the same name.
+     */
+    public void setReuseIdenticalDeployments(boolean reuseIdenticalDeployments) {
+        this.reuseIdenticalDeployments = reuseIdenticalDeployments;
+    }
+
+    public String getDeploymentDirectory() {
+        return deploymentDirectory;
+    }
+
+    /**
+     * @param deploymentDirectory
+     *     Directory shared with the DAS, at the same path, where the archives are exported
+     *     to be deployed from their path instead of being uploaded.
+     */
+    public void setDeploymentDirectory(String deploymentDirectory) {
+        this.deploymentDirectory = deploymentDirectory;
+    }
+
+    public boolean isExplodedDeployment() {
+        return explodedDeployment;
+    }
+
+    /**
+     * @param explodedDeployment
+     *     Flag to write the archives as directory trees in the deployment directory, where
+     *     the later deployments of an archive only rewrite the files which changed.
+     */
+    public void setExplodedDeployment(boolean explodedDeployment) {
+        this.explodedDeployment = explodedDeployment;
+    }
+
+    public String getArchiveCompression() {
+        return archiveCompression;
+    }
+
+    /**
+     * @param archiveCompression
+     *     The compression of the archives: stored, deflated, or auto to store the archives
+     *     deployed to a DAS on this host and the small archives, and to deflate the others.
+     */
+    public void setArchiveCompression(String archiveCompression) {
+        this.archiveCompression = archiveCompression;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @param compressionLevel
+     *     The level of the deflated archives, from 0 to 9, or -1 for the default level.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        this.compressionLevel = compressionLevel;
+    }
+
+    public int getModuleResolutionThreads() {
+        return moduleResolutionThreads;
+    }
+
+    /**
+     * @param moduleResolutionThreads
+     *     Maximum number of web modules of a deployed EAR whose servlets are
+     *     listed concurrently.
+     */
+    public void setModuleResolutionThreads(int moduleResolutionThreads) {
+        this.moduleResolutionThreads = moduleResolutionThreads;
+    }
+
+    public boolean isDetachedDeployment() {
+        return detachedDeployment;
+    }
+
+    /**
+     * @param detachedDeployment
+     *     Flag to deploy by a detached command on GlassFish 4 or later, and poll the
+     *     job of the deployment until it completes, instead of holding the deploy request
+     *     open for the whole deployment. Older servers are deployed synchronously.
+     */
+    public void setDetachedDeployment(boolean detachedDeployment) {
+        this.detachedDeployment = detachedDeployment;
+    }
+
+    public int getDetachedDeploymentTimeoutMs() {
+        return detachedDeploymentTimeoutMs;
+    }
+
+    /**
+     * @param detachedDeploymentTimeoutMs
+     *     The longest time to poll the job of a detached deployment, in milliseconds. The
+     *     deployment fails with the id of the job once it is exceeded.
+     */
+    public void setDetachedDeploymentTimeoutMs(int detachedDeploymentTimeoutMs) {
+        this.detachedDeploymentTimeoutMs = detachedDeploymentTimeoutMs;
+    }
+
+    public boolean isDeploymentProgress() {
+        return deploymentProgress;
+    }
+
+    /**
+     * @param deploymentProgress
+     *     Flag to stream the progress of the deployments on GlassFish 4 or later as server-sent
+     *     events, and log the duration of each phase of the deployments. Can't be used together
+     *     with detachedDeployment.
+     */
+    public void setDeploymentProgress(boolean deploymentProgress) {
+        this.deploymentProgress = deploymentProgress;
+    }
+
+    public boolean isHoistLibraries() {
+        return hoistLibraries;
+    }
+
+    /**
+     * @param hoistLibraries
+     *     Flag to move the WEB-INF/lib jars of the web archives into domain-dir/lib/applibs,
+     *     named after the digest of their content and added once per server lifetime, and to
+     *     deploy the archives without them, referencing them by the libraries field. Only the
+     *     plain jars are hoisted: the jars holding web fragments, CDI, JPA, EJB or JSF
+     *     descriptors, web resources, tag libraries, service providers of javax or jakarta
+     *     interfaces, or classes annotated by javax or jakarta annotations stay in the archives.
+     *     The hoisted jars are loaded by the applibs class loader shared by all the deployments,
+     *     so their static state leaks from one deployment to the next. They are removed from
+     *     applibs when the container stops.
+     */
+    public void setHoistLibraries(boolean hoistLibraries) {
+        this.hoistLibraries = hoistLibraries;
+    }
+
+    public String getDeployProfile() {
+        return deployProfile;
+    }
+
+    /**
+     * @param deployProfile
+     *     The options of the deploy command which drive the deploy time: fast-test turns
+     *     precompilejsp, verify, availabilityenabled, keepstate, lbenabled and generatermistubs
+     *     off, production-like turns them on but keepstate. Without a profile the options are
+     *     left to the defaults of the server.
+     */
+    public void setDeployProfile(String deployProfile) {
+        this.deployProfile = deployProfile;
+    }
+
+    public int getProbeConnectTimeoutMs() {
+        return probeConnectTimeoutMs;
+    }
+
+    /**
+     * @param probeConnectTimeoutMs
+     *     The connect timeout of the probe telling whether the DAS is running, in milliseconds.
+     *     A DAS not accepting the connection in time is reported down.
+     */
+    public void setProbeConnectTimeoutMs(int probeConnectTimeoutMs) {
+        this.probeConnectTimeoutMs = probeConnectTimeoutMs;
+    }
+
+    public int getProbeReadTimeoutMs() {
+        return probeReadTimeoutMs;
+    }
+
+    /**
+     * @param probeReadTimeoutMs
+     *     The read timeout of the probe telling whether the DAS is running, in milliseconds.
+     *     A DAS accepting the connection but not answering in time is reported starting.
+     */
+    public void setProbeReadTimeoutMs(int probeReadTimeoutMs) {
+        this.probeReadTimeoutMs = probeReadTimeoutMs;
+    }
+
     /**
      * Validates if current configuration is valid, that is if all required
      * properties are set and have correct values
@@ -240,5 +595,50 @@ public class CommonGlassFishConfiguration implements ContainerConfiguration {
             Validate.notNull(getAdminUser(), "adminUser must be specified to use authorisation");
             Validate.notNull(getAdminPassword(), "adminPassword must be specified to use authorisation");
         }
+        if (getMaxConnections() < 1) {
+            throw new ConfigurationException("maxConnections must be a positive number");
+        }
+        if (getDiscoveryThreads() < 1) {
+            throw new ConfigurationException("discoveryThreads must be a positive number");
+        }
+        if (getAsyncThreads() < 1) {
+            throw new ConfigurationException("asyncThreads must be a positive number");
+        }
+        if (getMaxParallelDeployments() < 1) {
+            throw new ConfigurationException("maxParallelDeployments must be a positive number");
+        }
+        if (getTopologyCacheFile() != null && !isDottedNameDiscovery()) {
+            throw new ConfigurationException("dottedNameDiscovery must be enabled to use topologyCacheFile");
+        }
+        if (isDetachedDeployment() && isDeploymentProgress()) {
+            throw new ConfigurationException("detachedDeployment and deploymentProgress can't be used together");
+        }
+        if (getDetachedDeploymentTimeoutMs() < 1) {
+            throw new ConfigurationException("detachedDeploymentTimeoutMs must be a positive number");
+        }
+        if (getUploadChunkSize() < 0) {
+            throw new ConfigurationException("uploadChunkSize must not be negative");
+        }
+        if (isExplodedDeployment() && getDeploymentDirectory() == null) {
+            throw new ConfigurationException("deploymentDirectory must be specified to use exploded deployments");
+        }
+        if (getDeployProfile() != null && DeployProfile.fromString(getDeployProfile()) == null) {
+            throw new ConfigurationException("deployProfile must be one of fast-test or production-like");
+        }
+        if (getProbeConnectTimeoutMs() < 1 || getProbeReadTimeoutMs() < 1) {
+            throw new ConfigurationException("probeConnectTimeoutMs and probeReadTimeoutMs must be positive numbers");
+        }
+        if (getModuleResolutionThreads() < 1) {
+            throw new ConfigurationException("moduleResolutionThreads must be a positive number");
+        }
+        if (ArchiveCompression.fromString(getArchiveCompression()) == null) {
+            throw new ConfigurationException("archiveCompression must be one of stored, deflated or auto");
+        }
+        if (getCompressionLevel() < -1 || getCompressionLevel() > 9) {
+            throw new ConfigurationException("compressionLevel must be a number from 0 to 9, or -1");
+        }
+        if (ResponseFormat.fromString(getResponseFormat()) == null) {
+            throw new ConfigurationException("responseFormat must be one of xml, json or auto");
+        }
     }
 }
@@ -16,8 +16,11 @@
  */
 package org.jboss.arquillian.container.glassfish;
 
+import com.sun.jersey.core.header.FormDataContentDisposition;
+import com.sun.jersey.multipart.FormDataBodyPart;
 import com.sun.jersey.multipart.FormDataMultiPart;
-import com.sun.jersey.multipart.file.StreamDataBodyPart;
+import org.jboss.arquillian.container.glassfish.clientutils.DASState;
+import org.jboss.arquillian.container.glassfish.clientutils.DeploymentProgressListener;
 import org.jboss.arquillian.container.glassfish.clientutils.GlassFishClient;
 import org.jboss.arquillian.container.glassfish.clientutils.GlassFishClientException;
 import org.jboss.arquillian.container.glassfish.clientutils.GlassFishClientService;
@@ -26,16 +29,44 @@ import org.jboss.arquillian.container.spi.client.container.LifecycleException;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.ProtocolMetaData;
 import org.jboss.shrinkwrap.api.Archive;
-import org.jboss.shrinkwrap.api.exporter.ZipExporter;
 
 import javax.ws.rs.core.MediaType;
-import java.io.InputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
 
 /**
  * A class to aid in deployment and undeployment of archives involving a GlassFish container.
  * This class encapsulates the operations involving the GlassFishClient class.
  * Extracted from the GlassFish 3.1 remote container.
+ * <p>
+ * The manager is reentrant: the deployment state of each archive is kept in a
+ * concurrent registry, so several archives may be deployed and undeployed from
+ * parallel threads.
+ * <p>
+ * When identical deployments are reused, each application is deployed with the
+ * digest of its archive content as an application property, and is left deployed
+ * until the manager is stopped. Deploying an archive with the same name and
+ * content again skips the upload and reuses the HTTP context of the application.
  *
  * @param <C>
  *     A class of type {@link CommonGlassFishConfiguration}
@@ -44,24 +75,61 @@ import java.util.logging.Logger;
  */
 public class CommonGlassFishManager<C extends CommonGlassFishConfiguration> {
 
+    /**
+     * The failures of the DAS not finding the path of an archive, which mention the path
+     */
+    private static final Pattern PATH_NOT_FOUND =
+        Pattern.compile("(?i)not found|does not exist|doesn't exist|invalid path|no such file");
+
     private static final Logger log = Logger.getLogger(CommonGlassFishManager.class.getName());
 
     private static final String DELETE_OPERATION = "__deleteoperation";
 
+    /**
+     * The application property holding the digest of the archive content
+     */
+    private static final String DIGEST_PROPERTY = "arquillianDigest";
+
     private C configuration;
 
     private GlassFishClient glassFishClient;
 
-    private String deploymentName;
+    /**
+     * The archives deployed, or being deployed, by archive name
+     */
+    private final ConcurrentMap<String, Deployment> deployments = new ConcurrentHashMap<String, Deployment>();
+
+    /**
+     * The applications left deployed to be reused, by deployment name
+     */
+    private final ConcurrentMap<String, RetainedApplication> retainedApplications =
+        new ConcurrentHashMap<String, RetainedApplication>();
+
+    /**
+     * The archives are deployed from the deployment directory, until the DAS fails to deploy from it
+     */
+    private volatile boolean localPathDeployment;
+
+    /**
+     * The DAS runs on this host, resolved on the first deployment compressed automatically
+     */
+    private volatile Boolean localAdminHost;
+
+    /**
+     * The libraries hoisted into applibs, since the server was started
+     */
+    private volatile LibraryCache libraryCache;
 
     public CommonGlassFishManager(C configuration) {
         this.configuration = configuration;
+        this.localPathDeployment = configuration.getDeploymentDirectory() != null;
 
         // Start up the GlassFishClient service layer
         this.glassFishClient = new GlassFishClientService(configuration);
     }
 
     public void start() throws LifecycleException {
+        libraryCache = new LibraryCache(glassFishClient, configuration);
         try {
             glassFishClient.startUp();
         } catch (GlassFishClientException e) {
@@ -70,30 +138,166 @@ public class CommonGlassFishManager<C extends CommonGlassFishConfiguration> {
         }
     }
 
+    public void stop() {
+        // the undeployments deferred to reuse the applications
+        for (String name : retainedApplications.keySet()) {
+            try {
+                undeployApplication(name);
+            } catch (RuntimeException e) {
+                log.warning("Could not undeploy " + name + ": " + e.getMessage());
+            }
+        }
+        retainedApplications.clear();
+
+        if (configuration.isHoistLibraries()) {
+            libraryCache.removeLibraries();
+        }
+
+        log.info("DAS connection pool: " + glassFishClient.getConnectionPoolStatistics());
+        glassFishClient.shutDown();
+    }
+
     public ProtocolMetaData deploy(Archive<?> archive) throws DeploymentException {
         if (archive == null) {
             throw new IllegalArgumentException("archive must not be null");
         }
 
         final String archiveName = archive.getName();
+        final Deployment state = new Deployment(createDeploymentName(archiveName));
+        if (deployments.putIfAbsent(archiveName, state) != null) {
+            throw new DeploymentException("Could not deploy " + archiveName + ", it is already deployed");
+        }
 
         final ProtocolMetaData protocolMetaData = new ProtocolMetaData();
 
+        boolean deployed = false;
+        String digest = null;
+        RetainedApplication retained = null;
         try {
-            InputStream deployment = archive.as(ZipExporter.class).exportAsInputStream();
+            if (configuration.isReuseIdenticalDeployments()) {
+                digest = ArchiveDigest.of(archive);
+                retained = retainedApplications.remove(state.getName());
+                if (retained != null && digest.equals(retained.getDigest())
+                    && digest.equals(glassFishClient.getApplicationProperty(state.getName(), DIGEST_PROPERTY))) {
+                    log.fine("Skipping the deployment of " + archiveName + ", its content is already deployed");
+                    retainedApplications.put(state.getName(), retained);
+                    protocolMetaData.addContext(retained.getHttpContext());
+                    deployed = true;
+                    return protocolMetaData;
+                }
+            }
 
-            // Build up the POST form to send to Glassfish
-            final FormDataMultiPart form = new FormDataMultiPart();
-            form.bodyPart(new StreamDataBodyPart("id", deployment, archiveName));
+            // Deploy the libraries of the archive from applibs, they are uploaded once
+            Archive<?> deployedArchive = archive;
+            String libraries = configuration.getLibraries();
+            if (configuration.isHoistLibraries()) {
+                LibraryCache.HoistedArchive hoisted = libraryCache.hoist(archive);
+                deployedArchive = hoisted.getArchive();
+                for (String library : hoisted.getLibraries()) {
+                    libraries = (libraries != null) ? libraries + "," + library : library;
+                }
+            }
 
-            deploymentName = createDeploymentName(archiveName);
-            addDeployFormFields(deploymentName, form);
+            // Do Deploy the application on the remote GlassFish, from its path if the DAS can see it
+            long start = System.currentTimeMillis();
+            HTTPContext httpContext = null;
+            if (localPathDeployment) {
+                httpContext = deployFromPath(deployedArchive, state.getName(), digest, libraries, retained != null);
+            }
+            if (httpContext == null) {
+                // The archive is exported into the request stream while the request is sent
+                FormDataBodyPart deployment = new FormDataBodyPart(
+                    FormDataContentDisposition.name("id").fileName(archiveName).build(),
+                    new ArchiveStreamingOutput(deployedArchive, createZipWriter(deployedArchive),
+                        configuration.getUploadChunkSize()),
+                    MediaType.APPLICATION_OCTET_STREAM_TYPE);
+                httpContext = glassFishClient.doDeploy(state.getName(),
+                    createDeployForm(deployment, state.getName(), digest, libraries, retained != null));
 
-            // Do Deploy the application on the remote GlassFish
-            HTTPContext httpContext = glassFishClient.doDeploy(deploymentName, form);
+                if (localPathDeployment) {
+                    localPathDeployment = false;
+                    log.info("The deployment directory " + configuration.getDeploymentDirectory()
+                        + " is not visible to the DAS, the archives are uploaded");
+                }
+            }
+            DeployProfile profile = DeployProfile.fromString(configuration.getDeployProfile());
+            log.info("Deployed " + archiveName + " in " + (System.currentTimeMillis() - start) + " ms"
+                + ((profile != null) ? " with the " + profile + " profile " + profile.getOptions() : ""));
             protocolMetaData.addContext(httpContext);
+            if (digest != null) {
+                retainedApplications.put(state.getName(), new RetainedApplication(digest, httpContext));
+            }
+            deployed = true;
         } catch (GlassFishClientException e) {
             throw new DeploymentException("Could not deploy " + archiveName, e);
+        } catch (IOException e) {
+            throw new DeploymentException("Could not deploy " + archiveName, e);
+        } finally {
+            if (!deployed) {
+                deployments.remove(archiveName, state);
+                if (retained != null) {
+                    // the previous application may still be deployed, it is undeployed on stop
+                    retainedApplications.putIfAbsent(state.getName(), retained);
+                }
+            }
+        }
+        return protocolMetaData;
+    }
+
+    /**
+     * Deploy several archives concurrently, at most maxParallelDeployments at a time,
+     * so the archives are deployed in about the time of the slowest one.
+     * <p>
+     * All the deployments are awaited, even if some of them fail. The archives
+     * deployed successfully stay deployed.
+     *
+     * @param archives
+     *     the archives to deploy
+     *
+     * @return the metadata of each archive by archive name, in the order of the archives
+     *
+     * @throws DeploymentException
+     *     the failure of the first archive that could not be deployed
+     */
+    public Map<String, ProtocolMetaData> deployAll(Collection<? extends Archive<?>> archives)
+        throws DeploymentException {
+        Map<String, ProtocolMetaData> protocolMetaData = new LinkedHashMap<String, ProtocolMetaData>();
+        if (archives.isEmpty()) {
+            return protocolMetaData;
+        }
+
+        int threads = Math.min(configuration.getMaxParallelDeployments(), archives.size());
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new DeploymentThreadFactory());
+        try {
+            List<Future<ProtocolMetaData>> results = new ArrayList<Future<ProtocolMetaData>>();
+            for (final Archive<?> archive : archives) {
+                results.add(executor.submit(new Callable<ProtocolMetaData>() {
+                    public ProtocolMetaData call() throws DeploymentException {
+                        return deploy(archive);
+                    }
+                }));
+            }
+
+            DeploymentException failure = null;
+            int i = 0;
+            for (Archive<?> archive : archives) {
+                try {
+                    protocolMetaData.put(archive.getName(), results.get(i++).get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = (e.getCause() instanceof DeploymentException) ? (DeploymentException) e.getCause()
+                            : new DeploymentException("Could not deploy " + archive.getName(), e.getCause());
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DeploymentException("Interrupted while deploying the archives", e);
+        } finally {
+            executor.shutdownNow();
         }
         return protocolMetaData;
     }
@@ -104,23 +308,145 @@ public class CommonGlassFishManager<C extends CommonGlassFishConfiguration> {
             throw new IllegalArgumentException("archive must not be null");
         } else {
 
-            deploymentName = createDeploymentName(archive.getName());
+            final Deployment state = deployments.remove(archive.getName());
+            final String deploymentName = (state != null) ? state.getName() : createDeploymentName(archive.getName());
+            if (retainedApplications.containsKey(deploymentName)) {
+                log.fine("Deferring the undeployment of " + archive.getName() + " to reuse it");
+                return;
+            }
             try {
-                // Build up the POST form to send to Glassfish
-                final FormDataMultiPart form = new FormDataMultiPart();
-                form.field("target", this.configuration.getTarget(), MediaType.TEXT_PLAIN_TYPE);
-                form.field("operation", DELETE_OPERATION, MediaType.TEXT_PLAIN_TYPE);
-                glassFishClient.doUndeploy(this.deploymentName, form);
+                undeployApplication(deploymentName);
             } catch (GlassFishClientException e) {
                 throw new DeploymentException("Could not undeploy " + archive.getName(), e);
             }
         }
     }
 
+    /**
+     * Deploy an archive exported to the deployment directory, posting its path instead of its content.
+     * An exploded archive is kept in the deployment directory, to be updated by the next deployment.
+     * <p>
+     * Only the failures telling the DAS could not find the path fall back to the upload of the archive,
+     * the application failures are reported as they are, without deploying the archive a second time.
+     *
+     * @return the context of the application, or null if the archive must be uploaded
+     */
+    private HTTPContext deployFromPath(Archive<?> archive, String name, String digest, String libraries,
+        boolean force) throws DeploymentException {
+        String archiveName = archive.getName();
+        boolean exploded = configuration.isExplodedDeployment();
+        File file = null;
+        try {
+            if (exploded) {
+                ExplodedArchive explodedArchive = new ExplodedArchive(new File(configuration.getDeploymentDirectory(),
+                    name));
+                int written = explodedArchive.write(archive);
+                file = explodedArchive.getDirectory();
+                log.fine("Wrote " + written + " changed files of " + archiveName + " to " + file);
+            } else {
+                file = File.createTempFile("arquillian-", "-" + archiveName.substring(archiveName.lastIndexOf('/') + 1),
+                    new File(configuration.getDeploymentDirectory()));
+                OutputStream output = new FileOutputStream(file);
+                try {
+                    createZipWriter(archive).write(archive, output);
+                } finally {
+                    output.close();
+                }
+            }
+        } catch (IOException e) {
+            // nothing was sent to the DAS yet
+            log.warning("Could not export " + archiveName + " to " + configuration.getDeploymentDirectory()
+                + ", uploading it: " + e.getMessage());
+            deleteExportedArchive(file, exploded);
+            return null;
+        }
+
+        try {
+            FormDataBodyPart path = new FormDataBodyPart("id", file.getAbsolutePath());
+            return glassFishClient.doDeploy(name, createDeployForm(path, name, digest, libraries, force));
+        } catch (GlassFishClientException e) {
+            if (!isPathNotFound(e.getMessage(), file)) {
+                throw e;
+            }
+            log.warning("Could not deploy " + archiveName + " from " + file + ", uploading it: " + e.getMessage());
+            return null;
+        } finally {
+            deleteExportedArchive(file, exploded);
+        }
+    }
+
+    /**
+     * @return true if the failure of a deployment from a path tells the DAS could not find the path
+     */
+    private static boolean isPathNotFound(String message, File file) {
+        if (message == null || !PATH_NOT_FOUND.matcher(message).find()) {
+            return false;
+        }
+        return message.contains(file.getAbsolutePath()) || message.contains(file.getName())
+            || message.toLowerCase(Locale.ENGLISH).contains("archive path");
+    }
+
+    private static void deleteExportedArchive(File file, boolean exploded) {
+        // the DAS keeps its own copy of the deployed archive
+        if (!exploded && file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    /**
+     * Create the writer of an archive, with the configured compression
+     */
+    private ZipArchiveWriter createZipWriter(Archive<?> archive) throws IOException {
+        ArchiveCompression compression = ArchiveCompression.fromString(configuration.getArchiveCompression());
+        if (compression == ArchiveCompression.AUTO && localAdminHost == null) {
+            localAdminHost = ArchiveCompression.isLocalHost(configuration.getAdminHost());
+        }
+        int method = compression.getMethod(archive, Boolean.TRUE.equals(localAdminHost));
+        log.fine("Writing " + archive.getName() + ((method == ZipEntry.STORED) ? " stored" : " deflated"));
+        return new ZipArchiveWriter(method, configuration.getCompressionLevel());
+    }
+
+    private FormDataMultiPart createDeployForm(FormDataBodyPart archivePart, String name, String digest,
+        String libraries, boolean force) {
+        // Build up the POST form to send to Glassfish
+        final FormDataMultiPart form = new FormDataMultiPart();
+        form.bodyPart(archivePart);
+
+        addDeployFormFields(name, digest, libraries, form);
+        if (force) {
+            // replace the application left deployed with a different content
+            form.field("force", "true", MediaType.TEXT_PLAIN_TYPE);
+        }
+        return form;
+    }
+
+    private void undeployApplication(String deploymentName) {
+        // Build up the POST form to send to Glassfish
+        final FormDataMultiPart form = new FormDataMultiPart();
+        form.field("target", this.configuration.getTarget(), MediaType.TEXT_PLAIN_TYPE);
+        form.field("operation", DELETE_OPERATION, MediaType.TEXT_PLAIN_TYPE);
+        glassFishClient.doUndeploy(deploymentName, form);
+    }
+
+    /**
+     * Register a listener of the phases of the deployments, reported when deploymentProgress is set
+     */
+    public void addDeploymentProgressListener(DeploymentProgressListener listener) {
+        glassFishClient.addDeploymentProgressListener(listener);
+    }
+
+    public void removeDeploymentProgressListener(DeploymentProgressListener listener) {
+        glassFishClient.removeDeploymentProgressListener(listener);
+    }
+
     public boolean isDASRunning() {
         return glassFishClient.isDASRunning();
     }
 
+    public DASState getDASState() {
+        return glassFishClient.getDASState();
+    }
+
     private String createDeploymentName(String archiveName) {
         String correctedName = archiveName;
         if (correctedName.startsWith("/")) {
@@ -132,7 +458,7 @@ public class CommonGlassFishManager<C extends CommonGlassFishConfiguration> {
         return correctedName;
     }
 
-    private void addDeployFormFields(String name, FormDataMultiPart deployform) {
+    private void addDeployFormFields(String name, String digest, String libraries, FormDataMultiPart deployform) {
 
         // add the name field, the name is the archive filename without extension
         deployform.field("name", name, MediaType.TEXT_PLAIN_TYPE);
@@ -140,14 +466,26 @@ public class CommonGlassFishManager<C extends CommonGlassFishConfiguration> {
         // add the target field (the default is "server" - Admin Server)
         deployform.field("target", this.configuration.getTarget(), MediaType.TEXT_PLAIN_TYPE);
 
-        // add the libraries field (optional)
-        if (this.configuration.getLibraries() != null) {
-            deployform.field("libraries", this.configuration.getLibraries(), MediaType.TEXT_PLAIN_TYPE);
+        // add the libraries field (optional), with the hoisted libraries of the archive if any
+        if (libraries != null) {
+            deployform.field("libraries", libraries, MediaType.TEXT_PLAIN_TYPE);
         }
 
-        // add the properties field (optional)
-        if (this.configuration.getProperties() != null) {
-            deployform.field("properties", this.configuration.getProperties(), MediaType.TEXT_PLAIN_TYPE);
+        // add the properties field (optional), with the digest of the archive content if any
+        String properties = this.configuration.getProperties();
+        if (digest != null) {
+            properties = ((properties != null) ? properties + ":" : "") + DIGEST_PROPERTY + "=" + digest;
+        }
+        if (properties != null) {
+            deployform.field("properties", properties, MediaType.TEXT_PLAIN_TYPE);
+        }
+
+        // add the options of the deploy profile (optional)
+        DeployProfile profile = DeployProfile.fromString(this.configuration.getDeployProfile());
+        if (profile != null) {
+            for (Map.Entry<String, String> option : profile.getOptions().entrySet()) {
+                deployform.field(option.getKey(), option.getValue(), MediaType.TEXT_PLAIN_TYPE);
+            }
         }
 
         // add the type field (optional, the only valid value is "osgi", other values are ommited)
@@ -155,4 +493,63 @@ public class CommonGlassFishManager<C extends CommonGlassFishConfiguration> {
             deployform.field("type", this.configuration.getType(), MediaType.TEXT_PLAIN_TYPE);
         }
     }
+
+    /**
+     * The deployment state of an archive
+     */
+    private static class Deployment {
+
+        private final String name;
+
+        Deployment(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the name of the application on the server
+         */
+        String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * An application left deployed, with the digest of its archive content
+     */
+    private static class RetainedApplication {
+
+        private final String digest;
+
+        private final HTTPContext httpContext;
+
+        RetainedApplication(String digest, HTTPContext httpContext) {
+            this.digest = digest;
+            this.httpContext = httpContext;
+        }
+
+        String getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return the context resolved when the application was deployed
+         */
+        HTTPContext getHttpContext() {
+            return httpContext;
+        }
+    }
+
+    /**
+     * Creates the daemon threads deploying archives in parallel
+     */
+    private static class DeploymentThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "glassfish-deployment-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -0,0 +1,85 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Named sets of the deploy command options which drive the deploy time.
+ */
+enum DeployProfile {
+
+    /**
+     * The shortest deployment: no JSP precompilation, no verification, no RMI stubs, and no
+     * session availability, state retention or load balancer registration
+     */
+    FAST_TEST("fast-test",
+        "precompilejsp", "false",
+        "verify", "false",
+        "availabilityenabled", "false",
+        "keepstate", "false",
+        "lbenabled", "false",
+        "generatermistubs", "false"),
+
+    /**
+     * The deployment of a production server: the JSPs are precompiled, the archive is verified,
+     * the RMI stubs are generated, and the application is highly available and load balanced
+     */
+    PRODUCTION_LIKE("production-like",
+        "precompilejsp", "true",
+        "verify", "true",
+        "availabilityenabled", "true",
+        "keepstate", "false",
+        "lbenabled", "true",
+        "generatermistubs", "true");
+
+    private final String profileName;
+
+    private final Map<String, String> options;
+
+    DeployProfile(String profileName, String... options) {
+        this.profileName = profileName;
+        Map<String, String> map = new LinkedHashMap<String, String>();
+        for (int i = 0; i + 1 < options.length; i += 2) {
+            map.put(options[i], options[i + 1]);
+        }
+        this.options = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return the deploy command options of the profile, by name
+     */
+    Map<String, String> getOptions() {
+        return options;
+    }
+
+    @Override
+    public String toString() {
+        return profileName;
+    }
+
+    static DeployProfile fromString(String profile) {
+        for (DeployProfile value : values()) {
+            if (value.profileName.equalsIgnoreCase(profile)) {
+                return value;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ArchivePath;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An archive written as a directory tree, which GlassFish deploys in place.
+ * <p>
+ * The digest of each file written is recorded in an index next to the directory.
+ * When a later version of the archive is written to the same directory, only the
+ * files whose content changed are rewritten, and the files no longer in the
+ * archive are deleted.
+ * <p>
+ * The modules of an enterprise archive are exploded in the directories GlassFish
+ * expects, <code>web.war</code> in <code>web_war</code>. The modules are those listed
+ * by its application.xml, or without one the web archives, the resource adapters and
+ * the jars holding enterprise beans or an application client. The other nested
+ * archives, like the libraries, are written packed.
+ * <p>
+ * Used by the embedded container as well, which depends on this module without Jersey.
+ */
+public final class ExplodedArchive {
+
+    private static final String INDEX_SUFFIX = ".index";
+
+    private final File directory;
+
+    private final File indexFile;
+
+    public ExplodedArchive(File directory) {
+        this.directory = directory;
+        this.indexFile = new File(directory.getParentFile(), directory.getName() + INDEX_SUFFIX);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Write the archive to the directory, over the previous version of the archive if any
+     *
+     * @return the number of files written
+     */
+    public int write(Archive<?> archive) throws IOException {
+        createDirectory(directory);
+        Properties previous = loadIndex();
+        // an interrupted write must not leave the digests of files it may have overwritten
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Could not delete " + indexFile);
+        }
+
+        Properties current = new Properties();
+        int written = write(archive, "", previous, current);
+        for (String path : previous.stringPropertyNames()) {
+            if (current.containsKey(path)) {
+                continue;
+            }
+            if (path.endsWith("/")) {
+                deleteEmptyDirectories(path.substring(0, path.length() - 1), current);
+                continue;
+            }
+            File removed = new File(directory, path);
+            if (removed.isFile() && !removed.delete()) {
+                throw new IOException("Could not delete " + removed);
+            }
+            deleteEmptyDirectories(getParent(path), current);
+        }
+        storeIndex(current);
+        return written;
+    }
+
+    private int write(Archive<?> archive, String prefix, Properties previous, Properties current)
+        throws IOException {
+        Set<String> modules = archive.getName().endsWith(".ear") ? getModules(archive) : Collections.<String>emptySet();
+        int written = 0;
+        for (Map.Entry<ArchivePath, Node> entry : archive.getContent().entrySet()) {
+            String path = prefix + entry.getKey().get().substring(1);
+            Asset asset = entry.getValue().getAsset();
+            if (asset == null) {
+                // recorded, so that it is deleted once removed from the archive
+                current.setProperty(path + "/", "");
+                createDirectory(new File(directory, path));
+            } else if (asset instanceof ArchiveAsset && modules.contains(entry.getKey().get())) {
+                written += write(((ArchiveAsset) asset).getArchive(), getModuleDirectory(path) + "/", previous,
+                    current);
+            } else {
+                String digest = ArchiveDigest.of(asset);
+                current.setProperty(path, digest);
+                File file = new File(directory, path);
+                if (!digest.equals(previous.getProperty(path)) || !file.isFile()) {
+                    writeFile(asset, file);
+                    written++;
+                }
+            }
+        }
+        return written;
+    }
+
+    private static final Pattern MODULE_URI = Pattern.compile("<(?:web-uri|ejb|java|connector)>\\s*([^<]*?)\\s*</");
+
+    private static final String[] BEAN_ANNOTATIONS = {
+        "Ljavax/ejb/Stateless;", "Ljavax/ejb/Stateful;", "Ljavax/ejb/Singleton;", "Ljavax/ejb/MessageDriven;"};
+
+    /**
+     * @return the paths of the modules of an enterprise archive, the ones listed by its application.xml, or without
+     *     one its web archives, resource adapters, and the jars holding enterprise beans or an application client
+     */
+    private static Set<String> getModules(Archive<?> archive) throws IOException {
+        Set<String> modules = new HashSet<String>();
+        Node descriptor = archive.get("/META-INF/application.xml");
+        if (descriptor != null && descriptor.getAsset() != null) {
+            Matcher matcher = MODULE_URI.matcher(read(descriptor.getAsset()));
+            while (matcher.find()) {
+                modules.add("/" + matcher.group(1));
+            }
+            return modules;
+        }
+
+        for (Map.Entry<ArchivePath, Node> entry : archive.getContent().entrySet()) {
+            ArchivePath path = entry.getKey();
+            Asset asset = entry.getValue().getAsset();
+            if (!(asset instanceof ArchiveAsset) || path.getParent() == null || !"/".equals(path.getParent().get())) {
+                continue;
+            }
+            String name = path.get();
+            if (name.endsWith(".war") || name.endsWith(".rar")
+                || (name.endsWith(".jar") && isModuleJar(((ArchiveAsset) asset).getArchive()))) {
+                modules.add(name);
+            }
+        }
+        return modules;
+    }
+
+    private static boolean isModuleJar(Archive<?> jar) throws IOException {
+        if (jar.contains("/META-INF/ejb-jar.xml") || jar.contains("/META-INF/application-client.xml")) {
+            return true;
+        }
+        Node manifest = jar.get("/META-INF/MANIFEST.MF");
+        if (manifest != null && manifest.getAsset() != null && read(manifest.getAsset()).contains("Main-Class:")) {
+            return true;
+        }
+        for (Map.Entry<ArchivePath, Node> entry : jar.getContent().entrySet()) {
+            Asset asset = entry.getValue().getAsset();
+            if (asset == null || !entry.getKey().get().endsWith(".class")) {
+                continue;
+            }
+            // the descriptors are ASCII, which the modified UTF-8 of the constant pool leaves as is
+            String constants = read(asset);
+            for (String annotation : BEAN_ANNOTATIONS) {
+                if (constants.contains(annotation)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static String read(Asset asset) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        InputStream input = asset.openStream();
+        try {
+            byte[] buffer = new byte[8192];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                content.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+        return content.toString("ISO-8859-1");
+    }
+
+    /**
+     * Delete a directory left empty by the files removed from the archive, and its parents left empty in turn
+     */
+    private void deleteEmptyDirectories(String path, Properties current) throws IOException {
+        for (String dir = path; dir != null; dir = getParent(dir)) {
+            File file = new File(directory, dir);
+            String[] files = file.list();
+            if (current.containsKey(dir + "/") || files == null || files.length > 0) {
+                return;
+            }
+            if (!file.delete()) {
+                throw new IOException("Could not delete " + file);
+            }
+        }
+    }
+
+    /**
+     * @return the parent of a relative path, null for the root of the directory
+     */
+    private static String getParent(String path) {
+        int separator = path.lastIndexOf('/');
+        return (separator > 0) ? path.substring(0, separator) : null;
+    }
+
+    private static String getModuleDirectory(String path) {
+        int extension = path.lastIndexOf('.');
+        return path.substring(0, extension) + "_" + path.substring(extension + 1);
+    }
+
+    private static void createDirectory(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create the directory " + dir);
+        }
+    }
+
+    private static void writeFile(Asset asset, File file) throws IOException {
+        createDirectory(file.getParentFile());
+        InputStream input = asset.openStream();
+        try {
+            OutputStream output = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[8192];
+                for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    private Properties loadIndex() throws IOException {
+        Properties index = new Properties();
+        if (indexFile.isFile()) {
+            InputStream input = new FileInputStream(indexFile);
+            try {
+                index.load(input);
+            } finally {
+                input.close();
+            }
+        }
+        return index;
+    }
+
+    private void storeIndex(Properties index) throws IOException {
+        OutputStream output = new FileOutputStream(indexFile);
+        try {
+            index.store(output, "Digests of the files of " + directory.getName());
+        } finally {
+            output.close();
+        }
+    }
+}
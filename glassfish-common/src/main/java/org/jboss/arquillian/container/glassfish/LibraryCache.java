@@ -0,0 +1,372 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import com.sun.jersey.api.container.ContainerException;
+import com.sun.jersey.core.header.FormDataContentDisposition;
+import com.sun.jersey.multipart.FormDataBodyPart;
+import com.sun.jersey.multipart.FormDataMultiPart;
+import org.jboss.arquillian.container.glassfish.clientutils.GlassFishClient;
+import org.jboss.arquillian.container.glassfish.clientutils.GlassFishClientException;
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ArchivePath;
+import org.jboss.shrinkwrap.api.Filter;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Hoists the libraries of the web archives into the applibs directory of the domain.
+ * <p>
+ * Each library is named after the digest of its content, and is added to the domain once
+ * per server lifetime, shared by all the deployments bundling it. The deployed archives
+ * are stripped of their hoisted libraries, which the deploy command references by its
+ * libraries field instead.
+ * <p>
+ * Only the plain libraries are hoisted, those the container has to scan stay in the archive:
+ * the libraries holding web fragments, CDI, JPA, EJB or JSF descriptors, web resources,
+ * tag libraries, service providers of a javax or jakarta interface such as the servlet
+ * container initializers or the CDI extensions, or classes annotated by a javax or jakarta
+ * annotation.
+ * <p>
+ * The hoisted libraries are loaded by the class loader of applibs, shared by all the
+ * deployments, so their static state outlives a deployment and is seen by the next ones.
+ * The libraries added to the domain are removed by {@link #removeLibraries()}.
+ */
+class LibraryCache {
+
+    private static final String LIBRARY_DIRECTORY = "/WEB-INF/lib";
+
+    private static final String LIBRARY_PREFIX = "arquillian-";
+
+    private static final int NAME_DIGEST_LENGTH = 16;
+
+    private static final Logger log = Logger.getLogger(LibraryCache.class.getName());
+
+    private final GlassFishClient glassFishClient;
+
+    private final CommonGlassFishConfiguration configuration;
+
+    /**
+     * the libraries added by this cache, or being added, by name
+     */
+    private final ConcurrentMap<String, Future<Boolean>> libraries = new ConcurrentHashMap<String, Future<Boolean>>();
+
+    /**
+     * the libraries uploaded by this cache, removed from applibs on stop
+     */
+    private final List<String> addedLibraries = Collections.synchronizedList(new ArrayList<String>());
+
+    /**
+     * the libraries found in applibs, listed on the first hoisting
+     */
+    private Set<String> existingLibraries;
+
+    LibraryCache(GlassFishClient glassFishClient, CommonGlassFishConfiguration configuration) {
+        this.glassFishClient = glassFishClient;
+        this.configuration = configuration;
+    }
+
+    /**
+     * Hoist the libraries of a web archive, other archives are returned as they are
+     *
+     * @return the archive to deploy
+     */
+    HoistedArchive hoist(Archive<?> archive) throws IOException {
+        List<String> names = new ArrayList<String>();
+        final Set<ArchivePath> hoisted = new HashSet<ArchivePath>();
+        if (archive.getName().endsWith(".war")) {
+            // in path order, so the libraries field is stable
+            Map<ArchivePath, Node> content = new TreeMap<ArchivePath, Node>(archive.getContent());
+            for (Map.Entry<ArchivePath, Node> entry : content.entrySet()) {
+                ArchivePath path = entry.getKey();
+                Asset asset = entry.getValue().getAsset();
+                if (asset == null || path.getParent() == null || !LIBRARY_DIRECTORY.equals(path.getParent().get())
+                    || !path.get().endsWith(".jar") || !isHoistable(asset)) {
+                    continue;
+                }
+
+                String fileName = path.get().substring(LIBRARY_DIRECTORY.length() + 1);
+                String name = LIBRARY_PREFIX + ArchiveDigest.of(asset).substring(0, NAME_DIGEST_LENGTH) + "-" + fileName;
+                if (addLibrary(name, asset)) {
+                    hoisted.add(path);
+                    names.add(name);
+                }
+            }
+        }
+
+        if (hoisted.isEmpty()) {
+            return new HoistedArchive(archive, names);
+        }
+        log.fine("Hoisted " + names + " out of " + archive.getName());
+        return new HoistedArchive(archive.shallowCopy(new Filter<ArchivePath>() {
+            public boolean include(ArchivePath path) {
+                return !hoisted.contains(path);
+            }
+        }), names);
+    }
+
+    /**
+     * Add a library to applibs, unless it was already added
+     *
+     * @return true if the library is in applibs
+     */
+    private boolean addLibrary(final String name, final Asset asset) {
+        FutureTask<Boolean> task = new FutureTask<Boolean>(new Callable<Boolean>() {
+            public Boolean call() {
+                if (getExistingLibraries().contains(name)) {
+                    return true;
+                }
+                FormDataMultiPart form = new FormDataMultiPart();
+                form.bodyPart(new FormDataBodyPart(
+                    FormDataContentDisposition.name("id").fileName(name).build(),
+                    createStreamingOutput(asset), MediaType.APPLICATION_OCTET_STREAM_TYPE));
+                glassFishClient.addLibrary(form);
+                addedLibraries.add(name);
+                log.info("Added the library " + name + " to the domain");
+                return true;
+            }
+        });
+        Future<Boolean> added = libraries.putIfAbsent(name, task);
+        if (added == null) {
+            added = task;
+            task.run();
+        }
+
+        try {
+            return added.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            // the library stays in the archive, the next deployment bundling it adds it again
+            libraries.remove(name, added);
+            log.warning("Could not add the library " + name + " to the domain, it is deployed with the archive: "
+                + e.getCause().getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Remove the libraries this cache added to applibs, the libraries found there are left
+     */
+    void removeLibraries() {
+        synchronized (addedLibraries) {
+            for (String name : addedLibraries) {
+                try {
+                    glassFishClient.removeLibrary(name);
+                    log.info("Removed the library " + name + " from the domain");
+                } catch (GlassFishClientException e) {
+                    log.warning("Could not remove the library " + name + " from the domain: " + e.getMessage());
+                } catch (ContainerException e) {
+                    log.warning("Could not remove the library " + name + " from the domain: " + e.getMessage());
+                }
+            }
+            addedLibraries.clear();
+        }
+        libraries.clear();
+    }
+
+    private synchronized Set<String> getExistingLibraries() {
+        if (existingLibraries == null) {
+            try {
+                existingLibraries = new HashSet<String>(glassFishClient.listLibraries());
+            } catch (GlassFishClientException e) {
+                existingLibraries = Collections.emptySet();
+            } catch (ContainerException e) {
+                existingLibraries = Collections.emptySet();
+            }
+        }
+        return existingLibraries;
+    }
+
+    private StreamingOutput createStreamingOutput(final Asset asset) {
+        if (asset instanceof ArchiveAsset) {
+            return new ArchiveStreamingOutput(((ArchiveAsset) asset).getArchive(),
+                new ZipArchiveWriter(ZipEntry.DEFLATED, configuration.getCompressionLevel()),
+                configuration.getUploadChunkSize());
+        }
+        return new StreamingOutput() {
+            public void write(OutputStream output) throws IOException {
+                InputStream input = asset.openStream();
+                try {
+                    byte[] buffer = new byte[8192];
+                    for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                        output.write(buffer, 0, read);
+                    }
+                } finally {
+                    input.close();
+                }
+            }
+        };
+    }
+
+    /**
+     * @return false if the library holds resources the container scans in the archive
+     */
+    private static boolean isHoistable(Asset asset) throws IOException {
+        if (asset instanceof ArchiveAsset) {
+            for (Map.Entry<ArchivePath, Node> entry : ((ArchiveAsset) asset).getArchive().getContent().entrySet()) {
+                String name = entry.getKey().get().substring(1);
+                if (isScanned(name)) {
+                    return false;
+                }
+                Asset content = entry.getValue().getAsset();
+                if (content != null && name.endsWith(".class")) {
+                    InputStream input = content.openStream();
+                    try {
+                        if (isAnnotatedComponent(input)) {
+                            return false;
+                        }
+                    } finally {
+                        input.close();
+                    }
+                }
+            }
+            return true;
+        }
+
+        ZipInputStream input = new ZipInputStream(asset.openStream());
+        try {
+            for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+                if (isScanned(entry.getName()) || (entry.getName().endsWith(".class") && isAnnotatedComponent(input))) {
+                    return false;
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return true;
+    }
+
+    private static boolean isScanned(String name) {
+        if (!name.startsWith("META-INF/")) {
+            return false;
+        }
+        return name.equals("META-INF/web-fragment.xml") || name.equals("META-INF/beans.xml")
+            || name.equals("META-INF/persistence.xml") || name.equals("META-INF/ejb-jar.xml")
+            || name.equals("META-INF/faces-config.xml") || name.endsWith(".faces-config.xml")
+            || name.endsWith(".taglib.xml") || name.endsWith(".tld") || name.startsWith("META-INF/resources/")
+            || name.startsWith("META-INF/services/javax.") || name.startsWith("META-INF/services/jakarta.");
+    }
+
+    private static final int CLASS_MAGIC = 0xCAFEBABE;
+
+    /**
+     * Look for a Java EE annotation in the constant pool of a class. Any annotated class referring to
+     * a javax or jakarta type is taken for a component, which also keeps the CDI beans of implicit bean
+     * archives, the JAX-RS resources, the web services and the JPA entities in the archive.
+     *
+     * @param input
+     *     the content of the class, left open
+     *
+     * @return true if the class may be annotated by a Java EE annotation, or cannot be read
+     */
+    private static boolean isAnnotatedComponent(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        try {
+            if (data.readInt() != CLASS_MAGIC) {
+                return true;
+            }
+            data.readUnsignedShort();
+            data.readUnsignedShort();
+            boolean annotated = false;
+            boolean javaEEType = false;
+            int count = data.readUnsignedShort();
+            for (int i = 1; i < count; i++) {
+                int tag = data.readUnsignedByte();
+                switch (tag) {
+                    case 1:
+                        String value = data.readUTF();
+                        annotated |= value.equals("RuntimeVisibleAnnotations");
+                        javaEEType |= (value.startsWith("Ljavax/") || value.startsWith("Ljakarta/"))
+                            && value.indexOf(';') == value.length() - 1;
+                        break;
+                    case 7: case 8: case 16: case 19: case 20:
+                        data.skipBytes(2);
+                        break;
+                    case 15:
+                        data.skipBytes(3);
+                        break;
+                    case 3: case 4: case 9: case 10: case 11: case 12: case 17: case 18:
+                        data.skipBytes(4);
+                        break;
+                    case 5: case 6:
+                        // the long and double constants take two entries
+                        data.skipBytes(8);
+                        i++;
+                        break;
+                    default:
+                        return true;
+                }
+            }
+            return annotated && javaEEType;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+
+    /**
+     * An archive stripped of its hoisted libraries
+     */
+    static class HoistedArchive {
+
+        private final Archive<?> archive;
+
+        private final List<String> libraries;
+
+        HoistedArchive(Archive<?> archive, List<String> libraries) {
+            this.archive = archive;
+            this.libraries = libraries;
+        }
+
+        Archive<?> getArchive() {
+            return archive;
+        }
+
+        /**
+         * @return the names of the hoisted libraries in applibs
+         */
+        List<String> getLibraries() {
+            return libraries;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.shrinkwrap.api.Archive;
+import org.jboss.shrinkwrap.api.ArchivePath;
+import org.jboss.shrinkwrap.api.Node;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.asset.ByteArrayAsset;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes an archive as a ZIP, with a given compression method and level.
+ * <p>
+ * The ZIP exporter of ShrinkWrap always deflates at the default level. This writer
+ * may store the entries instead, nested archives included. A stored entry needs its
+ * size and CRC before its content is written, so the content of an asset is read twice
+ * rather than held in memory, while a nested archive is written once into memory, as
+ * writing it twice would write its own nested archives four times.
+ */
+final class ZipArchiveWriter {
+
+    private final int method;
+
+    private final int level;
+
+    private final long time = System.currentTimeMillis();
+
+    /**
+     * @param method
+     *     {@link ZipEntry#STORED} or {@link ZipEntry#DEFLATED}
+     * @param level
+     *     the deflate level, 0-9 or -1 for the default level
+     */
+    ZipArchiveWriter(int method, int level) {
+        this.method = method;
+        this.level = level;
+    }
+
+    /**
+     * Write the archive, the stream is not closed
+     */
+    void write(Archive<?> archive, OutputStream output) throws IOException {
+        ZipStream zip = new ZipStream(output);
+        try {
+            zip.setLevel(level);
+            for (Map.Entry<ArchivePath, Node> entry : archive.getContent().entrySet()) {
+                Asset asset = entry.getValue().getAsset();
+                String name = entry.getKey().get().substring(1);
+                ZipEntry zipEntry = new ZipEntry((asset == null) ? name + "/" : name);
+                zipEntry.setTime(time);
+                if (method == ZipEntry.STORED) {
+                    if (asset instanceof ArchiveAsset) {
+                        ByteArrayOutputStream nested = new ByteArrayOutputStream();
+                        write(((ArchiveAsset) asset).getArchive(), nested);
+                        asset = new ByteArrayAsset(nested.toByteArray());
+                    }
+                    CrcOutputStream crc = new CrcOutputStream();
+                    if (asset != null) {
+                        copy(asset, crc);
+                    }
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(crc.getSize());
+                    zipEntry.setCompressedSize(crc.getSize());
+                    zipEntry.setCrc(crc.getValue());
+                }
+                zip.putNextEntry(zipEntry);
+                if (asset != null) {
+                    copy(asset, zip);
+                }
+                zip.closeEntry();
+            }
+            zip.finish();
+        } finally {
+            zip.end();
+        }
+    }
+
+    private void copy(Asset asset, OutputStream output) throws IOException {
+        if (asset instanceof ArchiveAsset) {
+            write(((ArchiveAsset) asset).getArchive(), output);
+            return;
+        }
+        InputStream input = asset.openStream();
+        try {
+            byte[] buffer = new byte[8192];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                output.write(buffer, 0, read);
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * A ZIP stream releasing the native memory of its deflater without closing the stream it writes to
+     */
+    private static class ZipStream extends ZipOutputStream {
+
+        ZipStream(OutputStream output) {
+            super(output);
+        }
+
+        void end() {
+            def.end();
+        }
+    }
+
+    /**
+     * Computes the CRC and the size of the content written, without keeping it
+     */
+    private static class CrcOutputStream extends OutputStream {
+
+        private final CRC32 crc = new CRC32();
+
+        private long size;
+
+        @Override
+        public void write(int b) {
+            crc.update(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            crc.update(bytes, offset, length);
+            size += length;
+        }
+
+        long getValue() {
+            return crc.getValue();
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import com.sun.jersey.core.util.Base64;
+import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * Tells the state of the DAS by a single request of the version resource, the smallest of the
+ * REST management interface, with the connect and read timeouts of the configuration. The probe
+ * doesn't use the pooled client, so it is cheap enough to be polled every few milliseconds
+ * and a DAS not answering never blocks it longer than its timeouts.
+ */
+class AdminServerProbe {
+
+    private static final String PROBE_RESOURCE = "/version";
+
+    private final CommonGlassFishConfiguration configuration;
+
+    private final String probeUrl;
+
+    AdminServerProbe(CommonGlassFishConfiguration configuration, String adminBaseUrl) {
+        this.configuration = configuration;
+        this.probeUrl = adminBaseUrl + PROBE_RESOURCE;
+    }
+
+    DASState probe() {
+        HttpURLConnection connection;
+        try {
+            connection = (HttpURLConnection) new URL(probeUrl).openConnection();
+            connection.setConnectTimeout(configuration.getProbeConnectTimeoutMs());
+            connection.setReadTimeout(configuration.getProbeReadTimeoutMs());
+            connection.setRequestProperty("Accept", "application/json");
+            if (configuration.isAuthorisation()) {
+                String credentials = configuration.getAdminUser() + ":" + configuration.getAdminPassword();
+                connection.setRequestProperty("Authorization",
+                    "Basic " + new String(Base64.encode(credentials.getBytes("UTF-8")), "ASCII"));
+            }
+            connection.connect();
+        } catch (IOException e) {
+            // refused, or not accepted within the connect timeout
+            return DASState.DOWN;
+        }
+
+        try {
+            int status = connection.getResponseCode();
+            discard(connection, status);
+            if (status == HttpURLConnection.HTTP_OK) {
+                return DASState.READY;
+            } else if (status == HttpURLConnection.HTTP_UNAUTHORIZED || status == HttpURLConnection.HTTP_FORBIDDEN) {
+                return DASState.AUTH_FAILED;
+            }
+            // the admin adapter is not loaded yet
+            return DASState.STARTING;
+        } catch (IOException e) {
+            // the connection was accepted, but not answered within the read timeout or dropped
+            return DASState.STARTING;
+        }
+    }
+
+    /**
+     * Read the rest of the response, for the connection to be kept alive for the next probe
+     */
+    private static void discard(HttpURLConnection connection, int status) throws IOException {
+        InputStream response = status < HttpURLConnection.HTTP_BAD_REQUEST
+            ? connection.getInputStream() : connection.getErrorStream();
+        if (response == null) {
+            return;
+        }
+        try {
+            byte[] buffer = new byte[1024];
+            while (response.read(buffer) != -1) {
+                // discard
+            }
+        } finally {
+            response.close();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The child resources of a management API resource, like the servers of
+ * <code>/servers/server</code>, held by the <code>extraProperties.childResources</code>
+ * section of the response.
+ */
+public class ChildResources {
+
+    private final Map<String, String> resources;
+
+    public ChildResources(Map<String, String> resources) {
+        this.resources = Collections.unmodifiableMap(resources);
+    }
+
+    /**
+     * @return the names of the child resources
+     */
+    public Set<String> getNames() {
+        return resources.keySet();
+    }
+
+    /**
+     * @param name
+     *     of the child resource
+     *
+     * @return true if the resource has a child with the given name
+     */
+    public boolean contains(String name) {
+        return resources.containsKey(name);
+    }
+
+    /**
+     * @return a read-only map view of the child resource names and their urls
+     */
+    public Map<String, String> asMap() {
+        return resources;
+    }
+
+    @Override
+    public String toString() {
+        return resources.toString();
+    }
+}
@@ -0,0 +1,294 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import org.jboss.arquillian.container.glassfish.clientutils.ResponseReader.Token;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The typed result of a GlassFish management API request.
+ * <p>
+ * The exit code, the message and the scalar extra properties are always read.
+ * The other sections are only materialized if they were requested when the
+ * response was parsed, otherwise they are skipped on the wire and their getters
+ * return empty values.
+ */
+public class CommandResult {
+
+    /**
+     * The optional sections of a response
+     */
+    public enum Section {
+        /**
+         * extraProperties.entity - the attributes of the resource
+         */
+        ENTITY,
+        /**
+         * extraProperties.childResources - the child resources of the resource
+         */
+        CHILD_RESOURCES,
+        /**
+         * extraProperties.instanceList - the instances reported by list-instances
+         */
+        INSTANCES,
+        /**
+         * properties - the properties reported by the command
+         */
+        PROPERTIES,
+        /**
+         * children - the nested results reported by the command
+         */
+        CHILDREN
+    }
+
+    private static final EntityAttributes NO_ATTRIBUTES = new EntityAttributes(new HashMap<String, String>());
+
+    private static final ChildResources NO_CHILD_RESOURCES = new ChildResources(new HashMap<String, String>());
+
+    private String exitCode;
+
+    private String message;
+
+    private String command;
+
+    private Map<String, String> extraProperties = Collections.emptyMap();
+
+    private EntityAttributes entity = NO_ATTRIBUTES;
+
+    private ChildResources childResources = NO_CHILD_RESOURCES;
+
+    private List<EntityAttributes> instances = Collections.emptyList();
+
+    private Map<String, String> properties = Collections.emptyMap();
+
+    private List<CommandResult> children = Collections.emptyList();
+
+    /**
+     * Create an empty result, as returned for a missing resource or an empty response
+     */
+    public CommandResult() {
+    }
+
+    /**
+     * @return the exit code: SUCCESS, WARNING or FAILURE
+     */
+    public String getExitCode() {
+        return exitCode;
+    }
+
+    /**
+     * @return the message of the command
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the description of the executed command
+     */
+    public String getCommand() {
+        return command;
+    }
+
+    /**
+     * @return the scalar values of the extraProperties section, like version-number
+     */
+    public Map<String, String> getExtraProperties() {
+        return extraProperties;
+    }
+
+    /**
+     * @return the attributes of the resource, see {@link Section#ENTITY}
+     */
+    public EntityAttributes getEntity() {
+        return entity;
+    }
+
+    /**
+     * @return the child resources of the resource, see {@link Section#CHILD_RESOURCES}
+     */
+    public ChildResources getChildResources() {
+        return childResources;
+    }
+
+    /**
+     * @return the attributes of each server instance, see {@link Section#INSTANCES}
+     */
+    public List<EntityAttributes> getInstances() {
+        return instances;
+    }
+
+    /**
+     * @return the properties of the command, see {@link Section#PROPERTIES}
+     */
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    /**
+     * @return the nested results of the command, see {@link Section#CHILDREN}
+     */
+    public List<CommandResult> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the result of the list-sub-components command,
+     * built from the {@link Section#PROPERTIES} and {@link Section#CHILDREN} sections
+     */
+    public SubComponents getSubComponents() {
+        return new SubComponents(properties, children);
+    }
+
+    /**
+     * Read a response, positioned at its top-level map
+     *
+     * @param reader
+     *     of the response
+     * @param sections
+     *     to be materialized
+     *
+     * @return the result, or an empty result if the response holds no map
+     */
+    static CommandResult read(ResponseReader reader, Set<Section> sections) throws IOException {
+        for (Token token = reader.next(); token != Token.END_DOCUMENT; token = reader.next()) {
+            if (token == Token.START_MAP) {
+                return readEntries(reader, sections);
+            }
+        }
+        return new CommandResult();
+    }
+
+    /**
+     * Read the entries of a result map, after its START_MAP token
+     */
+    private static CommandResult readEntries(ResponseReader reader, Set<Section> sections) throws IOException {
+        CommandResult result = new CommandResult();
+        for (Token token = reader.next(); token == Token.KEY; token = reader.next()) {
+            String key = reader.getKey();
+            if ("exit_code".equals(key)) {
+                result.exitCode = reader.readScalar();
+            } else if ("message".equals(key)) {
+                result.message = reader.readScalar();
+            } else if ("command".equals(key)) {
+                result.command = reader.readScalar();
+            } else if ("extraProperties".equals(key)) {
+                readExtraProperties(reader, sections, result);
+            } else if ("properties".equals(key) && sections.contains(Section.PROPERTIES)) {
+                result.properties = Collections.unmodifiableMap(reader.readStringMap());
+            } else if ("children".equals(key) && sections.contains(Section.CHILDREN)) {
+                result.children = Collections.unmodifiableList(readResultList(reader, sections));
+            } else {
+                reader.skipValue();
+            }
+        }
+        return result;
+    }
+
+    private static void readExtraProperties(ResponseReader reader, Set<Section> sections, CommandResult result)
+        throws IOException {
+        Token token = reader.next();
+        if (token != Token.START_MAP) {
+            if (token == Token.START_LIST) {
+                reader.skipRest();
+            }
+            return;
+        }
+
+        Map<String, String> extraProperties = new HashMap<String, String>();
+        for (token = reader.next(); token == Token.KEY; token = reader.next()) {
+            String key = reader.getKey();
+            if ("entity".equals(key) && sections.contains(Section.ENTITY)) {
+                result.entity = new EntityAttributes(reader.readStringMap());
+            } else if ("childResources".equals(key) && sections.contains(Section.CHILD_RESOURCES)) {
+                result.childResources = new ChildResources(reader.readStringMap());
+            } else if ("instanceList".equals(key) && sections.contains(Section.INSTANCES)) {
+                result.instances = Collections.unmodifiableList(readAttributesList(reader));
+            } else if ("entity".equals(key) || "childResources".equals(key) || "instanceList".equals(key)) {
+                reader.skipValue();
+            } else {
+                // a scalar extra property, maps and lists are skipped
+                String value = reader.readScalar();
+                if (value != null) {
+                    extraProperties.put(key, value);
+                }
+            }
+        }
+        result.extraProperties = Collections.unmodifiableMap(extraProperties);
+    }
+
+    private static List<CommandResult> readResultList(ResponseReader reader, Set<Section> sections)
+        throws IOException {
+        List<CommandResult> results = new ArrayList<CommandResult>();
+        Token token = reader.next();
+        if (token != Token.START_LIST) {
+            if (token == Token.START_MAP) {
+                reader.skipRest();
+            }
+            return results;
+        }
+        for (token = reader.next(); token != Token.END_LIST && token != Token.END_DOCUMENT; token = reader.next()) {
+            if (token == Token.START_MAP) {
+                results.add(readEntries(reader, sections));
+            } else if (token == Token.START_LIST) {
+                reader.skipRest();
+            }
+        }
+        return results;
+    }
+
+    private static List<EntityAttributes> readAttributesList(ResponseReader reader) throws IOException {
+        List<EntityAttributes> list = new ArrayList<EntityAttributes>();
+        Token token = reader.next();
+        if (token != Token.START_LIST) {
+            if (token == Token.START_MAP) {
+                reader.skipRest();
+            }
+            return list;
+        }
+        for (token = reader.next(); token != Token.END_LIST && token != Token.END_DOCUMENT; token = reader.next()) {
+            if (token == Token.START_MAP) {
+                list.add(new EntityAttributes(reader.readStringMapEntries()));
+            } else if (token == Token.START_LIST) {
+                reader.skipRest();
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Create the set of sections to be materialized
+     */
+    static Set<Section> sections(Section... sections) {
+        Set<Section> set = EnumSet.noneOf(Section.class);
+        Collections.addAll(set, sections);
+        return set;
+    }
+
+    @Override
+    public String toString() {
+        return "exit_code: " + exitCode + ", message: " + message;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+/**
+ * A snapshot of the connection pool used by the REST client to talk to the DAS.
+ */
+public class ConnectionPoolStatistics {
+
+    /**
+     * maximum number of connections the pool may hold
+     */
+    private final int maxConnections;
+
+    /**
+     * number of connections currently held by the pool, leased or idle
+     */
+    private final int openConnections;
+
+    /**
+     * number of REST requests issued through the pool
+     */
+    private final long requestCount;
+
+    public ConnectionPoolStatistics(int maxConnections, int openConnections, long requestCount) {
+        this.maxConnections = maxConnections;
+        this.openConnections = openConnections;
+        this.requestCount = requestCount;
+    }
+
+    /**
+     * @return the maximum number of connections
+     */
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * @return the number of open connections
+     */
+    public int getOpenConnections() {
+        return openConnections;
+    }
+
+    /**
+     * @return the number of issued requests
+     */
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "requests: " + requestCount + ", open connections: " + openConnections + "/" + maxConnections;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+/**
+ * Notified of the phases of the deployments streaming their progress, see
+ * {@link org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration#setDeploymentProgress(boolean)}.
+ * The listeners are called by the deploying thread, while the deployment runs.
+ */
+public interface DeploymentProgressListener {
+
+    /**
+     * A phase of a deployment completed
+     *
+     * @param application
+     *     name of the application
+     * @param phase
+     *     upload for the phase ending when the DAS reports its first progress, then the progress
+     *     message of the DAS starting the phase, like "Loading application"
+     * @param durationMs
+     *     the duration of the phase
+     */
+    void phaseCompleted(String application, String phase, long durationMs);
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The values reported by the admin get command for a dotted-name pattern, like
+ * <code>configs.config.server-config.*</code>. Each child of the command result
+ * holds one <code>dotted.name=value</code> pair. A dot within the name of an element,
+ * like a listener named <code>http.listener</code>, is reported escaped as <code>http\.listener</code>,
+ * so the dotted names are looked up with the element names passed through {@link #escape(String)}.
+ */
+class DottedNames {
+
+    private final Map<String, String> values = new LinkedHashMap<String, String>();
+
+    DottedNames(List<CommandResult> children) {
+        for (CommandResult child : children) {
+            String message = child.getMessage();
+            int separator = (message != null) ? message.indexOf('=') : -1;
+            if (separator > 0) {
+                values.put(message.substring(0, separator), message.substring(separator + 1));
+            }
+        }
+    }
+
+    /**
+     * @return the value of a dotted name, or null if it was not reported
+     */
+    String get(String name) {
+        return values.get(name);
+    }
+
+    /**
+     * Get the names of the elements directly below a dotted name, for example the
+     * listener names below <code>configs.config.server-config.network-config.network-listeners.network-listener</code>
+     *
+     * @return the unescaped element names, in the order they were reported
+     */
+    Set<String> getChildNames(String parent) {
+        String prefix = parent + ".";
+        Set<String> names = new LinkedHashSet<String>();
+        for (String name : values.keySet()) {
+            if (name.startsWith(prefix)) {
+                int end = indexOfSeparator(name, prefix.length());
+                if (end > prefix.length()) {
+                    names.add(unescape(name.substring(prefix.length(), end)));
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Escape the dots within the name of an element, to use it as a part of a dotted name
+     */
+    static String escape(String name) {
+        return name.replace(".", "\\.");
+    }
+
+    private static String unescape(String name) {
+        return name.replace("\\.", ".");
+    }
+
+    /**
+     * @return the index of the first dot from the given index which is not escaped, or -1 if there is none
+     */
+    private static int indexOfSeparator(String name, int from) {
+        for (int i = from; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '.') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return all the reported values by dotted name
+     */
+    Map<String, String> asMap() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    boolean isEmpty() {
+        return values.isEmpty();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * The attributes of a management API resource, like a server, a node or a
+ * network listener, held by the <code>extraProperties.entity</code> section of
+ * the response.
+ */
+public class EntityAttributes {
+
+    private final Map<String, String> attributes;
+
+    public EntityAttributes(Map<String, String> attributes) {
+        this.attributes = Collections.unmodifiableMap(attributes);
+    }
+
+    /**
+     * @param name
+     *     of the attribute
+     *
+     * @return the attribute value or null if the resource has no such attribute
+     */
+    public String get(String name) {
+        return attributes.get(name);
+    }
+
+    /**
+     * @return true if the resource has no attributes, as is the case for a missing resource
+     */
+    public boolean isEmpty() {
+        return attributes.isEmpty();
+    }
+
+    /**
+     * @return a read-only map view of the attributes
+     */
+    public Map<String, String> asMap() {
+        return attributes;
+    }
+
+    @Override
+    public String toString() {
+        return attributes.toString();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Reads a stream of server-sent events, like the progress of the commands of GlassFish 4:
+ * <pre>
+ * event: ProgressStatus/change
+ * data: {"progress-status-event":{"message":"..."}}
+ *
+ * </pre>
+ * The events are read while they are received, the data lines of an event are joined
+ * by new lines and the comment lines are skipped.
+ */
+class EventStreamReader {
+
+    private final BufferedReader input;
+
+    private String name;
+
+    private String data;
+
+    EventStreamReader(InputStream input) throws IOException {
+        this.input = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    }
+
+    /**
+     * Read the next event, waiting until it is received
+     *
+     * @return false at the end of the stream
+     */
+    boolean next() throws IOException {
+        String event = null;
+        StringBuilder lines = null;
+        for (String line = input.readLine(); line != null; line = input.readLine()) {
+            if (line.length() == 0) {
+                if (lines != null) {
+                    name = (event != null) ? event : "message";
+                    data = lines.toString();
+                    return true;
+                }
+                event = null;
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            if (colon == 0) {
+                // a comment, like the keep-alive lines
+                continue;
+            }
+            String field = (colon > 0) ? line.substring(0, colon) : line;
+            String value = (colon > 0) ? line.substring(colon + 1) : "";
+            if (value.startsWith(" ")) {
+                value = value.substring(1);
+            }
+
+            if ("event".equals(field)) {
+                event = value;
+            } else if ("data".equals(field)) {
+                if (lines == null) {
+                    lines = new StringBuilder(value);
+                } else {
+                    lines.append('\n').append(value);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the name of the event, message if the event is not named
+     */
+    String getName() {
+        return name;
+    }
+
+    String getData() {
+        return data;
+    }
+}
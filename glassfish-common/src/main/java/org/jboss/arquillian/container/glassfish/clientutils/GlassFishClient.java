@@ -24,7 +24,9 @@ import com.sun.jersey.multipart.FormDataMultiPart;
 import org.jboss.arquillian.container.spi.client.container.DeploymentException;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 
 public interface GlassFishClient {
 
@@ -53,7 +55,7 @@ public interface GlassFishClient {
      *     - name of the appliacation
      *     form		- a form of MediaType.MULTIPART_FORM_DATA_TYPE
      *
-     * @return subComponents - a map of SubComponents of the application
+     * @return httpContext - the context of the application, its servlets are listed on first access
      */
     public HTTPContext doDeploy(String name, FormDataMultiPart form) throws DeploymentException;
 
@@ -67,8 +69,106 @@ public interface GlassFishClient {
      */
     public Map doUndeploy(String name, FormDataMultiPart form);
 
+    /**
+     * Get a property of a deployed application
+     *
+     * @param name
+     *     - application name
+     * @param property
+     *     - property name
+     *
+     * @return the value of the property, or null if the application or the property does not exist
+     */
+    public String getApplicationProperty(String name, String property);
+
+    /**
+     * Add a library to the applibs directory of the domain
+     *
+     * @param form
+     *     - a form holding the library file in its id field
+     */
+    public void addLibrary(FormDataMultiPart form);
+
+    /**
+     * Remove a library from the applibs directory of the domain
+     *
+     * @param name
+     *     - the file name of the library
+     */
+    public void removeLibrary(String name);
+
+    /**
+     * List the libraries of the applibs directory of the domain
+     *
+     * @return the file names of the libraries
+     */
+    public List<String> listLibraries();
+
+    /**
+     * Register a listener of the phases of the deployments streaming their progress
+     *
+     * @param listener
+     *     - the listener to add
+     */
+    public void addDeploymentProgressListener(DeploymentProgressListener listener);
+
+    /**
+     * @param listener
+     *     - the listener to remove
+     */
+    public void removeDeploymentProgressListener(DeploymentProgressListener listener);
+
     /**
      * Verify whether the Domain Administration Server is running.
      */
     public boolean isDASRunning();
+
+    /**
+     * Probe the state of the Domain Administration Server, within the probe timeouts of the configuration
+     *
+     * @return the state of the DAS
+     */
+    public DASState getDASState();
+
+    /**
+     * Start-up the server asynchronously, see {@link #startUp()}
+     *
+     * @return the future completed when the start-up is done
+     */
+    public Future<Void> startUpAsync();
+
+    /**
+     * Deploy an application asynchronously, see {@link #doDeploy(String, FormDataMultiPart)}
+     *
+     * @return the future of the HTTP context of the application
+     */
+    public Future<HTTPContext> doDeployAsync(String name, FormDataMultiPart form);
+
+    /**
+     * Undeploy an application asynchronously, see {@link #doUndeploy(String, FormDataMultiPart)}
+     *
+     * @return the future of the response map
+     */
+    public Future<Map> doUndeployAsync(String name, FormDataMultiPart form);
+
+    /**
+     * Verify asynchronously whether the Domain Administration Server is running
+     *
+     * @return the future of the verification
+     */
+    public Future<Boolean> isDASRunningAsync();
+
+    /**
+     * Shut down the client, releasing the pooled connections to the DAS
+     * and the threads running the asynchronous requests.
+     * The client opens new connections if it is used again.
+     */
+    public void shutDown();
+
+    /**
+     * Get the statistics of the connection pool used to talk to the DAS
+     *
+     * @return the pool statistics
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics();
 }
@@ -21,17 +21,32 @@
 package org.jboss.arquillian.container.glassfish.clientutils;
 
 import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.container.ContainerException;
 import com.sun.jersey.multipart.FormDataMultiPart;
 import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+import org.jboss.arquillian.container.glassfish.clientutils.CommandResult.Section;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
 import org.jboss.arquillian.container.spi.client.protocol.metadata.Servlet;
 
-import java.net.ConnectException;
+import java.io.File;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -54,8 +69,29 @@ public class GlassFishClientService implements GlassFishClient {
 
     private GlassFishClientUtil clientUtil;
 
+    private AdminServerProbe adminServerProbe;
+
     private NodeAddress nodeAddress = null;
 
+    private List<NodeAddress> nodeAddressList = new ArrayList<NodeAddress>();
+
+    private TopologyCache topologyCache;
+
+    /**
+     * the dotted names fetched with the listeners by the running discovery, to fingerprint the topology
+     */
+    private DottedNames topologyDottedNames;
+
+    private final List<DeploymentProgressListener> progressListeners =
+        new CopyOnWriteArrayList<DeploymentProgressListener>();
+
+    /**
+     * runs the asynchronous requests, created on demand unless provided by the caller
+     */
+    private ExecutorService executor;
+
+    private boolean ownedExecutor;
+
     private int majorVersion = 3;
     private int minorVersion;
 
@@ -76,6 +112,11 @@ public class GlassFishClientService implements GlassFishClient {
 
         // Start up the jersey client layer
         this.clientUtil = new GlassFishClientUtil(configuration, adminBaseUrl);
+        this.adminServerProbe = new AdminServerProbe(configuration, adminBaseUrl);
+
+        if (configuration.getTopologyCacheFile() != null) {
+            this.topologyCache = new TopologyCache(new File(configuration.getTopologyCacheFile()));
+        }
     }
 
     /**
@@ -85,11 +126,21 @@ public class GlassFishClientService implements GlassFishClient {
      * -   Pull the server instances status form mgm API
      * -   In case of cluster tries to fund an instance which has
      * RUNNING status
+     * <p>
+     * With a topology cache, the node addresses discovered by a previous
+     * run are reused as long as the version and the dotted names of the
+     * configuration of the target, the servers, the nodes and the cluster
+     * served by the DAS still match. The dotted names are fetched along
+     * with the listeners of the configuration.
      *
      * @return none
      */
     public void startUp() throws GlassFishClientException {
 
+        if (topologyCache != null && startUpFromCache()) {
+            return;
+        }
+
         Map<String, String> standaloneServers = new HashMap<String, String>();
         Map<String, String> clusters = new HashMap<String, String>();
         String message;
@@ -126,11 +177,85 @@ public class GlassFishClientService implements GlassFishClient {
             }
         }
 
-        setGlassFishVersion();
+        String version = getGlassFishVersion();
+        setGlassFishVersion(version);
 
         // Fetch the HOST address & HTTP port info from the DAS server
-        List<NodeAddress> nodeAddressList = (List<NodeAddress>) serverInstance.getNodeAddressList();
+        topologyDottedNames = null;
+        nodeAddressList = serverInstance.getNodeAddressList();
+
+        if (topologyCache != null && topologyDottedNames != null) {
+            String targetType = (serverInstance instanceof ClusterServer) ? CLUSTER_TARGET : SERVER_TARGET;
+            String targetDottedName = CLUSTER_TARGET.equals(targetType) ? "clusters.cluster." : "servers.server.";
+            String config = topologyDottedNames.get(targetDottedName + DottedNames.escape(getTarget()) + ".config-ref");
+            if (config != null) {
+                topologyCache.store(getTopologyCacheKey(), new TopologyCache.Entry(version, targetType, config,
+                    getTopologyFingerprint(topologyDottedNames), nodeAddressList));
+            }
+        }
+        topologyDottedNames = null;
+
+        selectNodeAddress();
+    }
+
+    private static final String SERVER_TARGET = "server";
+    private static final String CLUSTER_TARGET = "cluster";
+
+    /**
+     * Start-up from the cached topology of the target
+     *
+     * @return false if there is no cached topology or it is stale
+     */
+    private boolean startUpFromCache() {
+        TopologyCache.Entry cached = topologyCache.load(getTopologyCacheKey());
+        if (cached == null) {
+            return false;
+        }
+
+        String version;
+        DottedNames topology;
+        try {
+            version = getGlassFishVersion();
+            topology = cached.getVersion().equals(version)
+                ? getDottedNames(cached.getConfig(), cached.getTargetType()) : null;
+        } catch (ClientHandlerException ch) {
+            String message = "Could not connect to DAS on: " + getDASUrl() + " | "
+                + ch.getCause().getMessage();
+            throw new GlassFishClientException(message);
+        }
+
+        if (topology == null || !cached.getFingerprint().equals(getTopologyFingerprint(topology))) {
+            log.info("The cached topology of " + getTarget() + " is stale, discovering it from the DAS");
+            return false;
+        }
+
+        log.fine("Using the cached topology of " + getTarget());
+        setGlassFishVersion(version);
+        nodeAddressList = new ArrayList<NodeAddress>(cached.getNodes());
+        selectNodeAddress();
+        return true;
+    }
+
+    private String getTopologyCacheKey() {
+        return TopologyCache.key(configuration.getAdminHost(), configuration.getAdminPort(), getTarget());
+    }
+
+    /**
+     * Fingerprint the dotted names the node addresses of the target are resolved from. The
+     * references to the applications and resources are left out, as they change with every
+     * deployment.
+     */
+    private static String getTopologyFingerprint(DottedNames topology) {
+        Map<String, String> values = new HashMap<String, String>();
+        for (Map.Entry<String, String> value : topology.asMap().entrySet()) {
+            if (!value.getKey().contains(".application-ref.") && !value.getKey().contains(".resource-ref.")) {
+                values.put(value.getKey(), value.getValue());
+            }
+        }
+        return TopologyCache.fingerprint(values);
+    }
 
+    private void selectNodeAddress() {
         if (GlassFishClient.ADMINSERVER.equals(configuration.getTarget())) {
             // Admin Server must running, otherwise we can not be here
             this.nodeAddress = nodeAddressList.get(0);
@@ -141,31 +266,45 @@ public class GlassFishClientService implements GlassFishClient {
         }
     }
 
+    /**
+     * @return the address of the node resolved by {@link #startUp()}
+     */
+    NodeAddress getNodeAddress() {
+        return nodeAddress;
+    }
+
+    /**
+     * @return the addresses of all the nodes of the target, resolved by {@link #startUp()}
+     */
+    List<NodeAddress> getNodeAddressList() {
+        return nodeAddressList;
+    }
+
     private static final String GLASSFISH_VERSION = "/version";
 
-    private void setGlassFishVersion() {
-        Map responseMap = getClientUtil().GETRequest(GLASSFISH_VERSION);
-        if (responseMap != null) {
-            Map extraProperties = (Map) responseMap.get("extraProperties");
-            if (extraProperties != null) {
-                Object versionNumberObj = extraProperties.get("version-number");
-                if (versionNumberObj != null && versionNumberObj instanceof String) {
-                    String version = (String) versionNumberObj;
-                    StringTokenizer tokenizer = new StringTokenizer(version, ".");
-                    if (tokenizer.hasMoreElements()) {
-                        try {
-                            majorVersion = Integer.valueOf(tokenizer.nextToken());
-                        } catch (NumberFormatException ignore) {
-                            log.info("Exception getting major version for: " + version);
-                        }
-                    }
-                    if (tokenizer.hasMoreElements()) {
-                        try {
-                            minorVersion = Integer.valueOf(tokenizer.nextToken());
-                        } catch (NumberFormatException ignore) {
-                            log.info("Exception getting minor version for: " + version);
-                        }
-                    }
+    /**
+     * @return the version number of GlassFish, empty if it is not reported
+     */
+    private String getGlassFishVersion() {
+        String version = getClientUtil().getCommandResult(GLASSFISH_VERSION).getExtraProperties().get("version-number");
+        return (version != null) ? version : "";
+    }
+
+    private void setGlassFishVersion(String version) {
+        if (version.length() > 0) {
+            StringTokenizer tokenizer = new StringTokenizer(version, ".");
+            if (tokenizer.hasMoreElements()) {
+                try {
+                    majorVersion = Integer.valueOf(tokenizer.nextToken());
+                } catch (NumberFormatException ignore) {
+                    log.info("Exception getting major version for: " + version);
+                }
+            }
+            if (tokenizer.hasMoreElements()) {
+                try {
+                    minorVersion = Integer.valueOf(tokenizer.nextToken());
+                } catch (NumberFormatException ignore) {
+                    log.info("Exception getting minor version for: " + version);
                 }
             }
         }
@@ -185,13 +324,14 @@ public class GlassFishClientService implements GlassFishClient {
     private static final String INSTACE_LIST = "/list-instances";
 
     private NodeAddress runningInstanceFilter(List<NodeAddress> nodeAddressList) {
-        List<Map> instanceList = getClientUtil().getInstancesList(INSTACE_LIST);
+        List<EntityAttributes> instanceList =
+            getClientUtil().getCommandResult(INSTACE_LIST, Section.INSTANCES).getInstances();
 
         String instanceStatus = null;
-        for (Map instance : instanceList) {
+        for (EntityAttributes instance : instanceList) {
             for (NodeAddress node : nodeAddressList) {
-                if (instance.get("name").equals(node.getServerName())) {
-                    instanceStatus = (String) instance.get("status");
+                if (node.getServerName().equals(instance.get("name"))) {
+                    instanceStatus = instance.get("status");
                     if (RUNNING_STATUS.equals(instanceStatus)) {
                         return node;
                     }
@@ -222,7 +362,173 @@ public class GlassFishClientService implements GlassFishClient {
     private static final String APPLICATION = "/applications/application";
     private static final String APPLICATION_RESOURCE = "/applications/application/{name}";
 
-    public HTTPContext doDeploy(String name, FormDataMultiPart form) {
+    public HTTPContext doDeploy(final String name, FormDataMultiPart form) {
+        // Deploy the application on the GlassFish server
+        if (configuration.isDeploymentProgress() && majorVersion >= 4) {
+            deployWithProgress(name, form);
+        } else if (configuration.isDetachedDeployment() && majorVersion >= 4) {
+            deployDetached(name, form);
+        } else {
+            getClientUtil().postCommandResult(APPLICATION, form);
+        }
+
+        // Build up the HTTPContext object using the nodeAddress information. The servlets are
+        // only resolved when the context is first asked for them, most protocols never are.
+        return new LazyHTTPContext(nodeAddress.getHost(), nodeAddress.getHttpPort(), new Callable<List<Servlet>>() {
+            public List<Servlet> call() {
+                return resolveServlets(name);
+            }
+        });
+    }
+
+    /**
+     * Deploy an application streaming the progress of the deploy command, the time between
+     * its progress messages is reported as the duration of each phase
+     *
+     * @param name
+     *     - application name
+     * @param form
+     *     - the deploy form
+     */
+    private void deployWithProgress(String name, FormDataMultiPart form) {
+        PhaseTimer phases = new PhaseTimer(name);
+        try {
+            getClientUtil().postCommandProgress(APPLICATION, form, phases);
+        } catch (RuntimeException e) {
+            log.warning("Deployment of " + name + " failed in phase " + phases.phase + " after "
+                + (System.currentTimeMillis() - phases.start) + " ms");
+            throw e;
+        }
+        phases.complete();
+        log.info("Deployed " + name + " in " + (System.currentTimeMillis() - phases.start) + " ms");
+    }
+
+    public void addDeploymentProgressListener(DeploymentProgressListener listener) {
+        progressListeners.add(listener);
+    }
+
+    public void removeDeploymentProgressListener(DeploymentProgressListener listener) {
+        progressListeners.remove(listener);
+    }
+
+    /**
+     * Times the phases of a deployment: each progress message of the DAS ends the current
+     * phase and starts the next one
+     */
+    private class PhaseTimer implements CommandProgressListener {
+
+        private final String application;
+
+        private final long start = System.currentTimeMillis();
+
+        private String phase = "upload";
+
+        private long phaseStart = start;
+
+        PhaseTimer(String application) {
+            this.application = application;
+        }
+
+        public void progress(String message) {
+            if (!message.equals(phase)) {
+                complete();
+                phase = message;
+            }
+        }
+
+        void complete() {
+            long now = System.currentTimeMillis();
+            long duration = now - phaseStart;
+            phaseStart = now;
+            log.info("Deployment of " + application + ": " + phase + " in " + duration + " ms");
+            for (DeploymentProgressListener listener : progressListeners) {
+                listener.phaseCompleted(application, phase, duration);
+            }
+        }
+    }
+
+    // the REST resource path template of a job, relative to the management root
+    private static final String JOB_RESOURCE = "/jobs/id/{id}";
+
+    private static final Pattern JOB_ID = Pattern.compile("Job ID: (\\d+)");
+
+    private static final long JOB_POLL_MIN_INTERVAL_MS = 20;
+
+    private static final long JOB_POLL_MAX_INTERVAL_MS = 1000;
+
+    /**
+     * Deploy an application by a detached command of GlassFish 4 or later, the request returns
+     * once the job is submitted and the job is polled until it completes. The polling interval
+     * starts short for the small archives, and doubles up to a second for the long deployments.
+     *
+     * @param name
+     *     - application name
+     * @param form
+     *     - the deploy form
+     */
+    private void deployDetached(String name, FormDataMultiPart form) {
+        long start = System.currentTimeMillis();
+        form.field("__detach", "true");
+        CommandResult submitted = getClientUtil().postCommandResult(APPLICATION, form);
+
+        Matcher jobId = JOB_ID.matcher(String.valueOf(submitted.getMessage()));
+        if (!jobId.find()) {
+            // the command was not detached, it already completed
+            log.fine("Deployed " + name + " synchronously in " + (System.currentTimeMillis() - start) + " ms");
+            return;
+        }
+
+        String job = jobId.group(1);
+        int polls = 0;
+        long interval = JOB_POLL_MIN_INTERVAL_MS;
+        long deadline = start + configuration.getDetachedDeploymentTimeoutMs();
+        while (true) {
+            polls++;
+            Map<String, String> attributes =
+                getClientUtil().getManagementResult(JOB_RESOURCE.replace("{id}", job)).getExtraProperties();
+            String state = attributes.get("jobState");
+            if (state == null) {
+                throw new GlassFishClientException("Could not find the deployment job " + job + " of " + name);
+            }
+            if (!state.startsWith("RUNNING") && !"PREPARED".equals(state)) {
+                String exitCode = attributes.get("exitCode");
+                String message = "exit_code: " + exitCode + ", message: " + attributes.get("message");
+                if (!GlassFishClientUtil.SUCCESS.equals(exitCode) && !GlassFishClientUtil.WARNING.equals(exitCode)) {
+                    throw new GlassFishClientException(message);
+                } else if (GlassFishClientUtil.WARNING.equals(exitCode)) {
+                    log.warning("Deployment resulted in a warning: " + message);
+                }
+                log.info("Deployed " + name + " by job " + job + " in " + (System.currentTimeMillis() - start)
+                    + " ms, " + polls + " polls");
+                return;
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new GlassFishClientException("The deployment job " + job + " of " + name
+                    + " did not complete within " + configuration.getDetachedDeploymentTimeoutMs() + " ms, "
+                    + "it is left " + state + " on the server");
+            }
+            try {
+                Thread.sleep(Math.min(interval, remaining));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GlassFishClientException("Interrupted while waiting for the deployment job " + job
+                    + " of " + name);
+            }
+            interval = Math.min(interval * 2, JOB_POLL_MAX_INTERVAL_MS);
+        }
+    }
+
+    /**
+     * List the servlets of a deployed application, and their context roots
+     *
+     * @param name
+     *     - application name
+     *
+     * @return the servlets of the application, in the order of its sub-components
+     */
+    private List<Servlet> resolveServlets(String name) {
         String listSubComponents;
         if (majorVersion >= 4) {
             listSubComponents = "/applications/application/{application}/list-sub-components";
@@ -231,42 +537,95 @@ public class GlassFishClientService implements GlassFishClient {
             listSubComponents = "/applications/application/list-sub-components?id={application}";
         }
 
-        Map<String, String> SubComponents = new HashMap<String, String>();
-
-        // Deploy the application on the GlassFish server
-        getClientUtil().POSTMultiPartRequest(APPLICATION, form);
-
         // Fetch the list of SubComponents of the application
         String path = listSubComponents.replace("{application}", name);
 
-        Map subComponentsResponce = getClientUtil().GETRequest(path);
-        Map<String, String> subComponents = (Map<String, String>) subComponentsResponce.get("properties");
-
-        // Build up the HTTPContext object using the nodeAddress information
-        int port = nodeAddress.getHttpPort();
-        HTTPContext httpContext = new HTTPContext(nodeAddress.getHost(), port);
+        SubComponents subComponents =
+            getClientUtil().getCommandResult(path, Section.PROPERTIES, Section.CHILDREN).getSubComponents();
 
-        // Add the servlets to the HTTPContext
-        String componentName;
-        String contextRoot = getApplicationContextRoot(name);
+        // Collect the servlets of the sub-components, in their order. The application contextRoot
+        // is only fetched for the servlets of the application itself, not for the modules of an EAR.
+        final String application = name;
+        List<Callable<List<Servlet>>> lookups = new ArrayList<Callable<List<Servlet>>>();
+        int webModules = 0;
+        String contextRoot = null;
 
-        if (subComponents != null) {
-            for (Map.Entry subComponent : subComponents.entrySet()) {
-                componentName = subComponent.getKey().toString();
-                if (WEBMODULE.equals(subComponent.getValue())) {
+        for (Map.Entry<String, String> subComponent : subComponents.getComponents().entrySet()) {
+            final String componentName = subComponent.getKey();
+            if (WEBMODULE.equals(subComponent.getValue())) {
 
-                    List<Map> children = (List<Map>) subComponentsResponce.get("children");
-                    // Override the application contextRoot by the webmodul's contextRoot
-                    contextRoot = resolveWebModuleContextRoot(componentName, children);
-                    resolveWebModuleSubComponents(name, componentName, contextRoot, httpContext);
-                } else if (SERVLET.equals(subComponent.getValue())) {
+                // Override the application contextRoot by the webmodul's contextRoot
+                contextRoot = resolveWebModuleContextRoot(componentName, subComponents.getModules());
+                final String moduleContextRoot = contextRoot;
+                lookups.add(new Callable<List<Servlet>>() {
+                    public List<Servlet> call() {
+                        return resolveWebModuleSubComponents(application, componentName, moduleContextRoot);
+                    }
+                });
+                webModules++;
+            } else if (SERVLET.equals(subComponent.getValue())) {
 
-                    httpContext.add(new Servlet(componentName, contextRoot));
+                if (contextRoot == null) {
+                    contextRoot = getApplicationContextRoot(name);
                 }
+                final Servlet servlet = new Servlet(componentName, contextRoot);
+                lookups.add(new Callable<List<Servlet>>() {
+                    public List<Servlet> call() {
+                        return Collections.singletonList(servlet);
+                    }
+                });
+            }
+        }
+
+        List<Servlet> servlets = new ArrayList<Servlet>();
+        if (webModules <= 1) {
+            for (Callable<List<Servlet>> lookup : lookups) {
+                servlets.addAll(call(name, lookup));
             }
+            return servlets;
         }
 
-        return httpContext;
+        // The servlets of the web modules are listed concurrently, and collected in their order
+        int threads = Math.min(configuration.getModuleResolutionThreads(), webModules);
+        ExecutorService moduleExecutor = Executors.newFixedThreadPool(threads,
+            new DaemonThreadFactory("glassfish-modules-"));
+        try {
+            List<Future<List<Servlet>>> moduleServlets = new ArrayList<Future<List<Servlet>>>();
+            for (Callable<List<Servlet>> lookup : lookups) {
+                moduleServlets.add(moduleExecutor.submit(lookup));
+            }
+            for (Future<List<Servlet>> module : moduleServlets) {
+                servlets.addAll(getServlets(name, module));
+            }
+        } finally {
+            moduleExecutor.shutdownNow();
+        }
+
+        return servlets;
+    }
+
+    private static List<Servlet> call(String name, Callable<List<Servlet>> lookup) {
+        try {
+            return lookup.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new GlassFishClientException("Could not resolve the servlets of application: " + name);
+        }
+    }
+
+    private static List<Servlet> getServlets(String name, Future<List<Servlet>> servlets) {
+        try {
+            return servlets.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new GlassFishClientException("Interrupted while resolving the servlets of application: " + name);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new GlassFishClientException("Could not resolve the servlets of application: " + name);
+        }
     }
 
     /**
@@ -283,19 +642,138 @@ public class GlassFishClientService implements GlassFishClient {
         return getClientUtil().POSTMultiPartRequest(path, form);
     }
 
+    private static final String ADD_LIBRARY = "/add-library";
+    private static final String REMOVE_LIBRARY = "/remove-library";
+    private static final String LIST_LIBRARIES = "/list-libraries?type=app";
+
+    public void addLibrary(FormDataMultiPart form) {
+        form.field("type", "app");
+        getClientUtil().postCommandResult(ADD_LIBRARY, form);
+    }
+
+    public void removeLibrary(String name) {
+        FormDataMultiPart form = new FormDataMultiPart();
+        form.field("id", name);
+        form.field("type", "app");
+        getClientUtil().postCommandResult(REMOVE_LIBRARY, form);
+    }
+
+    public List<String> listLibraries() {
+        List<String> libraries = new ArrayList<String>();
+        for (CommandResult library : getClientUtil().getCommandResult(LIST_LIBRARIES, Section.CHILDREN).getChildren()) {
+            if (library.getMessage() != null) {
+                libraries.add(library.getMessage());
+            }
+        }
+        return libraries;
+    }
+
+    private static final String APPLICATION_PROPERTY_DOTTED_NAME = "applications.application.{name}.property.{property}";
+
+    public String getApplicationProperty(String name, String property) {
+        String dottedName = APPLICATION_PROPERTY_DOTTED_NAME.replace("{name}", name).replace("{property}", property);
+        try {
+            return new DottedNames(getClientUtil().getCommandResult(
+                DOTTED_NAMES.replace("{pattern}", dottedName), Section.CHILDREN).getChildren()).get(
+                APPLICATION_PROPERTY_DOTTED_NAME.replace("{name}", DottedNames.escape(name))
+                    .replace("{property}", DottedNames.escape(property)));
+        } catch (GlassFishClientException ex) {
+            // the get command fails for an application which is not deployed
+            return null;
+        } catch (ContainerException ex) {
+            return null;
+        }
+    }
+
     /**
      * Verify if the DAS is running or not.
      */
     public boolean isDASRunning() {
-        try {
-            getClientUtil().GETRequest("");
-        } catch (ClientHandlerException clientEx) {
-            if (clientEx.getCause().getClass().equals(ConnectException.class)) {
-                // We were unable to connect to the DAS through Jersey
-                return false;
+        return getDASState() != DASState.DOWN;
+    }
+
+    public DASState getDASState() {
+        return adminServerProbe.probe();
+    }
+
+    public Future<Void> startUpAsync() {
+        return getExecutor().submit(new Callable<Void>() {
+            public Void call() {
+                startUp();
+                return null;
+            }
+        });
+    }
+
+    public Future<HTTPContext> doDeployAsync(final String name, final FormDataMultiPart form) {
+        return getExecutor().submit(new Callable<HTTPContext>() {
+            public HTTPContext call() {
+                return doDeploy(name, form);
             }
+        });
+    }
+
+    public Future<Map> doUndeployAsync(final String name, final FormDataMultiPart form) {
+        return getExecutor().submit(new Callable<Map>() {
+            public Map call() {
+                return doUndeploy(name, form);
+            }
+        });
+    }
+
+    public Future<Boolean> isDASRunningAsync() {
+        return getExecutor().submit(new Callable<Boolean>() {
+            public Boolean call() {
+                return isDASRunning();
+            }
+        });
+    }
+
+    /**
+     * Set the executor running the asynchronous requests, instead of the pool of
+     * asyncThreads threads created by the client. The executor is not shut down
+     * by the client.
+     *
+     * @param executor
+     *     the executor to use
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        shutDownExecutor();
+        this.executor = executor;
+        this.ownedExecutor = false;
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(configuration.getAsyncThreads(),
+                new DaemonThreadFactory("glassfish-client-"));
+            ownedExecutor = true;
         }
-        return true;
+        return executor;
+    }
+
+    private synchronized void shutDownExecutor() {
+        if (ownedExecutor) {
+            executor.shutdown();
+            executor = null;
+            ownedExecutor = false;
+        }
+    }
+
+    /**
+     * Release the connections held by the REST client, and the threads it created
+     * for the asynchronous requests.
+     */
+    public void shutDown() {
+        shutDownExecutor();
+        getClientUtil().closeConnections();
+    }
+
+    /**
+     * Get the statistics of the connection pool used for the REST calls.
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        return getClientUtil().getConnectionPoolStatistics();
     }
 
     /**
@@ -341,11 +819,11 @@ public class GlassFishClientService implements GlassFishClient {
         return contextRoot;
     }
 
-    private String resolveWebModuleContextRoot(String componentName, List<Map> modules) {
+    private String resolveWebModuleContextRoot(String componentName, List<CommandResult> modules) {
         String contextRoot = null;
-        for (Map module : modules) {
-            Map<String, String> moduleProperties = (Map<String, String>) module.get("properties");
-            if (moduleProperties != null && !moduleProperties.isEmpty()) {
+        for (CommandResult module : modules) {
+            Map<String, String> moduleProperties = module.getProperties();
+            if (!moduleProperties.isEmpty()) {
                 String moduleInfo = moduleProperties.get("moduleInfo");
                 if (moduleInfo.startsWith(componentName)) {
                     // Get the webmodule's contextRoot
@@ -364,7 +842,7 @@ public class GlassFishClientService implements GlassFishClient {
     }
 
     /**
-     * Lookup the servlets of WebModule & putt them to the httpContext associated with the application
+     * Lookup the servlets of WebModule
      *
      * @param name
      *     - application name
@@ -372,10 +850,10 @@ public class GlassFishClientService implements GlassFishClient {
      *     - webmodule name
      * @param context
      *     - contextRoot of the web-module
-     * @param httpContext
-     *     - httpContext to be updated
+     *
+     * @return the servlets of the web-module
      */
-    private void resolveWebModuleSubComponents(String name, String module, String context, HTTPContext httpContext) {
+    private List<Servlet> resolveWebModuleSubComponents(String name, String module, String context) {
         String webmoduleResource = "";
         if (majorVersion >= 4) {
             webmoduleResource =
@@ -388,14 +866,14 @@ public class GlassFishClientService implements GlassFishClient {
         String applicationPath = webmoduleResource.replace("{application}", name);
         String modulePath = applicationPath.replace("{module}", module);
 
-        Map subComponentsResponce = getClientUtil().GETRequest(modulePath);
-        Map<String, String> subComponents = (Map<String, String>) subComponentsResponce.get("properties");
+        Map<String, String> subComponents =
+            getClientUtil().getCommandResult(modulePath, Section.PROPERTIES).getProperties();
 
-        String componentName;
-        for (Map.Entry subComponent : subComponents.entrySet()) {
-            componentName = subComponent.getKey().toString();
-            httpContext.add(new Servlet(componentName, context));
+        List<Servlet> servlets = new ArrayList<Servlet>();
+        for (String componentName : subComponents.keySet()) {
+            servlets.add(new Servlet(componentName, context));
         }
+        return servlets;
     }
 
     /**
@@ -496,6 +974,15 @@ public class GlassFishClientService implements GlassFishClient {
         return Integer.parseInt(listener.get("value"));
     }
 
+    /**
+     * Same as {@link #getSystemProperty(Map, String)}, unless the system property
+     * has already been fetched along with the listener ports.
+     */
+    private int getSystemProperty(ListenerPorts ports, Map<String, String> attributes, String propertyName) {
+        String value = ports.getConfigSystemProperty(propertyName);
+        return (value != null) ? Integer.parseInt(value) : getSystemProperty(attributes, propertyName);
+    }
+
     private static final String SERVER_PROPERTY = "/servers/server/{server}/system-property/{system-property}";
 
     /**
@@ -543,6 +1030,117 @@ public class GlassFishClientService implements GlassFishClient {
         return (listener.get("value") != null) ? Integer.parseInt(listener.get("value")) : default_port;
     }
 
+    /**
+     * Get the port values of the active HTTP and HTTPS listeners of a configuration.
+     * <p>
+     * With dotted-name discovery the whole configuration is fetched by a single
+     * get request and the listeners are resolved from it in memory, otherwise each
+     * virtual server, listener and protocol is fetched by a separate request.
+     *
+     * @param attributes
+     *     The attributes which references the configuration (server or
+     *     cluster configuration)
+     *
+     * @return the port values of the listeners
+     */
+    private ListenerPorts getListenerPorts(Map<String, String> attributes) {
+        if (configuration.isDottedNameDiscovery()) {
+            ListenerPorts ports = getListenerPortsFromDottedNames(attributes);
+            if (ports != null) {
+                return ports;
+            }
+            log.info("The DAS did not answer the dotted-name get request, fetching the listeners one by one");
+        }
+
+        List<String> virtualServers = getVirtualServers(attributes);
+        List<String> networkListeners = getNetworkListeners(attributes, virtualServers);
+        return new ListenerPorts(getActiveHttpPort(attributes, networkListeners, false),
+            getActiveHttpPort(attributes, networkListeners, true), null, null);
+    }
+
+    private static final String DOTTED_NAMES = "/get?pattern={pattern}";
+
+    private static final String CONFIG_DOTTED_NAME = "configs.config.{config}.";
+
+    /**
+     * The other patterns the topology cache is checked against
+     */
+    private static final String TOPOLOGY_PATTERNS = "&pattern=servers.server.*&pattern=nodes.node.*";
+
+    private static final String CLUSTER_PATTERN = "&pattern=clusters.cluster.{cluster}.*";
+
+    /**
+     * Fetch the dotted names of a configuration by a single get request. With a topology cache,
+     * the same request fetches the dotted names of the servers, the nodes and the cluster target.
+     *
+     * @return the dotted names, or null if the DAS can not report them
+     */
+    private DottedNames getDottedNames(String config, String targetType) {
+        StringBuilder resource = new StringBuilder(
+            DOTTED_NAMES.replace("{pattern}", CONFIG_DOTTED_NAME.replace("{config}", config) + "*"));
+        if (topologyCache != null) {
+            resource.append(TOPOLOGY_PATTERNS);
+            if (CLUSTER_TARGET.equals(targetType)) {
+                resource.append(CLUSTER_PATTERN.replace("{cluster}", getTarget()));
+            }
+        }
+        DottedNames dottedNames;
+        try {
+            dottedNames = new DottedNames(getClientUtil().getCommandResult(resource.toString(), Section.CHILDREN)
+                .getChildren());
+        } catch (GlassFishClientException ex) {
+            return null;
+        } catch (ContainerException ex) {
+            return null;
+        }
+        return dottedNames.isEmpty() ? null : dottedNames;
+    }
+
+    /**
+     * Resolve the listener ports of a configuration from the values of all its dotted names.
+     * Like {@link #getVirtualServers(Map)}, the '__asadmin' virtual server is omitted.
+     *
+     * @return the port values of the listeners, or null if the DAS can not report the dotted names
+     */
+    private ListenerPorts getListenerPortsFromDottedNames(Map<String, String> attributes) {
+        String config = CONFIG_DOTTED_NAME.replace("{config}", DottedNames.escape(attributes.get("configRef")));
+        DottedNames dottedNames = getDottedNames(attributes.get("configRef"),
+            (serverInstance instanceof ClusterServer) ? CLUSTER_TARGET : SERVER_TARGET);
+        if (dottedNames == null) {
+            return null;
+        }
+        if (topologyCache != null) {
+            topologyDottedNames = dottedNames;
+        }
+
+        String httpPort = null;
+        String httpsPort = null;
+        for (String virtualServer : dottedNames.getChildNames(config + "http-service.virtual-server")) {
+            String listenerList = dottedNames.get(
+                config + "http-service.virtual-server." + DottedNames.escape(virtualServer) + ".network-listeners");
+            if (virtualServer.equals("__asadmin") || listenerList == null) {
+                continue;
+            }
+            for (String listener : listenerList.split(",")) {
+                String listenerName = config + "network-config.network-listeners.network-listener."
+                    + DottedNames.escape(listener.trim());
+                if (!isListenerEnabled(dottedNames.get(listenerName + ".enabled"))) {
+                    continue;
+                }
+                String protocol = dottedNames.get(listenerName + ".protocol");
+                boolean secureProtocol = Boolean.parseBoolean(dottedNames.get(
+                    config + "network-config.protocols.protocol." + DottedNames.escape(String.valueOf(protocol))
+                        + ".security-enabled"));
+                if (secureProtocol && httpsPort == null) {
+                    httpsPort = dottedNames.get(listenerName + ".port");
+                } else if (!secureProtocol && httpPort == null) {
+                    httpPort = dottedNames.get(listenerName + ".port");
+                }
+            }
+        }
+        return new ListenerPorts(httpPort, httpsPort, dottedNames, config);
+    }
+
     private static final String VIRTUAL_SERVERS =
         "/configs/config/{config}/http-service/list-virtual-servers?target={target}";
 
@@ -561,11 +1159,11 @@ public class GlassFishClientService implements GlassFishClient {
     private List<String> getVirtualServers(Map<String, String> attributes) {
         String virtualServerPath = VIRTUAL_SERVERS.replace("{config}", attributes.get("configRef")).replace("{target}",
             attributes.get("name"));
-        Map virtualServersResponse = getClientUtil().GETRequest(virtualServerPath);
-        List<Map> virtualServers = (List<Map>) virtualServersResponse.get("children");
+        List<CommandResult> virtualServers =
+            getClientUtil().getCommandResult(virtualServerPath, Section.CHILDREN).getChildren();
         List<String> virtualServerNames = new ArrayList<String>();
-        for (Map virtualServer : virtualServers) {
-            String virtualServerName = (String) virtualServer.get("message");
+        for (CommandResult virtualServer : virtualServers) {
+            String virtualServerName = virtualServer.getMessage();
             if (!virtualServerName.equals("__asadmin")) {
                 virtualServerNames.add(virtualServerName);
             }
@@ -629,8 +1227,7 @@ public class GlassFishClientService implements GlassFishClient {
             String listenerPath = LISTENER.replace("{config}", attributes.get("configRef")).replace("{listener}",
                 networkListener);
             Map<String, String> listenerAttributes = getClientUtil().getAttributes(listenerPath);
-            boolean enabled = Boolean.parseBoolean(listenerAttributes.get("enabled"));
-            if (!enabled) {
+            if (!isListenerEnabled(listenerAttributes.get("enabled"))) {
                 continue;
             }
             String port = listenerAttributes.get("port");
@@ -645,6 +1242,16 @@ public class GlassFishClientService implements GlassFishClient {
         return null;
     }
 
+    /**
+     * The listeners are enabled unless stated otherwise, as GlassFish leaves out the default value
+     *
+     * @param enabled
+     *     the enabled attribute of the listener, null if it was not reported
+     */
+    private static boolean isListenerEnabled(String enabled) {
+        return !"false".equalsIgnoreCase(enabled);
+    }
+
     private static final String PROTOCOL = "/configs/config/{config}/network-config/protocols/protocol/{protocol}";
 
     /**
@@ -676,6 +1283,9 @@ public class GlassFishClientService implements GlassFishClient {
      * <blockquote>${systemProperty}</blockquote>. The value of the referenced
      * system property is then read from the GlassFish configuration.
      *
+     * @param ports
+     *     The listener ports of the configuration, which may hold its
+     *     system properties already
      * @param attributes
      *     The attributes which references the configuration (server or
      *     cluster configuration)
@@ -688,22 +1298,37 @@ public class GlassFishClientService implements GlassFishClient {
      * @return The port number as stored in the network listener configuration
      * or in the system property
      */
-    private int getPortValue(Map<String, String> attributes, String serverName, String portNum) {
+    private int getPortValue(ListenerPorts ports, Map<String, String> attributes, String serverName,
+        String portNum) {
         int portValue = -1;
         try {
             portValue = Integer.parseInt(portNum);
         } catch (NumberFormatException formatEx) {
-            Pattern propertyRegex = Pattern.compile(SYSTEM_PROPERTY_REGEX);
-            Matcher matcher = propertyRegex.matcher(portNum);
-            if (matcher.find()) {
-                String propertyName = matcher.group(1);
-                portValue = getSystemProperty(attributes, propertyName);
+            String propertyName = getPortPropertyName(portNum);
+            if (propertyName != null) {
+                portValue = getSystemProperty(ports, attributes, propertyName);
                 portValue = getServerSystemProperty(serverName, propertyName, portValue);
             }
         }
         return portValue;
     }
 
+    /**
+     * Get the name of the system property a network listener port refers to
+     *
+     * @param portNum
+     *     The port number or a system property that stores the port
+     *     number
+     *
+     * @return The name of the system property, or null if the port is not
+     * stored in a system property
+     */
+    private String getPortPropertyName(String portNum) {
+        Pattern propertyRegex = Pattern.compile(SYSTEM_PROPERTY_REGEX);
+        Matcher matcher = propertyRegex.matcher(portNum);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
     private CommonGlassFishConfiguration getConfiguration() {
         return configuration;
     }
@@ -779,6 +1404,12 @@ public class GlassFishClientService implements GlassFishClient {
         protected abstract List<NodeAddress> getNodeAddressList();
     }
 
+    private static final long SERVER_ATTRIBUTES_MIN_INTERVAL_MS = 10;
+
+    private static final long SERVER_ATTRIBUTES_MAX_INTERVAL_MS = 1000;
+
+    private static final long SERVER_ATTRIBUTES_TIMEOUT_MS = 10000;
+
     class AdminServer extends ServerStartegy {
 
         public AdminServer() {
@@ -791,13 +1422,18 @@ public class GlassFishClientService implements GlassFishClient {
             setNodes(new ArrayList<NodeAddress>());
 
             // getting the server attributes is happening too fast.  The admin server hasn't started yet.
-            int count = 10;
+            // Poll again with a growing interval, so a server starting a moment later is noticed at once.
+            long deadline = System.currentTimeMillis() + SERVER_ATTRIBUTES_TIMEOUT_MS;
+            long interval = SERVER_ATTRIBUTES_MIN_INTERVAL_MS;
             Map<String, String> serverAttributes = getServerAttributes(GlassFishClient.ADMINSERVER);
-            while (serverAttributes.size() == 0 && count-- > 0) {
+            while (serverAttributes.size() == 0 && System.currentTimeMillis() < deadline) {
                 try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ignore) {
+                    Thread.sleep(interval);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
                 }
+                interval = Math.min(interval * 2, SERVER_ATTRIBUTES_MAX_INTERVAL_MS);
                 serverAttributes = getServerAttributes(GlassFishClient.ADMINSERVER);
             }
 
@@ -807,18 +1443,17 @@ public class GlassFishClientService implements GlassFishClient {
             // Get the virtual servers and the associated network listeners for the DAS.
             // We'll not verify if the listeners are bound to private IP
             // addresses, or reachable from the Arquillian test client.
-            List<String> virtualServers = getVirtualServers(serverAttributes);
-            List<String> networkListeners = getNetworkListeners(serverAttributes, virtualServers);
-            String httpPortNum = getActiveHttpPort(serverAttributes, networkListeners, false);
-            String httpsPortNum = getActiveHttpPort(serverAttributes, networkListeners, true);
+            ListenerPorts ports = getListenerPorts(serverAttributes);
+            String httpPortNum = ports.getHttpPort();
+            String httpsPortNum = ports.getHttpsPort();
 
-            int httpPort = getPortValue(serverAttributes, getTarget(), httpPortNum);
+            int httpPort = getPortValue(ports, serverAttributes, getTarget(), httpPortNum);
             // A HTTPS listener might not exist in the DAS config.
             // And Arquillian requires a HTTP port for now.
             // So, we'll parse the HTTPS config conditionally.
             int httpsPort = -1;
             if (httpsPortNum != null && !httpsPortNum.equals("")) {
-                httpsPort = getPortValue(serverAttributes, getTarget(), httpsPortNum);
+                httpsPort = getPortValue(ports, serverAttributes, getTarget(), httpsPortNum);
             }
 
             addNode(new NodeAddress(GlassFishClient.ADMINSERVER, nodeHost, httpPort, httpsPort));
@@ -846,18 +1481,17 @@ public class GlassFishClientService implements GlassFishClient {
             // Get the virtual servers and the associated network listeners for the DAS.
             // We'll not verify if the listeners are bound to private IP addresses,
             // or reachable from the Arquillian test client.
-            List<String> virtualServers = getVirtualServers(serverAttributes);
-            List<String> networkListeners = getNetworkListeners(serverAttributes, virtualServers);
-            String httpPortNum = getActiveHttpPort(serverAttributes, networkListeners, false);
-            String httpsPortNum = getActiveHttpPort(serverAttributes, networkListeners, true);
+            ListenerPorts ports = getListenerPorts(serverAttributes);
+            String httpPortNum = ports.getHttpPort();
+            String httpsPortNum = ports.getHttpsPort();
 
-            int httpPort = getPortValue(serverAttributes, getTarget(), httpPortNum);
+            int httpPort = getPortValue(ports, serverAttributes, getTarget(), httpPortNum);
             // A HTTPS listener might not exist in the instance config.
             // And Arquillian requires a HTTP port for now.
             // So, we'll parse the HTTPS config conditionally.
             int httpsPort = -1;
             if (httpsPortNum != null && !httpsPortNum.equals("")) {
-                httpsPort = getPortValue(serverAttributes, getTarget(), httpsPortNum);
+                httpsPort = getPortValue(ports, serverAttributes, getTarget(), httpsPortNum);
             }
 
             addNode(new NodeAddress(getTarget(), nodeHost, httpPort, httpsPort));
@@ -867,18 +1501,27 @@ public class GlassFishClientService implements GlassFishClient {
 
     class ClusterServer extends ServerStartegy {
 
+        /**
+         * Host addresses by node name, looked up once for all the instances sharing a node
+         */
+        private final ConcurrentMap<String, Future<String>> nodeHosts = new ConcurrentHashMap<String, Future<String>>();
+
+        /**
+         * Port numbers by system property name, as defined in the cluster configuration
+         */
+        private final ConcurrentMap<String, Future<Integer>> clusterPorts =
+            new ConcurrentHashMap<String, Future<Integer>>();
+
         public ClusterServer() {
             super();
         }
 
         @Override
         public List<NodeAddress> getNodeAddressList() {
-            String nodeHost = "localhost"; // default host
             setNodes(new ArrayList<NodeAddress>());
-            Map<String, String> serverAttributes;
 
             // Get the REST resource for the cluster attributes, to reference the config-ref later
-            Map<String, String> clusterAttributes = getClusterAttributes(getTarget());
+            final Map<String, String> clusterAttributes = getClusterAttributes(getTarget());
             // Fetch the list of server instances of the cluster
             Map<String, String> serverInstances = getServerInstances(getTarget());
 
@@ -887,33 +1530,175 @@ public class GlassFishClientService implements GlassFishClient {
             // will be present on every cluster instance; only port numbers for the listener may vary.
             // We'll not verify if the listeners are bound to private IP addresses,
             // or reachable from the Arquillian test client.
-            List<String> virtualServers = getVirtualServers(clusterAttributes);
-            List<String> networkListeners = getNetworkListeners(clusterAttributes, virtualServers);
-
             // Obtain a HTTP and a HTTPS port that have been enabled on the
             // virtual server.
-            String httpPortNum = getActiveHttpPort(clusterAttributes, networkListeners, false);
-            String httpsPortNum = getActiveHttpPort(clusterAttributes, networkListeners, true);
-
-            for (Map.Entry serverInstance : serverInstances.entrySet()) {
-                String serverName = serverInstance.getKey().toString();
-
-                serverAttributes = getServerAttributes(serverName);
-                nodeHost = getHostAddress(serverAttributes);
-
-                int httpPort = getPortValue(clusterAttributes, serverName, httpPortNum);
-                // A HTTPS listener might not exist in the cluster config.
-                // And Arquillian requires a HTTP port for now.
-                // So, we'll parse the HTTPS config conditionally.
-                int httpsPort = -1;
-                if (httpsPortNum != null && !httpsPortNum.equals("")) {
-                    httpsPort = getPortValue(clusterAttributes, serverName, httpsPortNum);
-                }
+            final ListenerPorts ports = getListenerPorts(clusterAttributes);
 
-                addNode(new NodeAddress(serverName, nodeHost, httpPort, httpsPort));
+            if (serverInstances.isEmpty()) {
+                return getNodes();
+            }
+
+            // The instances are resolved concurrently, and listed in the order of their names
+            int threads = Math.min(getConfiguration().getDiscoveryThreads(), serverInstances.size());
+            ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new DaemonThreadFactory("glassfish-discovery-"));
+            try {
+                List<Future<NodeAddress>> instances = new ArrayList<Future<NodeAddress>>();
+                for (final String serverName : new TreeSet<String>(serverInstances.keySet())) {
+                    instances.add(executor.submit(new Callable<NodeAddress>() {
+                        public NodeAddress call() {
+                            return getNodeAddress(ports, clusterAttributes, serverName);
+                        }
+                    }));
+                }
+                for (Future<NodeAddress> instance : instances) {
+                    addNode(getResult(instance));
+                }
+            } finally {
+                executor.shutdownNow();
             }
 
             return getNodes();
         }
+
+        private NodeAddress getNodeAddress(ListenerPorts ports, Map<String, String> clusterAttributes,
+            String serverName) {
+            String httpPortNum = ports.getHttpPort();
+            String httpsPortNum = ports.getHttpsPort();
+            final Map<String, String> serverAttributes = getServerAttributes(serverName);
+            String nodeHost = lookupOnce(nodeHosts, serverAttributes.get("nodeRef"), new Callable<String>() {
+                public String call() {
+                    return getHostAddress(serverAttributes);
+                }
+            });
+
+            int httpPort = getInstancePortValue(ports, clusterAttributes, serverName, httpPortNum);
+            // A HTTPS listener might not exist in the cluster config.
+            // And Arquillian requires a HTTP port for now.
+            // So, we'll parse the HTTPS config conditionally.
+            int httpsPort = -1;
+            if (httpsPortNum != null && !httpsPortNum.equals("")) {
+                httpsPort = getInstancePortValue(ports, clusterAttributes, serverName, httpsPortNum);
+            }
+
+            return new NodeAddress(serverName, nodeHost, httpPort, httpsPort);
+        }
+
+        /**
+         * Same as {@link GlassFishClientService#getPortValue(ListenerPorts, Map, String, String)}, but
+         * the system property of the cluster configuration is read once for all the instances.
+         */
+        private int getInstancePortValue(final ListenerPorts ports, final Map<String, String> clusterAttributes,
+            String serverName, String portNum) {
+            try {
+                return Integer.parseInt(portNum);
+            } catch (NumberFormatException formatEx) {
+                final String propertyName = getPortPropertyName(portNum);
+                if (propertyName == null) {
+                    return -1;
+                }
+                int portValue = lookupOnce(clusterPorts, propertyName, new Callable<Integer>() {
+                    public Integer call() {
+                        return getSystemProperty(ports, clusterAttributes, propertyName);
+                    }
+                });
+                return getServerSystemProperty(serverName, propertyName, portValue);
+            }
+        }
+
+        /**
+         * Run a lookup the first time its key is requested, the concurrent requests
+         * of the same key wait for the result of the first one.
+         */
+        private <T> T lookupOnce(ConcurrentMap<String, Future<T>> results, String key, Callable<T> lookup) {
+            FutureTask<T> task = new FutureTask<T>(lookup);
+            Future<T> result = results.putIfAbsent(key, task);
+            if (result == null) {
+                result = task;
+                task.run();
+            }
+            return getResult(result);
+        }
+
+        private <T> T getResult(Future<T> result) {
+            try {
+                return result.get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new GlassFishClientException("Interrupted while discovering the instances of cluster: "
+                    + getTarget());
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new GlassFishClientException("Could not discover the instances of cluster: " + getTarget());
+            }
+        }
+    }
+
+    /**
+     * The port values of the active HTTP and HTTPS listeners of a configuration. The values
+     * may be port numbers, or references to system properties like ${HTTP_LISTENER_PORT}.
+     */
+    private static class ListenerPorts {
+
+        private final String httpPort;
+
+        private final String httpsPort;
+
+        private final DottedNames dottedNames;
+
+        private final String configDottedName;
+
+        /**
+         * @param dottedNames
+         *     the values of the configuration, null if it was not fetched as a whole
+         * @param configDottedName
+         *     the dotted name prefix of the configuration
+         */
+        ListenerPorts(String httpPort, String httpsPort, DottedNames dottedNames, String configDottedName) {
+            this.httpPort = httpPort;
+            this.httpsPort = httpsPort;
+            this.dottedNames = dottedNames;
+            this.configDottedName = configDottedName;
+        }
+
+        String getHttpPort() {
+            return httpPort;
+        }
+
+        String getHttpsPort() {
+            return httpsPort;
+        }
+
+        /**
+         * @return the value of a system property of the configuration, or null if it has not been fetched
+         */
+        String getConfigSystemProperty(String propertyName) {
+            if (dottedNames == null) {
+                return null;
+            }
+            return dottedNames.get(configDottedName + "system-property." + DottedNames.escape(propertyName) + ".value");
+        }
+    }
+
+    /**
+     * Creates the daemon threads of the client, so they never keep the test JVM alive
+     */
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -26,21 +26,34 @@ import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.CsrfProtectionFilter;
 import com.sun.jersey.api.client.filter.HTTPBasicAuthFilter;
 import com.sun.jersey.api.container.ContainerException;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.config.ApacheHttpClient4Config;
+import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
 import com.sun.jersey.multipart.FormDataMultiPart;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.ProxySelectorRoutePlanner;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.pool.PoolStats;
 import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+import org.jboss.arquillian.container.glassfish.clientutils.CommandResult.Section;
+import org.jboss.arquillian.container.glassfish.clientutils.ResponseReader.Token;
 
 import javax.ws.rs.core.MediaType;
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamConstants;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.ProxySelector;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -60,11 +73,26 @@ public class GlassFishClientUtil {
 
     private String adminBaseUrl;
 
+    private volatile PoolingClientConnectionManager connectionManager;
+
+    private volatile Client client;
+
+    private ResponseFormat responseFormat;
+
+    private final AtomicLong requestCount = new AtomicLong();
+
+    private static final MediaType EVENT_STREAM_TYPE = MediaType.valueOf("text/event-stream");
+
     private static final Logger log = Logger.getLogger(GlassFishClientUtil.class.getName());
 
     public GlassFishClientUtil(CommonGlassFishConfiguration configuration, String adminBaseUrl) {
         this.configuration = configuration;
         this.adminBaseUrl = adminBaseUrl;
+        this.responseFormat = ResponseFormat.fromString(configuration.getResponseFormat());
+        if (this.responseFormat == null) {
+            this.responseFormat = ResponseFormat.XML;
+        }
+        this.client = createClient();
     }
 
     public CommonGlassFishConfiguration getConfiguration() {
@@ -72,27 +100,11 @@ public class GlassFishClientUtil {
     }
 
     public Map<String, String> getAttributes(String additionalResourceUrl) {
-        Map responseMap = GETRequest(additionalResourceUrl);
-        Map<String, String> attributes = new HashMap<String, String>();
-
-        Map resultExtraProperties = (Map) responseMap.get("extraProperties");
-        if (resultExtraProperties != null) {
-            attributes = (Map<String, String>) resultExtraProperties.get("entity");
-        }
-
-        return attributes;
+        return getCommandResult(additionalResourceUrl, Section.ENTITY).getEntity().asMap();
     }
 
     public Map<String, String> getChildResources(String additionalResourceUrl) throws ContainerException {
-        Map responseMap = GETRequest(additionalResourceUrl);
-        Map<String, String> childResources = new HashMap<String, String>();
-
-        Map resultExtraProperties = (Map) responseMap.get("extraProperties");
-        if (resultExtraProperties != null) {
-            childResources = (Map<String, String>) resultExtraProperties.get("childResources");
-        }
-
-        return childResources;
+        return getCommandResult(additionalResourceUrl, Section.CHILD_RESOURCES).getChildResources().asMap();
     }
 
     public Map GETRequest(String additionalResourceUrl) {
@@ -103,14 +115,10 @@ public class GlassFishClientUtil {
     }
 
     public List<Map> getInstancesList(String additionalResourceUrl) throws ContainerException {
-        Map responseMap = GETRequest(additionalResourceUrl);
-        List<Map> instancesList = new ArrayList();
-
-        Map resultExtraProperties = (Map) responseMap.get("extraProperties");
-        if (resultExtraProperties != null) {
-            instancesList = (List<Map>) resultExtraProperties.get("instanceList");
+        List<Map> instancesList = new ArrayList<Map>();
+        for (EntityAttributes instance : getCommandResult(additionalResourceUrl, Section.INSTANCES).getInstances()) {
+            instancesList.add(instance.asMap());
         }
-
         return instancesList;
     }
 
@@ -123,52 +131,280 @@ public class GlassFishClientUtil {
     }
 
     /**
-     * Basic REST call preparation, with the additional resource url appended
+     * Execute a GET request, materializing only the requested sections of the response
      *
      * @param additionalResourceUrl
      *     url portion past the base to use
+     * @param sections
+     *     of the response to be materialized
      *
-     * @return the resource builder to execute
+     * @return the typed result
      */
-    private WebResource.Builder prepareClient(String additionalResourceUrl) {
-        final Client client = Client.create();
+    public CommandResult getCommandResult(String additionalResourceUrl, Section... sections) {
+        ClientResponse response = prepareClient(additionalResourceUrl).get(ClientResponse.class);
+        return getCommandResult(response, CommandResult.sections(sections));
+    }
+
+    /**
+     * Execute a GET request on a resource of the management root, next to the domain tree,
+     * like the jobs of GlassFish 4 and later
+     *
+     * @param managementResourceUrl
+     *     url portion past /management to use
+     * @param sections
+     *     of the response to be materialized
+     *
+     * @return the typed result
+     */
+    public CommandResult getManagementResult(String managementResourceUrl, Section... sections) {
+        String managementBaseUrl = adminBaseUrl.substring(0, adminBaseUrl.lastIndexOf('/'));
+        ClientResponse response = prepareResource(managementBaseUrl + managementResourceUrl).get(ClientResponse.class);
+        return getCommandResult(response, CommandResult.sections(sections));
+    }
+
+    /**
+     * Execute a multipart POST request, materializing only the requested sections of the response
+     *
+     * @param additionalResourceUrl
+     *     url portion past the base to use
+     * @param form
+     *     the multipart form to post
+     * @param sections
+     *     of the response to be materialized
+     *
+     * @return the typed result
+     */
+    public CommandResult postCommandResult(String additionalResourceUrl, FormDataMultiPart form,
+        Section... sections) {
+        ClientResponse response = prepareClient(additionalResourceUrl).type(MediaType.MULTIPART_FORM_DATA_TYPE)
+            .post(ClientResponse.class, form);
+        return getCommandResult(response, CommandResult.sections(sections));
+    }
+
+    /**
+     * Execute a multipart POST request of a command streaming its progress as server-sent events,
+     * like the commands of GlassFish 4 and later. The progress messages are handed to the listener
+     * while they are received.
+     *
+     * @param additionalResourceUrl
+     *     url portion past the base to use
+     * @param form
+     *     the multipart form to post
+     * @param listener
+     *     notified of the progress messages of the command
+     */
+    void postCommandProgress(String additionalResourceUrl, FormDataMultiPart form,
+        CommandProgressListener listener) {
+        ClientResponse response = prepareResource(this.adminBaseUrl + additionalResourceUrl, EVENT_STREAM_TYPE)
+            .type(MediaType.MULTIPART_FORM_DATA_TYPE).post(ClientResponse.class, form);
+        if (response.getType() == null || !response.getType().isCompatible(EVENT_STREAM_TYPE)) {
+            // a server which does not stream the progress answers with the result
+            getCommandResult(response, CommandResult.sections());
+            return;
+        }
+
+        try {
+            EventStreamReader events = new EventStreamReader(response.getEntityInputStream());
+            while (events.next()) {
+                Map data = readEventData(events.getData());
+                if (data == null) {
+                    continue;
+                }
+                Map report = findMap(data, "exit_code");
+                if (report != null) {
+                    // the action report of the command ends the stream
+                    checkExitCode((String) report.get("exit_code"),
+                        "exit_code: " + report.get("exit_code") + ", message: " + report.get("message"));
+                    return;
+                }
+                Map progress = findMap(data, "message");
+                if (progress != null && progress.get("message") != null) {
+                    listener.progress(progress.get("message").toString());
+                }
+            }
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, null, ex);
+            throw new RuntimeException(ex);
+        } finally {
+            // release the connection to the pool
+            response.close();
+        }
+        throw new GlassFishClientException("The progress of " + additionalResourceUrl + " ended without a result");
+    }
+
+    private static Map readEventData(String data) throws IOException {
+        if (data.trim().startsWith("{")) {
+            return readMap(new JsonResponseReader(new ByteArrayInputStream(data.getBytes("UTF-8")), "UTF-8"));
+        }
+        return null;
+    }
+
+    /**
+     * Find the first map holding a key, depth first
+     */
+    private static Map findMap(Map map, String key) {
+        if (map.containsKey(key)) {
+            return map;
+        }
+        for (Object value : map.values()) {
+            if (value instanceof Map) {
+                Map found = findMap((Map) value, key);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get a snapshot of the connection pool shared by the REST requests
+     *
+     * @return the pool statistics
+     */
+    public ConnectionPoolStatistics getConnectionPoolStatistics() {
+        PoolStats stats = connectionManager.getTotalStats();
+        return new ConnectionPoolStatistics(stats.getMax(), stats.getLeased() + stats.getAvailable(),
+            requestCount.get());
+    }
+
+    /**
+     * Shut down the connection pool, closing its connections, leased or idle. The next
+     * requests are sent through a new pool, opening new connections on demand.
+     */
+    public synchronized void closeConnections() {
+        PoolingClientConnectionManager closed = connectionManager;
+        client = createClient();
+        closed.shutdown();
+    }
+
+    /**
+     * Create the client shared by all the REST calls, backed by a bounded pool of keep-alive connections
+     *
+     * @return the client
+     */
+    private Client createClient() {
+        // the system scheme registry honors the javax.net.ssl properties to reach an https DAS
+        SchemeRegistry schemeRegistry = SchemeRegistryFactory.createSystemDefault();
+        connectionManager = new PoolingClientConnectionManager(schemeRegistry);
+        connectionManager.setMaxTotal(configuration.getMaxConnections());
+        // every request goes to the DAS, so the single route may use the whole pool
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnections());
+
+        final ApacheHttpClient4Config clientConfig = new DefaultApacheHttpClient4Config();
+        clientConfig.getProperties().put(ApacheHttpClient4Config.PROPERTY_CONNECTION_MANAGER, connectionManager);
+        // an entity of unknown length is streamed with chunked transfer encoding, unless buffering is
+        // requested to send its length, with the whole entity held in memory
+        clientConfig.getProperties().put(ApacheHttpClient4Config.PROPERTY_ENABLE_BUFFERING,
+            configuration.getUploadChunkSize() == 0);
+
+        final ApacheHttpClient4 client = ApacheHttpClient4.create(clientConfig);
+        // the routes follow the http.proxyHost and http.nonProxyHosts properties, like the JDK connections
+        ((AbstractHttpClient) client.getClientHandler().getHttpClient()).setRoutePlanner(
+            new ProxySelectorRoutePlanner(schemeRegistry, ProxySelector.getDefault()));
         if (configuration.isAuthorisation()) {
             client.addFilter(new HTTPBasicAuthFilter(
                 configuration.getAdminUser(),
                 configuration.getAdminPassword()));
         }
         client.addFilter(new CsrfProtectionFilter());
-        return client.resource(this.adminBaseUrl + additionalResourceUrl)
-            .accept(MediaType.APPLICATION_XML_TYPE)
+        return client;
+    }
+
+    /**
+     * Basic REST call preparation, with the additional resource url appended
+     *
+     * @param additionalResourceUrl
+     *     url portion past the base to use
+     *
+     * @return the resource builder to execute
+     */
+    private WebResource.Builder prepareClient(String additionalResourceUrl) {
+        return prepareResource(this.adminBaseUrl + additionalResourceUrl);
+    }
+
+    private WebResource.Builder prepareResource(String resourceUrl) {
+        return prepareResource(resourceUrl, responseFormat.getAcceptedTypes());
+    }
+
+    private WebResource.Builder prepareResource(String resourceUrl, MediaType... acceptedTypes) {
+        // evict the connections the DAS may have already dropped on its side
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(configuration.getConnectionIdleTimeoutMs(), TimeUnit.MILLISECONDS);
+        requestCount.incrementAndGet();
+
+        return client.resource(resourceUrl)
+            .accept(acceptedTypes)
             .header("X-GlassFish-3", "ignore");
     }
 
     private Map getResponseMap(ClientResponse response) throws ContainerException {
         Map responseMap = new HashMap();
-        String message = "";
-        final String xmlDoc = response.getEntity(String.class);
 
-        // Marshalling the XML format response to a java Map
-        if (xmlDoc != null && !xmlDoc.isEmpty()) {
-            responseMap = xmlToMap(xmlDoc);
+        // Marshalling the XML or JSON format response to a java Map, straight from the entity stream
+        final InputStream entity = response.getEntityInputStream();
+        try {
+            PushbackInputStream document = new PushbackInputStream(entity);
+            if (skipLeadingWhitespace(document)) {
+                final Map documentMap = readMap(responseFormat.createReader(response.getType(), document));
+                if (documentMap != null) {
+                    responseMap = documentMap;
+                }
+            }
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, null, ex);
+            throw new RuntimeException(ex);
+        } finally {
+            // release the connection to the pool
+            response.close();
+        }
+
+        checkResponseStatus(response, (String) responseMap.get("exit_code"), (String) responseMap.get("message"),
+            !responseMap.isEmpty());
+        return responseMap;
+    }
+
+    private CommandResult getCommandResult(ClientResponse response, Set<Section> sections)
+        throws ContainerException {
+        CommandResult result = new CommandResult();
+        boolean hasDocument = false;
 
-            message = "exit_code: " + responseMap.get("exit_code")
-                + ", message: " + responseMap.get("message");
+        final InputStream entity = response.getEntityInputStream();
+        try {
+            PushbackInputStream document = new PushbackInputStream(entity);
+            if (skipLeadingWhitespace(document)) {
+                ResponseReader reader = responseFormat.createReader(response.getType(), document);
+                try {
+                    result = CommandResult.read(reader, sections);
+                    hasDocument = true;
+                } finally {
+                    reader.close();
+                }
+            }
+        } catch (IOException ex) {
+            log.log(Level.SEVERE, null, ex);
+            throw new RuntimeException(ex);
+        } finally {
+            // release the connection to the pool
+            response.close();
+        }
+
+        checkResponseStatus(response, result.getExitCode(), result.getMessage(), hasDocument);
+        return result;
+    }
+
+    private void checkResponseStatus(ClientResponse response, String exitCode, String resultMessage,
+        boolean hasDocument) throws ContainerException {
+        String message = "";
+        if (hasDocument) {
+            message = "exit_code: " + exitCode + ", message: " + resultMessage;
         }
 
         ClientResponse.Status status = ClientResponse.Status.fromStatusCode(response.getStatus());
         if (status.getFamily() == javax.ws.rs.core.Response.Status.Family.SUCCESSFUL) {
 
             // O.K. the jersey call was successful, what about the GlassFish server response?
-            if (responseMap.get("exit_code") == null) {
-                throw new GlassFishClientException(message);
-            } else if (WARNING.equals(responseMap.get("exit_code"))) {
-                // Warning is not a failure - some warnings in GlassFish are inevitable (i.e. persistence-related: ARQ-606)
-                log.warning("Deployment resulted in a warning: " + message);
-            } else if (!SUCCESS.equals(responseMap.get("exit_code"))) {
-                // Response is not a warning nor success - it's surely a failure.
-                throw new GlassFishClientException(message);
-            }
+            checkExitCode(exitCode, message);
         } else if (status.getReasonPhrase() == "Not Found") {
             // the REST resource can not be found (for optional resources it can be O.K.)
             message += " [status: " + status.getFamily() + " reason: " + status.getReasonPhrase() + "]";
@@ -178,8 +414,18 @@ public class GlassFishClientUtil {
             log.severe(message);
             throw new ContainerException(message);
         }
+    }
 
-        return responseMap;
+    private static void checkExitCode(String exitCode, String message) {
+        if (exitCode == null) {
+            throw new GlassFishClientException(message);
+        } else if (WARNING.equals(exitCode)) {
+            // Warning is not a failure - some warnings in GlassFish are inevitable (i.e. persistence-related: ARQ-606)
+            log.warning("Deployment resulted in a warning: " + message);
+        } else if (!SUCCESS.equals(exitCode)) {
+            // Response is not a warning nor success - it's surely a failure.
+            throw new GlassFishClientException(message);
+        }
     }
 
     /**
@@ -196,127 +442,70 @@ public class GlassFishClientUtil {
             return new HashMap();
         }
 
-        InputStream input = null;
-        Map map = null;
         try {
-            XMLInputFactory factory = XMLInputFactory.newInstance();
-            factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
-            input = new ByteArrayInputStream(document.trim().getBytes("UTF-8"));
-            XMLStreamReader stream = factory.createXMLStreamReader(input);
-            while (stream.hasNext()) {
-                int currentEvent = stream.next();
-                if (currentEvent == XMLStreamConstants.START_ELEMENT) {
-                    if ("map".equals(stream.getLocalName())) {
-                        map = resolveXmlMap(stream);
-                    }
-                }
+            return xmlToMap(new ByteArrayInputStream(document.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Marshalling a Glassfish Mng API response XML document to a java Map object,
+     * reading the StAX events directly from the stream.
+     *
+     * @param input
+     *     stream of the XML document, it is not closed by this method
+     *
+     * @return map containing the XML doc representation in java map format,
+     * or null if the document is empty or contains no map
+     */
+    public Map xmlToMap(InputStream input) {
+        try {
+            PushbackInputStream document = new PushbackInputStream(input);
+            if (!skipLeadingWhitespace(document)) {
+                return null;
             }
-        } catch (Exception ex) {
+            return readMap(new XmlResponseReader(document));
+        } catch (IOException ex) {
             log.log(Level.SEVERE, null, ex);
             throw new RuntimeException(ex);
-        } finally {
-            try {
-                input.close();
-            } catch (IOException ex) {
-                log.log(Level.SEVERE, null, ex);
-            }
         }
-
-        return map;
     }
 
-    private Map resolveXmlMap(XMLStreamReader stream) throws XMLStreamException {
-
-        boolean endMapFlag = false;
-        Map<String, Object> entry = new HashMap<String, Object>();
-        String key = null;
-        String elementName = null;
-
-        while (!endMapFlag) {
-
-            int currentEvent = stream.next();
-            if (currentEvent == XMLStreamConstants.START_ELEMENT) {
-
-                if ("entry".equals(stream.getLocalName())) {
-                    key = stream.getAttributeValue(null, "key");
-                    String value = stream.getAttributeValue(null, "value");
-                    if (value != null) {
-                        entry.put(key, value);
-                        key = null;
-                    }
-                } else if ("map".equals(stream.getLocalName())) {
-                    Map value = resolveXmlMap(stream);
-                    entry.put(key, value);
-                } else if ("list".equals(stream.getLocalName())) {
-                    List value = resolveXmlList(stream);
-                    entry.put(key, value);
-                } else {
-                    elementName = stream.getLocalName();
-                }
-            } else if (currentEvent == XMLStreamConstants.END_ELEMENT) {
-
-                if ("map".equals(stream.getLocalName())) {
-                    endMapFlag = true;
-                }
-                elementName = null;
-            } else {
-
-                String document = stream.getText();
-                if (elementName != null) {
-                    if ("number".equals(elementName)) {
-                        if (document.contains(".")) {
-                            entry.put(key, Double.parseDouble(document));
-                        } else {
-                            entry.put(key, Long.parseLong(document));
-                        }
-                    } else if ("string".equals(elementName)) {
-                        entry.put(key, document);
-                    }
-                    elementName = null;
+    /**
+     * Read the top level map of a response document, and release the reader
+     *
+     * @return the map, or null if the document contains no map
+     */
+    private static Map readMap(ResponseReader reader) throws IOException {
+        try {
+            for (Token token = reader.next(); token != Token.END_DOCUMENT; token = reader.next()) {
+                if (token == Token.START_MAP) {
+                    return reader.readMapEntries();
                 }
-            } // end if
-        } // end while
-        return entry;
+            }
+            return null;
+        } finally {
+            reader.close();
+        }
     }
 
-    private List resolveXmlList(XMLStreamReader stream) throws XMLStreamException {
-
-        boolean endListFlag = false;
-        List list = new ArrayList();
-        String elementName = null;
-
-        while (!endListFlag) {
-
-            int currentEvent = stream.next();
-            if (currentEvent == XMLStreamConstants.START_ELEMENT) {
-                if ("map".equals(stream.getLocalName())) {
-                    list.add(resolveXmlMap(stream));
-                } else {
-                    elementName = stream.getLocalName();
-                }
-            } else if (currentEvent == XMLStreamConstants.END_ELEMENT) {
-
-                if ("list".equals(stream.getLocalName())) {
-                    endListFlag = true;
-                }
-                elementName = null;
-            } else {
-
-                String document = stream.getText();
-                if (elementName != null) {
-                    if ("number".equals(elementName)) {
-                        if (document.contains(".")) {
-                            list.add(Double.parseDouble(document));
-                        } else {
-                            list.add(Long.parseLong(document));
-                        }
-                    } else if ("string".equals(elementName)) {
-                        list.add(document);
-                    }
-                    elementName = null;
-                }
-            } // end if
-        } // end while
-        return list;
+    /**
+     * Skip the whitespace before the XML declaration, which the parser would reject,
+     * or before the JSON document
+     *
+     * @return false if the stream holds nothing but whitespace
+     */
+    private static boolean skipLeadingWhitespace(PushbackInputStream input) throws IOException {
+        int b;
+        do {
+            b = input.read();
+        } while (b == ' ' || b == '\t' || b == '\r' || b == '\n');
+
+        if (b == -1) {
+            return false;
+        }
+        input.unread(b);
+        return true;
     }
 }
@@ -0,0 +1,259 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+/**
+ * Reads the JSON format of the GlassFish management API responses:
+ * <pre>
+ * {"exit_code":"SUCCESS", "extraProperties":{...}, "children":[{...}]}
+ * </pre>
+ * The document is tokenized while it is read from the stream. Objects are
+ * reported as maps and arrays as lists, booleans are reported as strings like
+ * the XML format does.
+ */
+class JsonResponseReader extends ResponseReader {
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private final Reader input;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * reused for every string and number of the document
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    private String key;
+
+    private Object value;
+
+    JsonResponseReader(InputStream input, String charset) throws IOException {
+        this.input = new InputStreamReader(input, charset);
+    }
+
+    @Override
+    Token next() throws IOException {
+        while (true) {
+            int c = nextNonWhitespace();
+            switch (c) {
+                case -1:
+                    return Token.END_DOCUMENT;
+                case '{':
+                    return Token.START_MAP;
+                case '}':
+                    return Token.END_MAP;
+                case '[':
+                    return Token.START_LIST;
+                case ']':
+                    return Token.END_LIST;
+                case ',':
+                case ':':
+                    continue;
+                case '"':
+                    String string = readString();
+                    if (peekNonWhitespace() == ':') {
+                        position++;
+                        key = internKey(string);
+                        return Token.KEY;
+                    }
+                    value = string;
+                    return Token.VALUE;
+                default:
+                    value = readLiteral((char) c);
+                    return Token.VALUE;
+            }
+        }
+    }
+
+    /**
+     * Skips the characters of the value, without creating any of its strings
+     */
+    @Override
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            int c = nextNonWhitespace();
+            if (c == -1) {
+                return;
+            } else if (c == '{' || c == '[') {
+                depth++;
+            } else if (c == '}' || c == ']') {
+                depth--;
+            } else if (c == '"') {
+                skipString();
+            } else if (c != ',' && c != ':') {
+                skipLiteral();
+            }
+        } while (depth > 0);
+    }
+
+    @Override
+    String getKey() {
+        return key;
+    }
+
+    @Override
+    Object getValue() {
+        return value;
+    }
+
+    @Override
+    void close() {
+        // the stream is owned by the caller
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+        while (true) {
+            int c = read();
+            if (c == -1) {
+                throw new IOException("Unterminated string in JSON document");
+            } else if (c == '"') {
+                return text.toString();
+            } else if (c == '\\') {
+                text.append(readEscape());
+            } else {
+                text.append((char) c);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Invalid unicode escape in JSON document");
+                    }
+                    code = (code << 4) + digit;
+                }
+                return (char) code;
+            case -1:
+                throw new IOException("Unterminated string in JSON document");
+            default:
+                // \" \\ \/
+                return (char) c;
+        }
+    }
+
+    private void skipString() throws IOException {
+        while (true) {
+            int c = read();
+            if (c == -1 || c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            }
+        }
+    }
+
+    /**
+     * Read a number, true, false or null
+     */
+    private Object readLiteral(char first) throws IOException {
+        text.setLength(0);
+        text.append(first);
+        while (isLiteralPart(peek())) {
+            text.append((char) read());
+        }
+
+        String literal = text.toString();
+        if ("null".equals(literal)) {
+            return null;
+        } else if ("true".equals(literal) || "false".equals(literal)) {
+            return literal;
+        }
+        try {
+            if (literal.indexOf('.') != -1 || literal.indexOf('e') != -1 || literal.indexOf('E') != -1) {
+                return Double.parseDouble(literal);
+            }
+            return Long.parseLong(literal);
+        } catch (NumberFormatException ex) {
+            throw new IOException("Invalid value in JSON document: " + literal);
+        }
+    }
+
+    private void skipLiteral() throws IOException {
+        while (isLiteralPart(peek())) {
+            position++;
+        }
+    }
+
+    private static boolean isLiteralPart(int c) {
+        return c != -1 && c != ',' && c != '}' && c != ']' && c != ':' && c != '"' && !Character.isWhitespace(c);
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        int c;
+        do {
+            c = read();
+        } while (c != -1 && Character.isWhitespace(c));
+        return c;
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        int c = peek();
+        while (c != -1 && Character.isWhitespace(c)) {
+            position++;
+            c = peek();
+        }
+        return c;
+    }
+
+    private int read() throws IOException {
+        int c = peek();
+        if (c != -1) {
+            position++;
+        }
+        return c;
+    }
+
+    private int peek() throws IOException {
+        if (position == limit) {
+            limit = input.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position];
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
+import org.jboss.arquillian.container.spi.client.protocol.metadata.Servlet;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A HTTPContext whose servlets are resolved on the first access to them. Deployments
+ * which are not testable, or whose protocol does not look up servlets, never pay for the
+ * requests listing the sub-components of the application.
+ * <p>
+ * A failed resolution is reported to the caller and run again on the next access.
+ */
+class LazyHTTPContext extends HTTPContext {
+
+    private final Callable<List<Servlet>> servlets;
+
+    private boolean resolved;
+
+    /**
+     * @param servlets
+     *     lists the servlets of the deployed application
+     */
+    LazyHTTPContext(String host, int port, Callable<List<Servlet>> servlets) {
+        super(host, port);
+        this.servlets = servlets;
+    }
+
+    @Override
+    public HTTPContext add(Servlet servlet) {
+        resolve();
+        return super.add(servlet);
+    }
+
+    @Override
+    public List<Servlet> getServlets() {
+        resolve();
+        return super.getServlets();
+    }
+
+    @Override
+    public Servlet getServletByName(String name) {
+        resolve();
+        return super.getServletByName(name);
+    }
+
+    /**
+     * @return true once the servlets have been resolved
+     */
+    synchronized boolean isResolved() {
+        return resolved;
+    }
+
+    private synchronized void resolve() {
+        if (resolved) {
+            return;
+        }
+        List<Servlet> resolvedServlets;
+        try {
+            resolvedServlets = servlets.call();
+        } catch (RuntimeException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            throw new GlassFishClientException("Could not resolve the servlets of " + this, ex);
+        }
+        resolved = true;
+        for (Servlet servlet : resolvedServlets) {
+            super.add(servlet);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The formats the GlassFish management REST API can answer in.
+ */
+public enum ResponseFormat {
+
+    /**
+     * Request XML responses, understood by every GlassFish version.
+     */
+    XML(MediaType.APPLICATION_XML_TYPE),
+
+    /**
+     * Request JSON responses, which are more compact on the wire.
+     */
+    JSON(MediaType.APPLICATION_JSON_TYPE),
+
+    /**
+     * Accept both formats, preferring JSON, and let the server decide.
+     */
+    AUTO(MediaType.APPLICATION_JSON_TYPE, MediaType.valueOf("application/xml;q=0.9"));
+
+    private final MediaType[] acceptedTypes;
+
+    private ResponseFormat(MediaType... acceptedTypes) {
+        this.acceptedTypes = acceptedTypes;
+    }
+
+    /**
+     * @return the media types to send in the Accept header
+     */
+    MediaType[] getAcceptedTypes() {
+        return acceptedTypes;
+    }
+
+    /**
+     * Create a reader for a response document. The Content-Type of the response wins
+     * over the requested format, as older servers may ignore the Accept header.
+     *
+     * @param contentType
+     *     of the response, may be null
+     * @param document
+     *     stream of the response
+     *
+     * @return the reader of the document
+     */
+    ResponseReader createReader(MediaType contentType, InputStream document) throws IOException {
+        boolean json = (contentType != null) ? isJson(contentType) : this == JSON;
+        if (json) {
+            String charset = (contentType != null) ? contentType.getParameters().get("charset") : null;
+            return new JsonResponseReader(document, (charset != null) ? charset : "UTF-8");
+        }
+        return new XmlResponseReader(document);
+    }
+
+    private static boolean isJson(MediaType contentType) {
+        return "json".equalsIgnoreCase(contentType.getSubtype()) || contentType.getSubtype().endsWith("+json");
+    }
+
+    /**
+     * Resolve the format of a configuration value
+     *
+     * @param value
+     *     xml, json or auto, case insensitive
+     *
+     * @return the format, or null for an unknown value
+     */
+    public static ResponseFormat fromString(String value) {
+        for (ResponseFormat format : values()) {
+            if (format.name().equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        return null;
+    }
+}
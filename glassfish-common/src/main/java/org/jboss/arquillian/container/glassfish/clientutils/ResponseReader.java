@@ -0,0 +1,211 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Pull reader over a GlassFish management API response.
+ * <p>
+ * The responses are trees of maps, lists and scalar values. The reader walks
+ * the tree as a flat sequence of tokens, so the response can be consumed while
+ * it is read from the wire, and the parts nobody is interested in can be
+ * skipped without being materialized.
+ */
+abstract class ResponseReader {
+
+    enum Token {
+        START_MAP, END_MAP, START_LIST, END_LIST, KEY, VALUE, END_DOCUMENT
+    }
+
+    private static final Map<String, String> KNOWN_KEYS = new HashMap<String, String>();
+
+    static {
+        for (String key : new String[] {"exit_code", "command", "message", "extraProperties", "entity",
+            "childResources", "properties", "children", "instanceList", "name", "status", "moduleInfo",
+            "contextRoot", "configRef", "nodeRef", "value", "version-number"}) {
+            KNOWN_KEYS.put(key, key);
+        }
+    }
+
+    /**
+     * Advance to the next token
+     *
+     * @return the token
+     */
+    abstract Token next() throws IOException;
+
+    /**
+     * @return the key of the current KEY token
+     */
+    abstract String getKey();
+
+    /**
+     * @return the value of the current VALUE token, a String, a Long, a Double or null
+     */
+    abstract Object getValue();
+
+    /**
+     * Release the underlying parser, the stream is not closed.
+     */
+    abstract void close() throws IOException;
+
+    /**
+     * Skip the value following a KEY token, with all of its content
+     */
+    void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            Token token = next();
+            if (token == Token.START_MAP || token == Token.START_LIST) {
+                depth++;
+            } else if (token == Token.END_MAP || token == Token.END_LIST) {
+                depth--;
+            } else if (token == Token.END_DOCUMENT) {
+                return;
+            }
+        } while (depth > 0);
+    }
+
+    /**
+     * Read the value following a KEY token or inside a list
+     *
+     * @return a Map, a List, a scalar value or null
+     */
+    Object readValue() throws IOException {
+        Token token = next();
+        if (token == Token.START_MAP) {
+            return readMapEntries();
+        } else if (token == Token.START_LIST) {
+            return readListItems();
+        } else if (token == Token.VALUE) {
+            return getValue();
+        }
+        return null;
+    }
+
+    /**
+     * Read the scalar value following a KEY token. A map or list value is skipped.
+     *
+     * @return the value as a String or null
+     */
+    String readScalar() throws IOException {
+        Token token = next();
+        if (token == Token.VALUE) {
+            Object value = getValue();
+            return (value != null) ? value.toString() : null;
+        } else if (token == Token.START_MAP || token == Token.START_LIST) {
+            skipRest();
+        }
+        return null;
+    }
+
+    /**
+     * Read a map of scalar values following a KEY token. Nested maps and lists are skipped.
+     *
+     * @return the map, empty if the value is not a map
+     */
+    Map<String, String> readStringMap() throws IOException {
+        Token token = next();
+        if (token == Token.START_MAP) {
+            return readStringMapEntries();
+        } else if (token == Token.START_LIST) {
+            skipRest();
+        }
+        return new HashMap<String, String>();
+    }
+
+    /**
+     * Read the entries of a map of scalar values, after its START_MAP token
+     */
+    Map<String, String> readStringMapEntries() throws IOException {
+        Map<String, String> map = new HashMap<String, String>();
+        for (Token token = next(); token == Token.KEY; token = next()) {
+            String key = getKey();
+            String value = readScalar();
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Read the entries of a map, after its START_MAP token
+     */
+    Map<String, Object> readMapEntries() throws IOException {
+        Map<String, Object> map = new HashMap<String, Object>();
+        for (Token token = next(); token == Token.KEY; token = next()) {
+            String key = getKey();
+            Object value = readValue();
+            if (value != null) {
+                map.put(key, value);
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Read the items of a list, after its START_LIST token
+     */
+    List<Object> readListItems() throws IOException {
+        List<Object> list = new ArrayList<Object>();
+        for (Token token = next(); token != Token.END_LIST && token != Token.END_DOCUMENT; token = next()) {
+            if (token == Token.START_MAP) {
+                list.add(readMapEntries());
+            } else if (token == Token.START_LIST) {
+                list.add(readListItems());
+            } else if (token == Token.VALUE && getValue() != null) {
+                list.add(getValue());
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Skip the rest of the map or list whose START token has been read
+     */
+    void skipRest() throws IOException {
+        int depth = 1;
+        while (depth > 0) {
+            Token token = next();
+            if (token == Token.START_MAP || token == Token.START_LIST) {
+                depth++;
+            } else if (token == Token.END_MAP || token == Token.END_LIST) {
+                depth--;
+            } else if (token == Token.END_DOCUMENT) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Map keys recurring in every response are shared instead of being held
+     * as a separate copy by each parsed response.
+     */
+    static String internKey(String key) {
+        if (key == null) {
+            return null;
+        }
+        String knownKey = KNOWN_KEYS.get(key);
+        return (knownKey != null) ? knownKey : key;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of the <code>list-sub-components</code> command of an application
+ * or of one of its modules.
+ */
+public class SubComponents {
+
+    private final Map<String, String> components;
+
+    private final List<CommandResult> modules;
+
+    public SubComponents(Map<String, String> components, List<CommandResult> modules) {
+        this.components = components;
+        this.modules = modules;
+    }
+
+    /**
+     * @return the names of the sub-components and their types, like WebModule or Servlet
+     */
+    public Map<String, String> getComponents() {
+        return components;
+    }
+
+    /**
+     * @return one result per sub-component, holding its moduleInfo property
+     */
+    public List<CommandResult> getModules() {
+        return modules;
+    }
+}
@@ -0,0 +1,314 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.channels.FileLock;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A properties file holding the topology discovered by {@link GlassFishClientService#startUp()},
+ * so the following runs against the same domain can skip the discovery.
+ * <p>
+ * Each entry is keyed by the admin host, port and target, and records the GlassFish version,
+ * the kind of target, its configuration and a fingerprint of the dotted names of the topology,
+ * which are compared with the values served by the DAS to detect a stale entry.
+ */
+class TopologyCache {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final Logger log = Logger.getLogger(TopologyCache.class.getName());
+
+    /**
+     * Serializes the stores of all the caches of this JVM, as a file lock is held on behalf of the whole JVM
+     */
+    private static final Object STORE_LOCK = new Object();
+
+    private final File file;
+
+    TopologyCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Load the cached topology of a target
+     *
+     * @param key
+     *     of the target, see {@link #key(String, int, String)}
+     *
+     * @return the cached topology, or null if there is none or it can not be read
+     */
+    Entry load(String key) {
+        Properties properties = read();
+        String version = properties.getProperty(key + ".version");
+        String targetType = properties.getProperty(key + ".targetType");
+        String config = properties.getProperty(key + ".config");
+        String fingerprint = properties.getProperty(key + ".fingerprint");
+        String nodeCount = properties.getProperty(key + ".nodes");
+        if (version == null || targetType == null || config == null || fingerprint == null || nodeCount == null) {
+            return null;
+        }
+
+        try {
+            List<NodeAddress> nodes = new ArrayList<NodeAddress>();
+            for (int i = 0, count = Integer.parseInt(nodeCount); i < count; i++) {
+                String[] node = properties.getProperty(key + ".node." + i, "").split(",");
+                if (node.length != 4) {
+                    return null;
+                }
+                nodes.add(new NodeAddress(node[0], node[1], Integer.parseInt(node[2]), Integer.parseInt(node[3])));
+            }
+            return new Entry(version, targetType, config, fingerprint, nodes);
+        } catch (NumberFormatException ex) {
+            log.warning("Ignoring the invalid topology cache entry " + key + " in " + file);
+            return null;
+        }
+    }
+
+    /**
+     * Store the topology of a target, replacing its previous entry
+     * <p>
+     * The cache is read, updated and written while holding a lock on a sidecar file, so the
+     * concurrent test runs of other processes sharing the cache keep their entries.
+     */
+    void store(String key, Entry entry) {
+        synchronized (STORE_LOCK) {
+            FileLock lock = lock();
+            try {
+                Properties properties = read();
+                for (String name : properties.stringPropertyNames()) {
+                    if (name.startsWith(key + ".")) {
+                        properties.remove(name);
+                    }
+                }
+                properties.setProperty(key + ".version", entry.getVersion());
+                properties.setProperty(key + ".targetType", entry.getTargetType());
+                properties.setProperty(key + ".config", entry.getConfig());
+                properties.setProperty(key + ".fingerprint", entry.getFingerprint());
+                properties.setProperty(key + ".nodes", String.valueOf(entry.getNodes().size()));
+                for (int i = 0; i < entry.getNodes().size(); i++) {
+                    NodeAddress node = entry.getNodes().get(i);
+                    properties.setProperty(key + ".node." + i, node.getServerName() + "," + node.getHost() + ","
+                        + node.getHttpPort() + "," + node.getHttpsPort());
+                }
+                write(properties);
+            } finally {
+                release(lock);
+            }
+        }
+    }
+
+    /**
+     * @return the key of a target in the cache
+     */
+    static String key(String adminHost, int adminPort, String target) {
+        return adminHost + ":" + adminPort + "/" + target;
+    }
+
+    /**
+     * @return the SHA-256 digest of the values the node addresses of a target are resolved from,
+     * independent of their order
+     */
+    static String fingerprint(Map<String, String> values) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+            for (Map.Entry<String, String> value : new TreeMap<String, String>(values).entrySet()) {
+                digest.update((value.getKey() + "=" + value.getValue() + "\n").getBytes("UTF-8"));
+            }
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", ex);
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException("UTF-8 is not supported by the JVM", ex);
+        }
+        StringBuilder fingerprint = new StringBuilder();
+        for (byte b : digest.digest()) {
+            fingerprint.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+        return fingerprint.toString();
+    }
+
+    private Properties read() {
+        Properties properties = new Properties();
+        if (!file.isFile()) {
+            return properties;
+        }
+        try {
+            InputStream input = new FileInputStream(file);
+            try {
+                properties.load(input);
+            } finally {
+                input.close();
+            }
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not read the topology cache " + file, ex);
+        }
+        return properties;
+    }
+
+    /**
+     * Lock the sidecar lock file of the cache, waiting for the other processes holding it
+     *
+     * @return the lock, or null if the file can not be locked
+     */
+    private FileLock lock() {
+        File directory = file.getAbsoluteFile().getParentFile();
+        File lockFile = new File(directory, file.getName() + ".lock");
+        RandomAccessFile lockAccess = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create the directory " + directory);
+            }
+            lockAccess = new RandomAccessFile(lockFile, "rw");
+            return lockAccess.getChannel().lock();
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not lock the topology cache " + file
+                + ", concurrent runs may overwrite each other's entries", ex);
+            close(lockAccess);
+            return null;
+        }
+    }
+
+    private void release(FileLock lock) {
+        if (lock == null) {
+            return;
+        }
+        try {
+            lock.release();
+        } catch (IOException ex) {
+            log.log(Level.FINE, "Could not release the lock of the topology cache " + file, ex);
+        }
+        try {
+            lock.channel().close();
+        } catch (IOException ex) {
+            log.log(Level.FINE, "Could not close the lock file of the topology cache " + file, ex);
+        }
+    }
+
+    private static void close(RandomAccessFile access) {
+        if (access != null) {
+            try {
+                access.close();
+            } catch (IOException ex) {
+                // nothing left to release
+            }
+        }
+    }
+
+    /**
+     * Write the cache to a temporary file renamed over the previous one, so concurrent
+     * test runs never read a partially written cache
+     */
+    private void write(Properties properties) {
+        File directory = file.getAbsoluteFile().getParentFile();
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create the directory " + directory);
+            }
+            File temporary = File.createTempFile(file.getName(), ".tmp", directory);
+            OutputStream output = new FileOutputStream(temporary);
+            try {
+                properties.store(output, "GlassFish topology discovered by Arquillian");
+            } finally {
+                output.close();
+            }
+            if (!temporary.renameTo(file)) {
+                // the rename does not replace an existing file on every platform
+                file.delete();
+                if (!temporary.renameTo(file)) {
+                    temporary.delete();
+                    throw new IOException("Could not replace " + file);
+                }
+            }
+        } catch (IOException ex) {
+            log.log(Level.WARNING, "Could not write the topology cache " + file, ex);
+        }
+    }
+
+    /**
+     * The topology of a target
+     */
+    static class Entry {
+
+        private final String version;
+
+        private final String targetType;
+
+        private final String config;
+
+        private final String fingerprint;
+
+        private final List<NodeAddress> nodes;
+
+        /**
+         * @param version
+         *     of GlassFish
+         * @param targetType
+         *     server or cluster
+         * @param config
+         *     name of the configuration of the target
+         * @param fingerprint
+         *     of the dotted names of the topology
+         * @param nodes
+         *     addresses of the nodes of the target
+         */
+        Entry(String version, String targetType, String config, String fingerprint, List<NodeAddress> nodes) {
+            this.version = version;
+            this.targetType = targetType;
+            this.config = config;
+            this.fingerprint = fingerprint;
+            this.nodes = Collections.unmodifiableList(new ArrayList<NodeAddress>(nodes));
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        String getTargetType() {
+            return targetType;
+        }
+
+        String getConfig() {
+            return config;
+        }
+
+        String getFingerprint() {
+            return fingerprint;
+        }
+
+        List<NodeAddress> getNodes() {
+            return nodes;
+        }
+    }
+}
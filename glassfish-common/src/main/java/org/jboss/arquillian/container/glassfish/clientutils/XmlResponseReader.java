@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the XML format of the GlassFish management API responses:
+ * <pre>
+ * &lt;map&gt;
+ *   &lt;entry key="exit_code" value="SUCCESS"/&gt;
+ *   &lt;entry key="extraProperties"&gt;&lt;map&gt;...&lt;/map&gt;&lt;/entry&gt;
+ *   &lt;entry key="children"&gt;&lt;list&gt;&lt;map&gt;...&lt;/map&gt;&lt;/list&gt;&lt;/entry&gt;
+ * &lt;/map&gt;
+ * </pre>
+ * Scalar values are either held by the value attribute of the entry, or by a
+ * nested string or number element.
+ */
+class XmlResponseReader extends ResponseReader {
+
+    /**
+     * The factory is configured once and then only used to create readers.
+     */
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+    private final XMLStreamReader stream;
+
+    private String key;
+
+    private Object value;
+
+    /**
+     * the value attribute of the last entry, to be returned by the next token
+     */
+    private String pendingValue;
+
+    private boolean hasPendingValue;
+
+    /**
+     * an entry has been opened and its value has not been seen yet
+     */
+    private boolean awaitingValue;
+
+    XmlResponseReader(InputStream input) throws IOException {
+        try {
+            this.stream = XML_INPUT_FACTORY.createXMLStreamReader(input);
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    @Override
+    Token next() throws IOException {
+        if (hasPendingValue) {
+            hasPendingValue = false;
+            value = pendingValue;
+            pendingValue = null;
+            return Token.VALUE;
+        }
+
+        try {
+            while (stream.hasNext()) {
+                int currentEvent = stream.next();
+                if (currentEvent == XMLStreamConstants.START_ELEMENT) {
+                    String elementName = stream.getLocalName();
+                    if ("map".equals(elementName)) {
+                        awaitingValue = false;
+                        return Token.START_MAP;
+                    } else if ("list".equals(elementName)) {
+                        awaitingValue = false;
+                        return Token.START_LIST;
+                    } else if ("entry".equals(elementName)) {
+                        key = internKey(stream.getAttributeValue(null, "key"));
+                        pendingValue = stream.getAttributeValue(null, "value");
+                        hasPendingValue = pendingValue != null;
+                        awaitingValue = !hasPendingValue;
+                        return Token.KEY;
+                    } else if ("string".equals(elementName)) {
+                        awaitingValue = false;
+                        value = stream.getElementText();
+                        return Token.VALUE;
+                    } else if ("number".equals(elementName)) {
+                        awaitingValue = false;
+                        value = parseNumber(stream.getElementText().trim());
+                        return Token.VALUE;
+                    }
+                } else if (currentEvent == XMLStreamConstants.END_ELEMENT) {
+                    String elementName = stream.getLocalName();
+                    if ("map".equals(elementName)) {
+                        return Token.END_MAP;
+                    } else if ("list".equals(elementName)) {
+                        return Token.END_LIST;
+                    } else if ("entry".equals(elementName) && awaitingValue) {
+                        // an entry without any value
+                        awaitingValue = false;
+                        value = null;
+                        return Token.VALUE;
+                    }
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        return Token.END_DOCUMENT;
+    }
+
+    /**
+     * Skips the raw XML events of the entry value, without resolving any of its keys or values
+     */
+    @Override
+    void skipValue() throws IOException {
+        if (hasPendingValue) {
+            hasPendingValue = false;
+            pendingValue = null;
+            return;
+        }
+        if (!awaitingValue) {
+            super.skipValue();
+            return;
+        }
+
+        awaitingValue = false;
+        try {
+            int depth = 0;
+            while (stream.hasNext()) {
+                int currentEvent = stream.next();
+                if (currentEvent == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                } else if (currentEvent == XMLStreamConstants.END_ELEMENT) {
+                    if (depth == 0) {
+                        // the end of the entry itself
+                        return;
+                    }
+                    depth--;
+                }
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    @Override
+    String getKey() {
+        return key;
+    }
+
+    @Override
+    Object getValue() {
+        return value;
+    }
+
+    @Override
+    void close() throws IOException {
+        try {
+            stream.close();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+    }
+
+    private static Object parseNumber(String number) {
+        if (number.contains(".")) {
+            return Double.parseDouble(number);
+        }
+        return Long.parseLong(number);
+    }
+}
@@ -0,0 +1,362 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.arquillian.container.glassfish.clientutils.StubAdminServer;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.Asset;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ArchiveUploadTest {
+
+    private static final Logger log = Logger.getLogger(ArchiveUploadTest.class.getName());
+
+    private static final String DEPLOY_RESOURCE = "/applications/application";
+
+    private static final long LARGE_ARCHIVE_SIZE = 64L * 1024 * 1024;
+
+    private static final String UPLOAD_HEAP = "-Xmx16m";
+
+    private static final long COMPRESSIBLE_SIZE = 8L * 1024 * 1024;
+
+    private StubAdminServer adminServer;
+
+    @Before
+    public void startAdminServer() throws IOException {
+        adminServer = new StubAdminServer();
+        adminServer.registerAdminServerDomain();
+        adminServer.registerApplication("upload");
+    }
+
+    @After
+    public void stopAdminServer() {
+        adminServer.stop();
+    }
+
+    @Test
+    public void testArchiveIsStreamedWithChunkedEncoding() throws Exception {
+        long size = upload(createConfiguration(adminServer.getPort(), 4096), 1024 * 1024);
+
+        assertEquals("chunked", adminServer.getRequestHeader(DEPLOY_RESOURCE, "Transfer-Encoding"));
+        assertNull(adminServer.getRequestHeader(DEPLOY_RESOURCE, "Content-Length"));
+        assertTrue("the whole archive is received", adminServer.getBytesReceived() > size);
+    }
+
+    @Test
+    public void testBufferedUploadSendsContentLength() throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        assertEquals("buffered by default", 0, configuration.getUploadChunkSize());
+        long size = upload(createConfiguration(adminServer.getPort(), configuration.getUploadChunkSize()), 1024 * 1024);
+
+        assertNull(adminServer.getRequestHeader(DEPLOY_RESOURCE, "Transfer-Encoding"));
+        String contentLength = adminServer.getRequestHeader(DEPLOY_RESOURCE, "Content-Length");
+        assertNotNull(contentLength);
+        assertTrue("the length of the whole archive is sent", Long.parseLong(contentLength) > size);
+    }
+
+    /**
+     * Upload an archive several times larger than the heap of the uploading JVM
+     */
+    @Test
+    public void testLargeArchiveUploadWithSmallHeap() throws Exception {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add(UPLOAD_HEAP);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Upload.class.getName());
+        command.add(String.valueOf(adminServer.getPort()));
+        command.add(String.valueOf(LARGE_ARCHIVE_SIZE));
+
+        long start = System.currentTimeMillis();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = readFully(process.getInputStream());
+        int exitCode = process.waitFor();
+
+        log.info(String.format("Uploaded %d MB with %s in %d ms, %s", LARGE_ARCHIVE_SIZE >> 20, UPLOAD_HEAP,
+            System.currentTimeMillis() - start, output.trim()));
+        assertEquals(output, 0, exitCode);
+        assertTrue("the whole archive is received", adminServer.getBytesReceived() > LARGE_ARCHIVE_SIZE);
+    }
+
+    /**
+     * Compare the deploy time and the bytes uploaded of a compressible archive for each
+     * compression. The stub does not inflate the archive, so the deploy time of a DAS
+     * is only approximated by the time of the upload.
+     */
+    @Test
+    public void testCompressionBenchmark() throws Exception {
+        String[][] settings = {{"stored", "-1"}, {"deflated", "1"}, {"deflated", "6"}, {"deflated", "9"},
+            {"auto", "-1"}};
+        long[] bytes = new long[settings.length];
+
+        // warm up the client and the JIT
+        upload(createConfiguration(adminServer.getPort(), "deflated", -1), new TextAsset(COMPRESSIBLE_SIZE));
+        for (int i = 0; i < settings.length; i++) {
+            CommonGlassFishConfiguration configuration =
+                createConfiguration(adminServer.getPort(), settings[i][0], Integer.parseInt(settings[i][1]));
+            long received = adminServer.getBytesReceived();
+            long start = System.nanoTime();
+            upload(configuration, new TextAsset(COMPRESSIBLE_SIZE));
+            long time = (System.nanoTime() - start) / 1000000;
+            bytes[i] = adminServer.getBytesReceived() - received;
+
+            log.info(String.format("Deployed %d MB %s level %s in %d ms, %d KB uploaded",
+                COMPRESSIBLE_SIZE >> 20, settings[i][0], settings[i][1], time, bytes[i] >> 10));
+        }
+
+        assertTrue("deflated archives are smaller", bytes[0] > 4 * bytes[1]);
+        assertTrue("higher levels are not larger", bytes[1] >= bytes[3]);
+        // the sizes of the multipart boundaries differ
+        assertTrue("auto stores the archives of a local DAS", Math.abs(bytes[0] - bytes[4]) < 1024);
+    }
+
+    @Test
+    public void testStoredArchiveIsReadable() throws Exception {
+        WebArchive archive = ShrinkWrap.create(WebArchive.class, "upload.war")
+            .addAsWebInfResource(new StringAsset("<web-app/>"), "web.xml")
+            .addAsLibrary(ShrinkWrap.create(JavaArchive.class, "library.jar")
+                .addAsResource(new StringAsset("library"), "library.txt"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ZipArchiveWriter(ZipEntry.STORED, -1).write(archive, output);
+
+        ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()));
+        Map<String, String> entries = new HashMap<String, String>();
+        for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                content.write(buffer, 0, read);
+            }
+            entries.put(entry.getName(), content.toString("UTF-8"));
+        }
+
+        assertEquals("<web-app/>", entries.get("WEB-INF/web.xml"));
+        assertTrue(entries.containsKey("WEB-INF/lib/library.jar"));
+    }
+
+    @Test
+    public void testStoredNestedArchiveWrittenOnce() throws Exception {
+        final AtomicInteger reads = new AtomicInteger();
+        Asset counted = new Asset() {
+            public InputStream openStream() {
+                reads.incrementAndGet();
+                return new ByteArrayInputStream("library".getBytes());
+            }
+        };
+        WebArchive archive = ShrinkWrap.create(WebArchive.class, "upload.war")
+            .addAsLibrary(ShrinkWrap.create(JavaArchive.class, "library.jar").addAsResource(counted, "library.txt"));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        new ZipArchiveWriter(ZipEntry.STORED, -1).write(archive, output);
+
+        // read for its CRC, then for its content, within the single write of the library
+        assertEquals(2, reads.get());
+        ZipInputStream input = new ZipInputStream(new ByteArrayInputStream(output.toByteArray()));
+        for (ZipEntry entry = input.getNextEntry(); entry != null; entry = input.getNextEntry()) {
+            if (entry.getName().equals("WEB-INF/lib/library.jar")) {
+                ZipInputStream library = new ZipInputStream(input);
+                assertEquals("library.txt", library.getNextEntry().getName());
+                return;
+            }
+        }
+        fail("the library is not written");
+    }
+
+    private static CommonGlassFishConfiguration createConfiguration(int port, String compression, int level) {
+        CommonGlassFishConfiguration configuration =
+            createConfiguration(port, new CommonGlassFishConfiguration().getUploadChunkSize());
+        configuration.setArchiveCompression(compression);
+        configuration.setCompressionLevel(level);
+        return configuration;
+    }
+
+    private static CommonGlassFishConfiguration createConfiguration(int port, int uploadChunkSize) {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(port);
+        configuration.setUploadChunkSize(uploadChunkSize);
+        return configuration;
+    }
+
+    /**
+     * Deploy and undeploy an archive holding a generated library of the given size
+     *
+     * @return the size of the library
+     */
+    private static long upload(CommonGlassFishConfiguration configuration, long size) throws Exception {
+        upload(configuration, new GeneratedAsset(size));
+        return size;
+    }
+
+    /**
+     * Deploy and undeploy an archive holding the asset as a library
+     */
+    private static void upload(CommonGlassFishConfiguration configuration, Asset library) throws Exception {
+        CommonGlassFishManager<CommonGlassFishConfiguration> manager =
+            new CommonGlassFishManager<CommonGlassFishConfiguration>(configuration);
+        manager.start();
+        try {
+            WebArchive archive = ShrinkWrap.create(WebArchive.class, "upload.war")
+                .addAsWebInfResource(new StringAsset("<web-app/>"), "web.xml")
+                .addAsLibrary(library, "generated.jar");
+            manager.deploy(archive);
+            manager.undeploy(archive);
+        } finally {
+            manager.stop();
+        }
+    }
+
+    private static String readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+            output.write(buffer, 0, read);
+        }
+        input.close();
+        return output.toString("UTF-8");
+    }
+
+    /**
+     * Uploads a large archive from a JVM with a small heap: arguments are the port of the
+     * admin server and the size of the archive
+     */
+    public static class Upload {
+
+        public static void main(String[] args) throws Exception {
+            upload(createConfiguration(Integer.parseInt(args[0]), 65536), Long.parseLong(args[1]));
+
+            Runtime runtime = Runtime.getRuntime();
+            System.out.println("heap in use " + ((runtime.totalMemory() - runtime.freeMemory()) >> 20)
+                + " MB of " + (runtime.maxMemory() >> 20) + " MB");
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Content generated while it is read, so it takes no memory. The bytes are pseudo random,
+     * so the content is not shrunk by the compression of the archive.
+     */
+    private static class GeneratedAsset implements Asset {
+
+        private final long size;
+
+        GeneratedAsset(long size) {
+            this.size = size;
+        }
+
+        public InputStream openStream() {
+            return new InputStream() {
+
+                private long remaining = size;
+
+                private long seed = 0x2545F4914F6CDD1DL;
+
+                @Override
+                public int read() {
+                    byte[] single = new byte[1];
+                    return (read(single, 0, 1) == -1) ? -1 : single[0] & 0xff;
+                }
+
+                @Override
+                public int read(byte[] bytes, int offset, int length) {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    int count = (int) Math.min(length, remaining);
+                    for (int i = 0; i < count; i++) {
+                        // xorshift
+                        seed ^= seed << 13;
+                        seed ^= seed >>> 7;
+                        seed ^= seed << 17;
+                        bytes[offset + i] = (byte) seed;
+                    }
+                    remaining -= count;
+                    return count;
+                }
+            };
+        }
+    }
+
+    /**
+     * Text of words from a small vocabulary generated while it is read, shrunk several times
+     * by the compression of the archive
+     */
+    private static class TextAsset implements Asset {
+
+        private static final byte[][] WORDS = {"deploy ".getBytes(), "archive ".getBytes(),
+            "glassfish ".getBytes(), "container ".getBytes(), "module ".getBytes(), "class\n".getBytes()};
+
+        private final long size;
+
+        TextAsset(long size) {
+            this.size = size;
+        }
+
+        public InputStream openStream() {
+            return new InputStream() {
+
+                private long remaining = size;
+
+                private int seed = 1;
+
+                private byte[] word = WORDS[0];
+
+                private int position;
+
+                @Override
+                public int read() {
+                    if (remaining == 0) {
+                        return -1;
+                    }
+                    if (position == word.length) {
+                        seed = seed * 1103515245 + 12345;
+                        word = WORDS[(seed >>> 16) % WORDS.length];
+                        position = 0;
+                    }
+                    remaining--;
+                    return word[position++];
+                }
+            };
+        }
+    }
+}
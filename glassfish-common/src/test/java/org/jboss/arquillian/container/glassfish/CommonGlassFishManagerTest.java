@@ -0,0 +1,624 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.arquillian.container.glassfish.clientutils.StubAdminServer;
+import org.jboss.arquillian.container.spi.ConfigurationException;
+import org.jboss.arquillian.container.spi.client.container.DeploymentException;
+import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
+import org.jboss.arquillian.container.spi.client.protocol.metadata.ProtocolMetaData;
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.ArchiveAsset;
+import org.jboss.shrinkwrap.api.asset.ByteArrayAsset;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.exporter.ZipExporter;
+import org.jboss.shrinkwrap.api.spec.EnterpriseArchive;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CommonGlassFishManagerTest {
+
+    private static final Logger log = Logger.getLogger(CommonGlassFishManagerTest.class.getName());
+
+    private static final int ARCHIVES = 6;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubAdminServer adminServer;
+
+    private CommonGlassFishManager<CommonGlassFishConfiguration> manager;
+
+    @Before
+    public void startManager() throws Exception {
+        adminServer = new StubAdminServer();
+        adminServer.registerAdminServerDomain();
+        for (int i = 0; i < ARCHIVES; i++) {
+            adminServer.registerApplication("app" + i);
+        }
+
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setMaxParallelDeployments(3);
+        manager = new CommonGlassFishManager<CommonGlassFishConfiguration>(configuration);
+        manager.start();
+    }
+
+    @After
+    public void stopManager() throws IOException {
+        manager.stop();
+        adminServer.stop();
+    }
+
+    @Test
+    public void testDeployAllWithinConcurrencyLimit() throws Exception {
+        adminServer.setLatencyMs(50);
+        adminServer.resetStatistics();
+
+        long start = System.nanoTime();
+        Map<String, ProtocolMetaData> deployed = manager.deployAll(archives());
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        log.info("deployed " + ARCHIVES + " archives in " + elapsed + " ms, at most "
+            + adminServer.getPeakActiveRequests() + " requests at a time");
+        assertEquals(ARCHIVES, deployed.size());
+        int i = 0;
+        for (Map.Entry<String, ProtocolMetaData> entry : deployed.entrySet()) {
+            assertEquals("app" + i++ + ".war", entry.getKey());
+            assertEquals(8080, entry.getValue().getContexts(HTTPContext.class).iterator().next().getPort());
+        }
+        assertTrue(adminServer.getPeakActiveRequests() > 1);
+        assertTrue(adminServer.getPeakActiveRequests() <= 3);
+
+        for (WebArchive archive : archives()) {
+            manager.undeploy(archive);
+        }
+    }
+
+    @Test
+    public void testConcurrentDeployAndUndeploy() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(ARCHIVES);
+        try {
+            List<Future<Void>> results = new ArrayList<Future<Void>>();
+            for (final WebArchive archive : archives()) {
+                results.add(executor.submit(new Callable<Void>() {
+                    public Void call() throws DeploymentException {
+                        for (int round = 0; round < 3; round++) {
+                            manager.deploy(archive);
+                            manager.undeploy(archive);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> result : results) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        for (int i = 0; i < ARCHIVES; i++) {
+            // each round undeploys, the context root of an application without servlets is not needed
+            assertEquals(3, adminServer.getRequestCount("/applications/application/app" + i));
+        }
+    }
+
+    @Test
+    public void testArchiveDeployedOnce() throws Exception {
+        WebArchive archive = archives().get(0);
+        manager.deploy(archive);
+        try {
+            manager.deploy(archive);
+            fail("an archive should not be deployed twice");
+        } catch (DeploymentException e) {
+            assertTrue(e.getMessage().contains("already deployed"));
+        }
+
+        manager.undeploy(archive);
+        manager.deploy(archive);
+        manager.undeploy(archive);
+    }
+
+    @Test
+    public void testIdenticalDeploymentReused() throws Exception {
+        adminServer.registerApplicationProperty("app0", "arquillianDigest", ArchiveDigest.of(archives().get(0)));
+        CommonGlassFishManager<CommonGlassFishConfiguration> reusingManager = createReusingManager();
+        adminServer.resetStatistics();
+
+        WebArchive archive = archives().get(0);
+        reusingManager.deploy(archive);
+        reusingManager.undeploy(archive);
+        // an identical archive of another test
+        archive = archives().get(0);
+        ProtocolMetaData reused = reusingManager.deploy(archive);
+        reusingManager.undeploy(archive);
+
+        assertEquals(1, adminServer.getRequestCount("/applications/application"));
+        assertEquals(8080, reused.getContexts(HTTPContext.class).iterator().next().getPort());
+        // the application is still deployed
+        assertEquals(0, adminServer.getRequestCount("/applications/application/app0"));
+
+        reusingManager.stop();
+        assertEquals(1, adminServer.getRequestCount("/applications/application/app0"));
+    }
+
+    @Test
+    public void testChangedDeploymentRedeployed() throws Exception {
+        adminServer.registerApplicationProperty("app0", "arquillianDigest", ArchiveDigest.of(archives().get(0)));
+        CommonGlassFishManager<CommonGlassFishConfiguration> reusingManager = createReusingManager();
+        adminServer.resetStatistics();
+
+        WebArchive archive = archives().get(0);
+        reusingManager.deploy(archive);
+        reusingManager.undeploy(archive);
+        archive.addAsWebResource(new StringAsset("changed"), "changed.html");
+        reusingManager.deploy(archive);
+        reusingManager.undeploy(archive);
+        assertEquals(2, adminServer.getRequestCount("/applications/application"));
+
+        reusingManager.stop();
+        // the changed archive replaced the application, which was undeployed once
+        assertEquals(1, adminServer.getRequestCount("/applications/application/app0"));
+    }
+
+    @Test
+    public void testArchiveDigestOfContent() throws Exception {
+        EnterpriseArchive ear = ShrinkWrap.create(EnterpriseArchive.class, "app.ear").addAsModules(archives().toArray(new WebArchive[ARCHIVES]));
+        String digest = ArchiveDigest.of(ear);
+        // the nested archives are digested by content, not by their time stamped export
+        Thread.sleep(2100);
+        assertEquals(digest, ArchiveDigest.of(ShrinkWrap.create(EnterpriseArchive.class, "app.ear")
+            .addAsModules(archives().toArray(new WebArchive[ARCHIVES]))));
+
+        ear.addAsManifestResource(new StringAsset("<application/>"), "application.xml");
+        assertFalse(digest.equals(ArchiveDigest.of(ear)));
+    }
+
+    @Test
+    public void testDeployFromSharedDirectory() throws Exception {
+        File directory = temporaryFolder.newFolder("deployments");
+        CommonGlassFishManager<CommonGlassFishConfiguration> localManager = createLocalPathManager(directory);
+        try {
+            WebArchive archive = archives().get(0);
+            ProtocolMetaData deployed = localManager.deploy(archive);
+            localManager.undeploy(archive);
+
+            String form = adminServer.getRequestBody("/applications/application");
+            assertTrue("the path is posted", form.contains(directory.getAbsolutePath()));
+            assertFalse("the archive is not uploaded", form.contains("filename="));
+            assertEquals(8080, deployed.getContexts(HTTPContext.class).iterator().next().getPort());
+            assertEquals(0, directory.list().length);
+        } finally {
+            localManager.stop();
+        }
+    }
+
+    @Test
+    public void testUploadWhenSharedDirectoryNotVisible() throws Exception {
+        adminServer.setUploadRequired(true);
+        CommonGlassFishManager<CommonGlassFishConfiguration> localManager =
+            createLocalPathManager(temporaryFolder.newFolder("deployments"));
+        adminServer.resetStatistics();
+        try {
+            for (WebArchive archive : archives().subList(0, 2)) {
+                localManager.deploy(archive);
+                localManager.undeploy(archive);
+            }
+
+            assertTrue(adminServer.getRequestBody("/applications/application").contains("filename=\"app1.war\""));
+            // the deployment from the path is not tried again once it failed
+            assertEquals(3, adminServer.getRequestCount("/applications/application"));
+        } finally {
+            localManager.stop();
+        }
+    }
+
+    @Test
+    public void testFailingApplicationDeployedOnceFromSharedDirectory() throws Exception {
+        Map<String, Object> failure = new HashMap<String, Object>();
+        failure.put("exit_code", "FAILURE");
+        failure.put("message", "Error occurred during deployment: Exception while loading the app : "
+            + "java.lang.IllegalStateException: ContainerBase.addChild: start: LifecycleException");
+        adminServer.respond("/applications/application", failure);
+        CommonGlassFishManager<CommonGlassFishConfiguration> localManager =
+            createLocalPathManager(temporaryFolder.newFolder("deployments"));
+        adminServer.resetStatistics();
+        try {
+            localManager.deploy(archives().get(0));
+            fail("the deployment of a failing application must fail");
+        } catch (DeploymentException e) {
+            assertTrue(e.getCause().getMessage().contains("Exception while loading the app"));
+        } finally {
+            localManager.stop();
+        }
+
+        assertEquals(1, adminServer.getRequestCount("/applications/application"));
+        assertFalse("the archive is not uploaded",
+            adminServer.getRequestBody("/applications/application").contains("filename="));
+    }
+
+    @Test
+    public void testExplodedDeploymentKeptForNextDeployment() throws Exception {
+        File directory = temporaryFolder.newFolder("deployments");
+        CommonGlassFishManager<CommonGlassFishConfiguration> localManager = createLocalPathManager(directory, true);
+        try {
+            WebArchive archive = archives().get(0);
+            localManager.deploy(archive);
+            localManager.undeploy(archive);
+
+            File exploded = new File(directory, "app0");
+            assertTrue(adminServer.getRequestBody("/applications/application").contains(exploded.getAbsolutePath()));
+            assertTrue(new File(exploded, "index.html").isFile());
+            assertTrue(new File(directory, "app0.index").isFile());
+
+            localManager.deploy(archives().get(0));
+            localManager.undeploy(archive);
+        } finally {
+            localManager.stop();
+        }
+    }
+
+    @Test
+    public void testLibrariesHoistedOnce() throws Exception {
+        adminServer.registerLibraries();
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager = createHoistingManager();
+        try {
+            for (int i = 0; i < 2; i++) {
+                WebArchive archive = archiveWithLibraries(i);
+                hoistingManager.deploy(archive);
+
+                String deployment = adminServer.getRequestBody("/applications/application");
+                assertTrue(deployment.contains("arquillian-" + ArchiveDigest.of(new ArchiveAsset(library(),
+                    ZipExporter.class)).substring(0, 16) + "-library.jar"));
+                assertFalse("the library is hoisted", deployment.contains("WEB-INF/lib/library.jar"));
+                assertTrue("the web fragment is scanned in the archive", deployment.contains("WEB-INF/lib/fragment.jar"));
+                hoistingManager.undeploy(archive);
+            }
+        } finally {
+            hoistingManager.stop();
+        }
+
+        assertEquals(1, adminServer.getRequestCount("/add-library"));
+        assertEquals(1, adminServer.getRequestCount("/list-libraries?type=app"));
+    }
+
+    @Test
+    public void testExistingLibraryNotAdded() throws Exception {
+        adminServer.registerLibraries("arquillian-" + ArchiveDigest.of(new ArchiveAsset(library(), ZipExporter.class))
+            .substring(0, 16) + "-library.jar");
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager = createHoistingManager();
+        try {
+            WebArchive archive = archiveWithLibraries(0);
+            hoistingManager.deploy(archive);
+            hoistingManager.undeploy(archive);
+        } finally {
+            hoistingManager.stop();
+        }
+
+        assertEquals(0, adminServer.getRequestCount("/add-library"));
+        assertFalse(adminServer.getRequestBody("/applications/application").contains("WEB-INF/lib/library.jar"));
+    }
+
+    @Test
+    public void testLibraryDeployedWithArchiveWhenNotAdded() throws Exception {
+        adminServer.registerLibraries();
+        Map<String, Object> failure = new HashMap<String, Object>();
+        failure.put("exit_code", "FAILURE");
+        failure.put("message", "The library could not be added");
+        adminServer.respond("/add-library", failure);
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager = createHoistingManager();
+        try {
+            WebArchive archive = archiveWithLibraries(0);
+            hoistingManager.deploy(archive);
+            hoistingManager.undeploy(archive);
+        } finally {
+            hoistingManager.stop();
+        }
+
+        String deployment = adminServer.getRequestBody("/applications/application");
+        assertTrue(deployment.contains("WEB-INF/lib/library.jar"));
+        assertFalse(deployment.contains("name=\"libraries\""));
+    }
+
+    @Test
+    public void testLibraryWithPersistenceUnitNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "entities.jar")
+            .addAsManifestResource(new StringAsset("<persistence/>"), "persistence.xml"));
+    }
+
+    @Test
+    public void testLibraryWithEjbDescriptorNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "beans.jar")
+            .addAsManifestResource(new StringAsset("<ejb-jar/>"), "ejb-jar.xml"));
+    }
+
+    @Test
+    public void testLibraryWithFacesConfigNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "faces.jar")
+            .addAsManifestResource(new StringAsset("<faces-config/>"), "faces-config.xml"));
+    }
+
+    @Test
+    public void testLibraryWithFaceletTagLibraryNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "components.jar")
+            .addAsManifestResource(new StringAsset("<facelet-taglib/>"), "components.taglib.xml"));
+    }
+
+    @Test
+    public void testLibraryWithAnnotatedServletNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "servlets.jar")
+            .add(annotatedClass("Ljavax/servlet/annotation/WebServlet;"), "com/acme/AcmeServlet.class"));
+    }
+
+    @Test
+    public void testLibraryWithAnnotatedBeanNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "services.jar")
+            .add(annotatedClass("Ljavax/ejb/Stateless;"), "com/acme/AcmeService.class"));
+    }
+
+    @Test
+    public void testLibraryWithImplicitCdiBeanNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "cdi.jar")
+            .add(annotatedClass("Ljavax/enterprise/context/ApplicationScoped;"), "com/acme/AcmeBean.class"));
+    }
+
+    @Test
+    public void testLibraryWithCdiExtensionNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "extension.jar")
+            .addAsManifestResource(new StringAsset("com.acme.AcmeExtension"),
+                "services/javax.enterprise.inject.spi.Extension"));
+    }
+
+    @Test
+    public void testLibraryWithRestResourceNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "rest.jar")
+            .add(annotatedClass("Ljavax/ws/rs/Path;"), "com/acme/AcmeResource.class"));
+    }
+
+    @Test
+    public void testLibraryWithWebServiceNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "ws.jar")
+            .add(annotatedClass("Ljavax/jws/WebService;"), "com/acme/AcmeWebService.class"));
+    }
+
+    @Test
+    public void testLibraryWithEntityNotHoisted() throws Exception {
+        assertLibraryNotHoisted(ShrinkWrap.create(JavaArchive.class, "model.jar")
+            .add(annotatedClass("Ljavax/persistence/Entity;"), "com/acme/AcmeEntity.class"));
+    }
+
+    @Test
+    public void testLibraryReferringToJavaEETypesHoisted() throws Exception {
+        adminServer.registerLibraries();
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager = createHoistingManager();
+        try {
+            WebArchive archive = archives().get(0).addAsLibrary(ShrinkWrap.create(JavaArchive.class, "plain.jar")
+                .add(classFile("Ljavax/sql/DataSource;"), "com/acme/AcmeDao.class"));
+            hoistingManager.deploy(archive);
+            hoistingManager.undeploy(archive);
+        } finally {
+            hoistingManager.stop();
+        }
+
+        assertEquals(1, adminServer.getRequestCount("/add-library"));
+        assertFalse(adminServer.getRequestBody("/applications/application").contains("WEB-INF/lib/plain.jar"));
+    }
+
+    @Test
+    public void testAddedLibrariesRemovedOnStop() throws Exception {
+        String existing = "arquillian-0123456789abcdef-existing.jar";
+        adminServer.registerLibraries(existing);
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager = createHoistingManager();
+        try {
+            WebArchive archive = archiveWithLibraries(0);
+            hoistingManager.deploy(archive);
+            hoistingManager.undeploy(archive);
+            assertEquals(0, adminServer.getRequestCount("/remove-library"));
+        } finally {
+            hoistingManager.stop();
+        }
+
+        assertEquals(1, adminServer.getRequestCount("/remove-library"));
+        String removal = adminServer.getRequestBody("/remove-library");
+        assertTrue(removal.contains("arquillian-" + ArchiveDigest.of(new ArchiveAsset(library(), ZipExporter.class))
+            .substring(0, 16) + "-library.jar"));
+        assertFalse(removal.contains(existing));
+    }
+
+    /**
+     * Deploy a web archive bundling the library, which must stay in WEB-INF/lib
+     */
+    private void assertLibraryNotHoisted(JavaArchive library) throws Exception {
+        adminServer.registerLibraries();
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager = createHoistingManager();
+        try {
+            WebArchive archive = archives().get(0).addAsLibrary(library);
+            hoistingManager.deploy(archive);
+            hoistingManager.undeploy(archive);
+        } finally {
+            hoistingManager.stop();
+        }
+
+        assertEquals(0, adminServer.getRequestCount("/add-library"));
+        assertTrue(adminServer.getRequestBody("/applications/application")
+            .contains("WEB-INF/lib/" + library.getName()));
+    }
+
+    /**
+     * @return the content of an annotated class file, holding the descriptor of its annotation in its constant pool
+     */
+    private static ByteArrayAsset annotatedClass(String annotationDescriptor) throws IOException {
+        return classFile("RuntimeVisibleAnnotations", annotationDescriptor);
+    }
+
+    /**
+     * @return the content of a class file, holding the UTF-8 constants in its constant pool
+     */
+    private static ByteArrayAsset classFile(String... constants) throws IOException {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(content);
+        output.writeInt(0xCAFEBABE);
+        output.writeShort(0);
+        output.writeShort(49);
+        output.writeShort(constants.length + 1);
+        for (String constant : constants) {
+            output.writeByte(1);
+            output.writeUTF(constant);
+        }
+        output.close();
+        return new ByteArrayAsset(content.toByteArray());
+    }
+
+    @Test
+    public void testDeployProfileOptions() throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setDeployProfile("fast-test");
+        configuration.validate();
+        CommonGlassFishManager<CommonGlassFishConfiguration> profileManager =
+            new CommonGlassFishManager<CommonGlassFishConfiguration>(configuration);
+        profileManager.start();
+        try {
+            WebArchive archive = archives().get(0);
+            profileManager.deploy(archive);
+            profileManager.undeploy(archive);
+        } finally {
+            profileManager.stop();
+        }
+
+        String deployment = adminServer.getRequestBody("/applications/application");
+        for (String option : new String[] {"precompilejsp", "verify", "availabilityenabled", "keepstate", "lbenabled",
+            "generatermistubs"}) {
+            assertEquals(option, "false", getFormField(deployment, option));
+        }
+        assertEquals("app0", getFormField(deployment, "name"));
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testUnknownDeployProfile() throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setDeployProfile("fastest");
+        configuration.validate();
+    }
+
+    @Test(expected = ConfigurationException.class)
+    public void testDetachedDeploymentWithProgress() throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setDetachedDeployment(true);
+        configuration.setDeploymentProgress(true);
+        configuration.validate();
+    }
+
+    /**
+     * @return the value of a text field of a multipart form
+     */
+    private static String getFormField(String form, String name) {
+        Matcher field = Pattern.compile("name=\"" + name + "\"[^\\n]*\\r\\n(?:[^\\r]+\\r\\n)*\\r\\n([^\\r]*)\\r\\n")
+            .matcher(form);
+        return field.find() ? field.group(1) : null;
+    }
+
+    private CommonGlassFishManager<CommonGlassFishConfiguration> createHoistingManager() throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setHoistLibraries(true);
+        CommonGlassFishManager<CommonGlassFishConfiguration> hoistingManager =
+            new CommonGlassFishManager<CommonGlassFishConfiguration>(configuration);
+        hoistingManager.start();
+        return hoistingManager;
+    }
+
+    private static WebArchive archiveWithLibraries(int i) {
+        return archives().get(i)
+            .addAsLibrary(library())
+            .addAsLibrary(ShrinkWrap.create(JavaArchive.class, "fragment.jar")
+                .addAsManifestResource(new StringAsset("<web-fragment/>"), "web-fragment.xml"));
+    }
+
+    private static JavaArchive library() {
+        return ShrinkWrap.create(JavaArchive.class, "library.jar")
+            .addAsResource(new StringAsset("a third-party library"), "library.txt");
+    }
+
+    private CommonGlassFishManager<CommonGlassFishConfiguration> createLocalPathManager(File directory)
+        throws Exception {
+        return createLocalPathManager(directory, false);
+    }
+
+    private CommonGlassFishManager<CommonGlassFishConfiguration> createLocalPathManager(File directory,
+        boolean exploded) throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setDeploymentDirectory(directory.getAbsolutePath());
+        configuration.setExplodedDeployment(exploded);
+        CommonGlassFishManager<CommonGlassFishConfiguration> localManager =
+            new CommonGlassFishManager<CommonGlassFishConfiguration>(configuration);
+        localManager.start();
+        return localManager;
+    }
+
+    private CommonGlassFishManager<CommonGlassFishConfiguration> createReusingManager() throws Exception {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setReuseIdenticalDeployments(true);
+        CommonGlassFishManager<CommonGlassFishConfiguration> reusingManager =
+            new CommonGlassFishManager<CommonGlassFishConfiguration>(configuration);
+        reusingManager.start();
+        return reusingManager;
+    }
+
+    private static List<WebArchive> archives() {
+        List<WebArchive> archives = new ArrayList<WebArchive>();
+        for (int i = 0; i < ARCHIVES; i++) {
+            archives.add(ShrinkWrap.create(WebArchive.class, "app" + i + ".war")
+                .addAsWebResource(new StringAsset("app" + i), "index.html"));
+        }
+        return archives;
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish;
+
+import org.jboss.shrinkwrap.api.ShrinkWrap;
+import org.jboss.shrinkwrap.api.asset.StringAsset;
+import org.jboss.shrinkwrap.api.spec.EnterpriseArchive;
+import org.jboss.shrinkwrap.api.spec.JavaArchive;
+import org.jboss.shrinkwrap.api.spec.WebArchive;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExplodedArchiveTest {
+
+    private static final long OLD_TIMESTAMP = 946684800000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testOnlyChangedFilesRewritten() throws Exception {
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        WebArchive archive = createWebArchive();
+        assertEquals(3, exploded.write(archive));
+
+        File directory = exploded.getDirectory();
+        File library = new File(directory, "WEB-INF/lib/util.jar");
+        assertTrue(new File(directory, "index.html").isFile());
+        assertTrue(library.isFile());
+        assertTrue(library.setLastModified(OLD_TIMESTAMP));
+
+        // the library is rebuilt with the same content, so its export differs but not its content
+        archive = createWebArchive();
+        archive.delete("WEB-INF/web.xml");
+        archive.addAsWebResource(new StringAsset("changed"), "index.html");
+        archive.addAsWebResource(new StringAsset("added"), "added.html");
+        assertEquals(2, exploded.write(archive));
+
+        assertFalse(new File(directory, "WEB-INF/web.xml").exists());
+        assertTrue(new File(directory, "added.html").isFile());
+        assertEquals(OLD_TIMESTAMP, library.lastModified());
+    }
+
+    @Test
+    public void testEnterpriseModulesExploded() throws Exception {
+        EnterpriseArchive archive = ShrinkWrap.create(EnterpriseArchive.class, "app.ear")
+            .addAsModule(createWebArchive())
+            .addAsLibrary(createLibrary());
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        exploded.write(archive);
+
+        File directory = exploded.getDirectory();
+        assertTrue(new File(directory, "web_war/index.html").isFile());
+        assertTrue(new File(directory, "web_war/WEB-INF/lib/util.jar").isFile());
+        assertTrue(new File(directory, "lib/util.jar").isFile());
+
+        archive.delete("lib/util.jar");
+        assertEquals(0, exploded.write(archive));
+        assertFalse(new File(directory, "lib/util.jar").exists());
+    }
+
+    @Test
+    public void testRootLibraryOfEnterpriseArchiveWrittenPacked() throws Exception {
+        EnterpriseArchive archive = ShrinkWrap.create(EnterpriseArchive.class, "app.ear")
+            .addAsModule(createLibrary())
+            .addAsModule(ShrinkWrap.create(JavaArchive.class, "beans.jar")
+                .addAsManifestResource(new StringAsset("<ejb-jar/>"), "ejb-jar.xml"));
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        exploded.write(archive);
+
+        File directory = exploded.getDirectory();
+        assertTrue(new File(directory, "util.jar").isFile());
+        assertTrue(new File(directory, "beans_jar/META-INF/ejb-jar.xml").isFile());
+    }
+
+    @Test
+    public void testModulesListedByApplicationXml() throws Exception {
+        EnterpriseArchive archive = ShrinkWrap.create(EnterpriseArchive.class, "app.ear")
+            .addAsModule(createWebArchive())
+            .addAsModule(createLibrary())
+            .setApplicationXML(new StringAsset("<application><module><ejb> util.jar </ejb></module></application>"));
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        exploded.write(archive);
+
+        File directory = exploded.getDirectory();
+        assertTrue(new File(directory, "util_jar/META-INF/util.properties").isFile());
+        assertTrue(new File(directory, "web.war").isFile());
+    }
+
+    @Test
+    public void testDirectoriesLeftEmptyDeleted() throws Exception {
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        exploded.write(createWebArchive().addAsWebResource(new StringAsset("page"), "pages/nested/page.html"));
+
+        File directory = exploded.getDirectory();
+        File pages = new File(directory, "pages");
+        assertTrue(pages.isDirectory());
+        exploded.write(createWebArchive().addAsDirectory("pages"));
+        assertFalse(new File(directory, "pages/nested").exists());
+        assertTrue("a directory of the archive is kept", pages.isDirectory());
+
+        exploded.write(createWebArchive());
+        assertFalse(pages.exists());
+        assertTrue(new File(directory, "WEB-INF/lib").isDirectory());
+    }
+
+    @Test
+    public void testRemovedModuleDeleted() throws Exception {
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        exploded.write(ShrinkWrap.create(EnterpriseArchive.class, "app.ear").addAsModule(createWebArchive()));
+        File module = new File(exploded.getDirectory(), "web_war");
+        assertTrue(module.isDirectory());
+
+        exploded.write(ShrinkWrap.create(EnterpriseArchive.class, "app.ear").addAsLibrary(createLibrary()));
+        assertFalse(module.exists());
+    }
+
+    @Test
+    public void testEverythingRewrittenWithoutIndex() throws Exception {
+        ExplodedArchive exploded = new ExplodedArchive(new File(temporaryFolder.getRoot(), "app"));
+        exploded.write(createWebArchive());
+
+        // like after an interrupted write
+        assertTrue(new File(temporaryFolder.getRoot(), "app.index").delete());
+        assertEquals(3, exploded.write(createWebArchive()));
+    }
+
+    private static WebArchive createWebArchive() {
+        return ShrinkWrap.create(WebArchive.class, "web.war")
+            .addAsWebResource(new StringAsset("index"), "index.html")
+            .addAsWebInfResource(new StringAsset("<web-app/>"), "web.xml")
+            .addAsLibrary(createLibrary());
+    }
+
+    private static JavaArchive createLibrary() {
+        return ShrinkWrap.create(JavaArchive.class, "util.jar")
+            .addAsManifestResource(new StringAsset("util"), "util.properties");
+    }
+}
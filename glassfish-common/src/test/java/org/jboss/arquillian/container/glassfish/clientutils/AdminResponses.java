@@ -0,0 +1,253 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds management REST responses in the format served by the DAS.
+ */
+final class AdminResponses {
+
+    private AdminResponses() {
+    }
+
+    /**
+     * The XML response of list-sub-components for an EAR with the given number of web modules
+     */
+    static String listSubComponentsXml(int modules) {
+        StringBuilder xml = new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<map>\n")
+            .append("  <entry key=\"exit_code\" value=\"SUCCESS\"/>\n")
+            .append("  <entry key=\"command\" value=\"list-sub-components AdminCommand\"/>\n")
+            .append("  <entry key=\"message\" value=\"Command list-sub-components executed successfully.\"/>\n")
+            .append("  <entry key=\"properties\">\n")
+            .append("    <map>\n");
+        for (int i = 0; i < modules; i++) {
+            xml.append("      <entry key=\"module").append(i).append(".war\" value=\"WebModule\"/>\n");
+        }
+        xml.append("    </map>\n")
+            .append("  </entry>\n")
+            .append("  <entry key=\"extraProperties\">\n")
+            .append("    <map>\n")
+            .append("      <entry key=\"methodName\" value=\"list-sub-components\"/>\n")
+            .append("    </map>\n")
+            .append("  </entry>\n")
+            .append("  <entry key=\"children\">\n")
+            .append("    <list>\n");
+        for (int i = 0; i < modules; i++) {
+            xml.append("      <map>\n")
+                .append("        <entry key=\"message\" value=\"module").append(i).append(".war\"/>\n")
+                .append("        <entry key=\"properties\">\n")
+                .append("          <map>\n")
+                .append("            <entry key=\"moduleInfo\" value=\"module").append(i)
+                .append(".war:web:/module").append(i).append("\"/>\n")
+                .append("          </map>\n")
+                .append("        </entry>\n")
+                .append("      </map>\n");
+        }
+        return xml.append("    </list>\n")
+            .append("  </entry>\n")
+            .append("</map>\n")
+            .toString();
+    }
+
+    /**
+     * The XML response of an attributes resource, like /servers/server/server
+     */
+    static String entityXml(String... attributes) {
+        StringBuilder xml = new StringBuilder()
+            .append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n")
+            .append("<map>\n")
+            .append("  <entry key=\"exit_code\" value=\"SUCCESS\"/>\n")
+            .append("  <entry key=\"message\" value=\"\"/>\n")
+            .append("  <entry key=\"extraProperties\">\n")
+            .append("    <map>\n")
+            .append("      <entry key=\"entity\">\n")
+            .append("        <map>\n");
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            xml.append("          <entry key=\"").append(attributes[i]).append("\" value=\"").append(attributes[i + 1])
+                .append("\"/>\n");
+        }
+        return xml.append("        </map>\n")
+            .append("      </entry>\n")
+            .append("      <entry key=\"childResources\">\n")
+            .append("        <map>\n")
+            .append("          <entry key=\"system-property\" value=\"http://localhost:4848/system-property\"/>\n")
+            .append("        </map>\n")
+            .append("      </entry>\n")
+            .append("    </map>\n")
+            .append("  </entry>\n")
+            .append("</map>\n")
+            .toString();
+    }
+
+    /**
+     * A successful command report, to be completed with the sections of the response
+     */
+    static Map<String, Object> report(String command, String message) {
+        Map<String, Object> report = new LinkedHashMap<String, Object>();
+        report.put("exit_code", "SUCCESS");
+        report.put("command", command);
+        report.put("message", message);
+        return report;
+    }
+
+    /**
+     * The report of an attributes resource, with the method descriptors the DAS sends along
+     *
+     * @param attributes
+     *     name and value pairs of the entity
+     */
+    static Map<String, Object> entityReport(String... attributes) {
+        Map<String, Object> entity = new LinkedHashMap<String, Object>();
+        Map<String, Object> parameters = new LinkedHashMap<String, Object>();
+        for (int i = 0; i + 1 < attributes.length; i += 2) {
+            entity.put(attributes[i], attributes[i + 1]);
+
+            Map<String, Object> parameter = new LinkedHashMap<String, Object>();
+            parameter.put("acceptableValues", "");
+            parameter.put("defaultValue", "");
+            parameter.put("deprecated", "false");
+            parameter.put("key", String.valueOf(i == 0));
+            parameter.put("optional", "true");
+            parameter.put("type", "string");
+            parameters.put(attributes[i], parameter);
+        }
+
+        List<Object> methods = new ArrayList<Object>();
+        methods.add(map("name", "GET"));
+        Map<String, Object> post = map("name", "POST");
+        post.put("messageParameters", parameters);
+        methods.add(post);
+        methods.add(map("name", "DELETE"));
+
+        Map<String, Object> extraProperties = new LinkedHashMap<String, Object>();
+        extraProperties.put("entity", entity);
+        extraProperties.put("methods", methods);
+        extraProperties.put("commands", new ArrayList<Object>());
+        extraProperties.put("childResources", map("property", "http://localhost:4848/management/domain/property"));
+
+        Map<String, Object> report = report("", "");
+        report.put("extraProperties", extraProperties);
+        return report;
+    }
+
+    /**
+     * A map of the given key and value pairs, in order
+     */
+    static Map<String, Object> map(String... entries) {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i + 1 < entries.length; i += 2) {
+            map.put(entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+
+    /**
+     * Write a response tree of maps, lists and scalar values in the XML format of the DAS
+     */
+    static String toXml(Map<String, Object> report) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n");
+        appendXml(xml, report);
+        return xml.append("\n").toString();
+    }
+
+    /**
+     * Write a response tree of maps, lists and scalar values in the JSON format of the DAS
+     */
+    static String toJson(Map<String, Object> report) {
+        StringBuilder json = new StringBuilder();
+        appendJson(json, report);
+        return json.toString();
+    }
+
+    private static void appendXml(StringBuilder xml, Object value) {
+        if (value instanceof Map) {
+            xml.append("<map>");
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                xml.append("<entry key=\"").append(escapeXml(entry.getKey().toString())).append("\"");
+                if (entry.getValue() instanceof Map || entry.getValue() instanceof List) {
+                    xml.append(">");
+                    appendXml(xml, entry.getValue());
+                    xml.append("</entry>");
+                } else if (entry.getValue() == null) {
+                    xml.append("/>");
+                } else {
+                    xml.append(" value=\"").append(escapeXml(entry.getValue().toString())).append("\"/>");
+                }
+            }
+            xml.append("</map>");
+        } else if (value instanceof List) {
+            xml.append("<list>");
+            for (Object item : (List<?>) value) {
+                appendXml(xml, item);
+            }
+            xml.append("</list>");
+        } else if (value instanceof Number) {
+            xml.append("<number>").append(value).append("</number>");
+        } else {
+            xml.append("<string>").append(escapeXml(value.toString())).append("</string>");
+        }
+    }
+
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map) {
+            json.append("{");
+            String separator = "";
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.append(separator);
+                appendJson(json, entry.getKey());
+                json.append(":");
+                appendJson(json, entry.getValue());
+                separator = ",";
+            }
+            json.append("}");
+        } else if (value instanceof List) {
+            json.append("[");
+            String separator = "";
+            for (Object item : (List<?>) value) {
+                json.append(separator);
+                appendJson(json, item);
+                separator = ",";
+            }
+            json.append("]");
+        } else if (value == null || value instanceof Number) {
+            json.append(value);
+        } else {
+            json.append("\"");
+            for (char c : value.toString().toCharArray()) {
+                if (c == '"' || c == '\\') {
+                    json.append('\\').append(c);
+                } else if (c < ' ') {
+                    json.append(String.format("\\u%04x", (int) c));
+                } else {
+                    json.append(c);
+                }
+            }
+            json.append("\"");
+        }
+    }
+
+    private static String escapeXml(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+import org.jboss.arquillian.container.glassfish.clientutils.CommandResult.Section;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CommandResultTest {
+
+    private static final Logger log = Logger.getLogger(CommandResultTest.class.getName());
+
+    private static final int ITERATIONS = 200;
+
+    @Test
+    public void testEntitySection() throws Exception {
+        CommandResult result = read(AdminResponses.entityXml("name", "server", "configRef", "server-config"),
+            Section.ENTITY);
+
+        assertEquals("SUCCESS", result.getExitCode());
+        assertEquals("server-config", result.getEntity().get("configRef"));
+        assertTrue(result.getChildResources().asMap().isEmpty());
+    }
+
+    @Test
+    public void testChildResourcesSection() throws Exception {
+        CommandResult result = read(AdminResponses.entityXml("name", "server"), Section.CHILD_RESOURCES);
+
+        assertTrue(result.getChildResources().contains("system-property"));
+        assertTrue(result.getEntity().isEmpty());
+    }
+
+    @Test
+    public void testSubComponents() throws Exception {
+        CommandResult result = read(AdminResponses.listSubComponentsXml(3), Section.PROPERTIES, Section.CHILDREN);
+
+        SubComponents subComponents = result.getSubComponents();
+        assertEquals(3, subComponents.getComponents().size());
+        assertEquals("WebModule", subComponents.getComponents().get("module0.war"));
+        assertEquals(3, subComponents.getModules().size());
+        assertEquals("module1.war", subComponents.getModules().get(1).getMessage());
+        assertEquals("module1.war:web:/module1", subComponents.getModules().get(1).getProperties().get("moduleInfo"));
+    }
+
+    @Test
+    public void testSectionsNotRequestedAreSkipped() throws Exception {
+        CommandResult result = read(AdminResponses.listSubComponentsXml(3));
+
+        assertEquals("SUCCESS", result.getExitCode());
+        assertEquals("list-sub-components", result.getExtraProperties().get("methodName"));
+        assertTrue(result.getProperties().isEmpty());
+        assertTrue(result.getChildren().isEmpty());
+    }
+
+    @Test
+    public void testInstancesAndNestedValues() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<map><entry key=\"exit_code\" value=\"SUCCESS\"/><entry key=\"message\"/>"
+            + "<entry key=\"extraProperties\"><map>"
+            + "<entry key=\"version-number\"><string>3.1.2.2</string></entry>"
+            + "<entry key=\"uptime\"><number>42</number></entry>"
+            + "<entry key=\"instanceList\"><list>"
+            + "<map><entry key=\"name\" value=\"in1\"/><entry key=\"status\" value=\"RUNNING\"/></map>"
+            + "<map><entry key=\"name\" value=\"in2\"/><entry key=\"status\" value=\"NOT_RUNNING\"/></map>"
+            + "</list></entry></map></entry></map>";
+        CommandResult result = read(xml, Section.INSTANCES);
+
+        assertNull(result.getMessage());
+        assertEquals("3.1.2.2", result.getExtraProperties().get("version-number"));
+        assertEquals("42", result.getExtraProperties().get("uptime"));
+        assertEquals(2, result.getInstances().size());
+        assertEquals("NOT_RUNNING", result.getInstances().get(1).get("status"));
+    }
+
+    @Test
+    public void testEmptyDocumentGivesEmptyResult() throws Exception {
+        CommandResult result = read("<?xml version=\"1.0\"?><html/>", Section.ENTITY);
+
+        assertNull(result.getExitCode());
+        assertTrue(result.getEntity().isEmpty());
+    }
+
+    /**
+     * The typed result of an attributes request leaves less garbage than the untyped map of the whole response.
+     */
+    @Test
+    public void testTypedResultAllocatesLessThanMap() throws Exception {
+        byte[] document = AdminResponses.listSubComponentsXml(100).getBytes("UTF-8");
+        GlassFishClientUtil clientUtil =
+            new GlassFishClientUtil(new CommonGlassFishConfiguration(), "http://localhost:4848/management/domain");
+
+        for (int i = 0; i < ITERATIONS; i++) {
+            clientUtil.xmlToMap(new ByteArrayInputStream(document));
+            read(document, Section.PROPERTIES);
+        }
+
+        long untyped = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            clientUtil.xmlToMap(new ByteArrayInputStream(document));
+        }
+        untyped = (allocatedBytes() - untyped) / ITERATIONS;
+
+        long typed = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            read(document, Section.PROPERTIES);
+        }
+        typed = (allocatedBytes() - typed) / ITERATIONS;
+
+        log.info("list-sub-components response of " + document.length + " bytes, allocated per parse: map "
+            + untyped + " bytes, typed properties " + typed + " bytes");
+        assertTrue("typed: " + typed + ", map: " + untyped, typed < untyped);
+    }
+
+    private static CommandResult read(String document, Section... sections) throws IOException {
+        return read(document.getBytes("UTF-8"), sections);
+    }
+
+    private static CommandResult read(byte[] document, Section... sections) throws IOException {
+        ResponseReader reader = new XmlResponseReader(new ByteArrayInputStream(document));
+        try {
+            return CommandResult.read(reader, CommandResult.sections(sections));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
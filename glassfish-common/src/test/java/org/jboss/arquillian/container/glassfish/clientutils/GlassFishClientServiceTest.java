@@ -0,0 +1,737 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import com.sun.jersey.multipart.FormDataMultiPart;
+import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+import org.jboss.arquillian.container.spi.ConfigurationException;
+import org.jboss.arquillian.container.spi.client.protocol.metadata.HTTPContext;
+import org.jboss.arquillian.container.spi.client.protocol.metadata.Servlet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.entityReport;
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.report;
+import static org.jboss.arquillian.container.glassfish.clientutils.StubAdminServer.childResources;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GlassFishClientServiceTest {
+
+    private static final Logger log = Logger.getLogger(GlassFishClientServiceTest.class.getName());
+
+    private static final String CLUSTER = "c1";
+
+    private static final int INSTANCES = 12;
+
+    private static final int NODES = 3;
+
+    private static final int EAR_MODULES = 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubAdminServer adminServer;
+
+    private String topologyCacheFile;
+
+    private boolean dottedNameDiscovery;
+
+    @Before
+    public void startAdminServer() throws IOException {
+        adminServer = new StubAdminServer();
+        adminServer.registerAdminServerDomain();
+        adminServer.registerClusterDomain(CLUSTER, INSTANCES, NODES);
+    }
+
+    @After
+    public void stopAdminServer() {
+        adminServer.stop();
+    }
+
+    @Test
+    public void testClusterInstancesInNameOrder() throws Exception {
+        GlassFishClientService client = startUp(4);
+
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < INSTANCES; i++) {
+            expected.add(CLUSTER + "-instance-" + i);
+        }
+        List<String> names = new ArrayList<String>();
+        for (NodeAddress node : client.getNodeAddressList()) {
+            names.add(node.getServerName());
+        }
+        assertEquals(new ArrayList<String>(new TreeSet<String>(expected)), names);
+
+        for (NodeAddress node : client.getNodeAddressList()) {
+            int i = Integer.parseInt(node.getServerName().substring((CLUSTER + "-instance-").length()));
+            assertEquals("host-" + (i % NODES), node.getHost());
+            assertEquals(28080 + i, node.getHttpPort());
+            assertEquals(28180 + i, node.getHttpsPort());
+        }
+        assertEquals(client.getNodeAddressList().get(0), client.getNodeAddress());
+    }
+
+    @Test
+    public void testSharedLookupsRunOnce() throws Exception {
+        startUp(4);
+
+        for (int i = 0; i < NODES; i++) {
+            assertEquals(1, adminServer.getRequestCount("/nodes/node/node-" + i));
+        }
+        assertEquals(1, adminServer.getRequestCount("/configs/config/c1-config/system-property/HTTP_LISTENER_PORT"));
+        assertEquals(1,
+            adminServer.getRequestCount("/configs/config/c1-config/system-property/HTTP_SSL_LISTENER_PORT"));
+    }
+
+    @Test
+    public void testInstancesResolvedConcurrently() throws Exception {
+        adminServer.setLatencyMs(10);
+
+        long start = System.nanoTime();
+        startUp(1);
+        long serial = (System.nanoTime() - start) / 1000000;
+        assertEquals(1, adminServer.getPeakActiveRequests());
+
+        adminServer.resetStatistics();
+        start = System.nanoTime();
+        startUp(4);
+        long parallel = (System.nanoTime() - start) / 1000000;
+
+        log.info("startUp() of a " + INSTANCES + " instance cluster in " + adminServer.getRequestCount()
+            + " requests: " + serial + " ms with 1 thread, " + parallel + " ms with 4 threads");
+        assertTrue(adminServer.getPeakActiveRequests() > 1);
+        assertTrue(adminServer.getPeakActiveRequests() <= 4);
+    }
+
+    @Test
+    public void testServerAttributesPolledWithBackOff() throws Exception {
+        final Map<String, Object> attributes = adminServer.getResponse("/servers/server/server");
+        adminServer.respond("/servers/server/server", entityReport());
+        final AtomicLong released = new AtomicLong();
+        Thread starting = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    while (adminServer.getRequestCount("/servers/server/server") == 0) {
+                        Thread.sleep(1);
+                    }
+                    Thread.sleep(100);
+                } catch (InterruptedException ignore) {
+                }
+                adminServer.respond("/servers/server/server", attributes);
+                released.set(System.nanoTime());
+            }
+        });
+        starting.start();
+
+        GlassFishClientService client = new GlassFishClientService(configuration(GlassFishClient.ADMINSERVER, 4));
+        client.startUp();
+        long noticed = (System.nanoTime() - released.get()) / 1000000;
+        starting.join();
+
+        log.info("Server attributes of a server starting 100 ms late noticed after " + noticed + " ms, in "
+            + adminServer.getRequestCount("/servers/server/server") + " requests");
+        assertEquals(8080, client.getNodeAddress().getHttpPort());
+        assertTrue(adminServer.getRequestCount("/servers/server/server") > 2);
+        assertTrue(noticed < 800);
+    }
+
+    @Test
+    public void testWarmStartUsesTopologyCache() throws Exception {
+        useTopologyCache(new File(temporaryFolder.getRoot(), "cache/topology.properties"));
+
+        NodeAddress cold = startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress();
+        assertTrue(new File(topologyCacheFile).isFile());
+
+        adminServer.resetStatistics();
+        NodeAddress warm = startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress();
+
+        assertEquals(2, adminServer.getRequestCount());
+        assertEquals(1, adminServer.getRequestCount("/version"));
+        assertEquals(cold.getHost(), warm.getHost());
+        assertEquals(8080, warm.getHttpPort());
+        assertEquals(8181, warm.getHttpsPort());
+    }
+
+    @Test
+    public void testColdStartFetchesTopologyWithListeners() throws Exception {
+        dottedNameDiscovery = true;
+        startUp(4);
+        int uncachedRequests = adminServer.getRequestCount();
+
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        adminServer.resetStatistics();
+        startUp(4);
+
+        assertEquals(uncachedRequests, adminServer.getRequestCount());
+    }
+
+    @Test
+    public void testWarmStartOfClusterChecksInstanceStatus() throws Exception {
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        List<NodeAddress> cold = startUp(4).getNodeAddressList();
+
+        adminServer.resetStatistics();
+        GlassFishClientService client = startUp(4);
+
+        assertEquals(3, adminServer.getRequestCount());
+        assertEquals(1, adminServer.getRequestCount("/list-instances"));
+        assertEquals(cold.size(), client.getNodeAddressList().size());
+        assertEquals(cold.get(5).getHttpPort(), client.getNodeAddressList().get(5).getHttpPort());
+        assertEquals(cold.get(0).getServerName(), client.getNodeAddress().getServerName());
+    }
+
+    @Test
+    public void testStaleTopologyCacheIsRediscovered() throws Exception {
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        startUp(GlassFishClient.ADMINSERVER, 4);
+
+        adminServer.setDottedName("servers.server.server.lb-weight", "50");
+        adminServer.resetStatistics();
+        startUp(GlassFishClient.ADMINSERVER, 4);
+        assertEquals(1, adminServer.getRequestCount("/servers/server"));
+
+        adminServer.resetStatistics();
+        startUp(GlassFishClient.ADMINSERVER, 4);
+        assertEquals(2, adminServer.getRequestCount());
+    }
+
+    @Test
+    public void testDeployedApplicationKeepsTopologyCache() throws Exception {
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        startUp(GlassFishClient.ADMINSERVER, 4);
+
+        adminServer.setDottedName("servers.server.server.application-ref.app0.enabled", "true");
+        adminServer.resetStatistics();
+        startUp(GlassFishClient.ADMINSERVER, 4);
+
+        assertEquals(2, adminServer.getRequestCount());
+    }
+
+    @Test
+    public void testChangedListenerPortInvalidatesTopologyCache() throws Exception {
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        startUp(GlassFishClient.ADMINSERVER, 4);
+
+        adminServer.setDottedName("configs.config.server-config.network-config.network-listeners.network-listener."
+            + "http-listener-1.port", "9080");
+
+        assertEquals(9080, startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress().getHttpPort());
+    }
+
+    @Test
+    public void testChangedInstancePortInvalidatesTopologyCache() throws Exception {
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        startUp(4);
+
+        String instance = CLUSTER + "-instance-5";
+        adminServer.setDottedName("servers.server." + instance + ".system-property.HTTP_LISTENER_PORT.value", "29085");
+        adminServer.respond("/servers/server/" + instance + "/system-property/HTTP_LISTENER_PORT",
+            entityReport("name", "HTTP_LISTENER_PORT", "value", "29085"));
+
+        for (NodeAddress node : startUp(4).getNodeAddressList()) {
+            if (node.getServerName().equals(instance)) {
+                assertEquals(29085, node.getHttpPort());
+            }
+        }
+    }
+
+    @Test
+    public void testChangedClusterMembershipInvalidatesTopologyCache() throws Exception {
+        useTopologyCache(temporaryFolder.newFile("topology.properties"));
+        startUp(4);
+
+        for (int i = 2; i < INSTANCES; i++) {
+            adminServer.setDottedName("clusters.cluster." + CLUSTER + ".server-ref." + CLUSTER + "-instance-" + i
+                + ".ref", null);
+        }
+        adminServer.respond("/clusters/cluster/" + CLUSTER + "/server-ref",
+            childResources(CLUSTER + "-instance-0", CLUSTER + "-instance-1"));
+
+        assertEquals(2, startUp(4).getNodeAddressList().size());
+    }
+
+    @Test
+    public void testTopologyCacheRequiresDottedNameDiscovery() throws Exception {
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        configuration.setTopologyCacheFile(temporaryFolder.newFile("topology.properties").getPath());
+        try {
+            configuration.validate();
+            fail("the topology cache is checked against the dotted names");
+        } catch (ConfigurationException expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidTopologyCacheIsIgnored() throws Exception {
+        File file = temporaryFolder.newFile("topology.properties");
+        FileWriter writer = new FileWriter(file);
+        try {
+            String key = TopologyCache.key("127.0.0.1", adminServer.getPort(), GlassFishClient.ADMINSERVER);
+            String escapedKey = key.replace(":", "\\:");
+            writer.write(escapedKey + ".version=3.1.2.2\n");
+            writer.write(escapedKey + ".targetType=server\n");
+            writer.write(escapedKey + ".config=server-config\n");
+            writer.write(escapedKey + ".fingerprint=0\n");
+            writer.write(escapedKey + ".nodes=two\n");
+        } finally {
+            writer.close();
+        }
+        useTopologyCache(file);
+
+        assertEquals(8080, startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress().getHttpPort());
+    }
+
+    @Test
+    public void testDottedNameDiscovery() throws Exception {
+        dottedNameDiscovery = true;
+
+        NodeAddress node = startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress();
+
+        assertEquals(8080, node.getHttpPort());
+        assertEquals(8181, node.getHttpsPort());
+        assertEquals(1, adminServer.getRequestCount("/get?pattern=configs.config.server-config.*"));
+        assertEquals(4, adminServer.getRequestCount());
+    }
+
+    @Test
+    public void testDottedNameDiscoveryOfClusterSystemProperties() throws Exception {
+        dottedNameDiscovery = true;
+
+        GlassFishClientService client = startUp(4);
+
+        assertEquals(0, adminServer.getRequestCount("/configs/config/c1-config/system-property/HTTP_LISTENER_PORT"));
+        assertEquals(0, adminServer.getRequestCount("/configs/config/c1-config/network-config/protocols/protocol/"
+            + "http-listener-1"));
+        for (NodeAddress node : client.getNodeAddressList()) {
+            int i = Integer.parseInt(node.getServerName().substring((CLUSTER + "-instance-").length()));
+            assertEquals(28080 + i, node.getHttpPort());
+            assertEquals(28180 + i, node.getHttpsPort());
+        }
+    }
+
+    @Test
+    public void testDottedNameDiscoveryFallsBackToResources() throws Exception {
+        dottedNameDiscovery = true;
+        Map<String, Object> failure = report("get", "Dotted name path configs.config.server-config.* not found.");
+        failure.put("exit_code", "FAILURE");
+        adminServer.respond("/get?pattern=configs.config.server-config.*", failure);
+
+        NodeAddress node = startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress();
+
+        assertEquals(8080, node.getHttpPort());
+        assertEquals(8181, node.getHttpsPort());
+    }
+
+    @Test
+    public void testDottedNameDiscoveryOfEscapedNames() throws Exception {
+        dottedNameDiscovery = true;
+        String dotted = "configs.config.server-config.";
+        String listener = dotted + "network-config.network-listeners.network-listener.http\\.listener.";
+        adminServer.setDottedName(dotted + "http-service.virtual-server.server.network-listeners", null);
+        adminServer.setDottedName(dotted + "http-service.virtual-server.my\\.server.network-listeners",
+            "http.listener,http-listener-2");
+        adminServer.setDottedName(listener + "port", "8081");
+        adminServer.setDottedName(listener + "protocol", "http.listener");
+        adminServer.setDottedName(dotted + "network-config.protocols.protocol.http\\.listener.security-enabled",
+            "false");
+
+        NodeAddress node = startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress();
+
+        assertEquals("the listener with no enabled value is enabled", 8081, node.getHttpPort());
+        assertEquals(8181, node.getHttpsPort());
+    }
+
+    @Test
+    public void testListenerWithoutEnabledAttribute() throws Exception {
+        adminServer.respond("/configs/config/server-config/network-config/network-listeners/network-listener/"
+            + "http-listener-1", entityReport("name", "http-listener-1", "port", "8080", "protocol", "http-listener-1"));
+
+        NodeAddress node = startUp(GlassFishClient.ADMINSERVER, 4).getNodeAddress();
+
+        assertEquals(8080, node.getHttpPort());
+        assertEquals(8181, node.getHttpsPort());
+    }
+
+    @Test
+    public void testAsyncRequestsOverlap() throws Exception {
+        adminServer.setLatencyMs(50);
+        GlassFishClientService client = new GlassFishClientService(configuration(CLUSTER, 4));
+        try {
+            Future<Void> startUp = client.startUpAsync();
+            Future<Boolean> running = client.isDASRunningAsync();
+
+            assertTrue(running.get());
+            startUp.get();
+            assertEquals(INSTANCES, client.getNodeAddressList().size());
+            assertTrue(adminServer.getPeakActiveRequests() > 1);
+        } finally {
+            client.shutDown();
+        }
+    }
+
+    @Test
+    public void testDASStateReady() throws Exception {
+        GlassFishClientService client = new GlassFishClientService(configuration(GlassFishClient.ADMINSERVER, 4));
+
+        assertEquals(DASState.READY, client.getDASState());
+        assertTrue(client.isDASRunning());
+        assertEquals(2, adminServer.getRequestCount("/version"));
+    }
+
+    @Test
+    public void testDASStateStarting() throws Exception {
+        adminServer.respond("/version", null);
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        GlassFishClientService client = new GlassFishClientService(configuration);
+
+        assertEquals(DASState.STARTING, client.getDASState());
+
+        adminServer.registerAdminServerDomain();
+        adminServer.setLatencyMs(500);
+        configuration.setProbeReadTimeoutMs(50);
+        long start = System.nanoTime();
+        assertEquals(DASState.STARTING, client.getDASState());
+        assertTrue((System.nanoTime() - start) / 1000000 < 400);
+        assertTrue(client.isDASRunning());
+    }
+
+    @Test
+    public void testDASStateAuthFailed() throws Exception {
+        adminServer.setCredentials("admin", "secret");
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        configuration.setAuthorisation(true);
+        configuration.setAdminUser("admin");
+        configuration.setAdminPassword("wrong");
+
+        assertEquals(DASState.AUTH_FAILED, new GlassFishClientService(configuration).getDASState());
+
+        configuration.setAdminPassword("secret");
+        assertEquals(DASState.READY, new GlassFishClientService(configuration).getDASState());
+    }
+
+    @Test
+    public void testDASStateDown() throws Exception {
+        GlassFishClientService client = new GlassFishClientService(configuration(GlassFishClient.ADMINSERVER, 4));
+        adminServer.stop();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(DASState.DOWN, client.getDASState());
+        }
+        long elapsed = (System.nanoTime() - start) / 1000000;
+
+        log.info("100 probes of a stopped DAS in " + elapsed + " ms");
+        assertTrue(!client.isDASRunning());
+        assertTrue(elapsed < 1000);
+    }
+
+    @Test
+    public void testAsyncFailureAndCustomExecutor() throws Exception {
+        final AtomicInteger threads = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                threads.incrementAndGet();
+                return new Thread(runnable);
+            }
+        });
+        GlassFishClientService client = new GlassFishClientService(configuration("no-such-target", 4));
+        client.setExecutor(executor);
+        try {
+            client.startUpAsync().get();
+            fail("the start-up of an unknown target should fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof GlassFishClientException);
+        } finally {
+            client.shutDown();
+        }
+
+        assertEquals(1, threads.get());
+        assertTrue(!executor.isShutdown());
+        executor.shutdown();
+    }
+
+    /**
+     * Compare the deployment of an EAR with many web modules, resolving their servlets
+     * with 1 and 4 threads
+     */
+    @Test
+    public void testEnterpriseModulesResolvedConcurrently() throws Exception {
+        adminServer.registerEnterpriseApplication("ear", EAR_MODULES, 3);
+        GlassFishClientService serialClient = startUpDeployer(1);
+        GlassFishClientService parallelClient = startUpDeployer(4);
+        adminServer.setLatencyMs(10);
+        try {
+            adminServer.resetStatistics();
+            long start = System.nanoTime();
+            HTTPContext serial = deploy(serialClient, "ear");
+            long serialTime = (System.nanoTime() - start) / 1000000;
+            assertEquals(1, adminServer.getPeakActiveRequests());
+
+            adminServer.resetStatistics();
+            start = System.nanoTime();
+            HTTPContext parallel = deploy(parallelClient, "ear");
+            long parallelTime = (System.nanoTime() - start) / 1000000;
+
+            log.info("doDeploy() of a " + EAR_MODULES + " web module EAR in " + adminServer.getRequestCount()
+                + " requests: " + serialTime + " ms with 1 thread, " + parallelTime + " ms with 4 threads");
+            assertTrue(adminServer.getPeakActiveRequests() > 1);
+            assertTrue(adminServer.getPeakActiveRequests() <= 4);
+            assertEquals("the application contextRoot is not needed", 0,
+                adminServer.getRequestCount("/applications/application/ear"));
+
+            assertEquals(EAR_MODULES * 3, parallel.getServlets().size());
+            for (int i = 0; i < serial.getServlets().size(); i++) {
+                Servlet servlet = parallel.getServlets().get(i);
+                assertEquals(serial.getServlets().get(i).getName(), servlet.getName());
+                String module = servlet.getName().substring("Servlet".length(), servlet.getName().indexOf('_'));
+                assertEquals("/module" + module, servlet.getContextRoot());
+            }
+        } finally {
+            serialClient.shutDown();
+            parallelClient.shutDown();
+        }
+    }
+
+    @Test
+    public void testServletsResolvedOnFirstAccess() throws Exception {
+        adminServer.registerEnterpriseApplication("ear", 3, 1);
+        GlassFishClientService client = startUpDeployer(4);
+        try {
+            adminServer.resetStatistics();
+            FormDataMultiPart form = new FormDataMultiPart();
+            form.field("name", "ear");
+            HTTPContext context = client.doDeploy("ear", form);
+            assertEquals("only the deployment is requested", 1, adminServer.getRequestCount());
+            assertEquals(8080, context.getPort());
+
+            assertEquals("/module1", context.getServletByName("Servlet1_0").getContextRoot());
+            assertEquals(3, context.getServlets().size());
+            assertEquals(1, adminServer.getRequestCount("/applications/application/list-sub-components?id=ear"));
+        } finally {
+            client.shutDown();
+        }
+    }
+
+    @Test
+    public void testDetachedDeploymentPollsJob() throws Exception {
+        adminServer.registerGlassFish4();
+        adminServer.registerDeploymentJob("7", 3, "SUCCESS");
+        GlassFishClientService client = startUpDetached();
+        try {
+            deployWithoutServlets(client, "app");
+        } finally {
+            client.shutDown();
+        }
+
+        assertTrue(adminServer.getRequestBody("/applications/application").contains("__detach"));
+        assertEquals(4, adminServer.getRequestCount("/management/jobs/id/7"));
+    }
+
+    @Test
+    public void testFailedDetachedDeployment() throws Exception {
+        adminServer.registerGlassFish4();
+        adminServer.registerDeploymentJob("8", 1, "FAILURE");
+        GlassFishClientService client = startUpDetached();
+        try {
+            deployWithoutServlets(client, "app");
+            fail("the failure of the job should fail the deployment");
+        } catch (GlassFishClientException e) {
+            assertTrue(e.getMessage().contains("FAILURE"));
+        } finally {
+            client.shutDown();
+        }
+    }
+
+    @Test
+    public void testDetachedDeploymentTimesOut() throws Exception {
+        adminServer.registerGlassFish4();
+        adminServer.registerDeploymentJob("9", Integer.MAX_VALUE, "SUCCESS");
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        configuration.setDetachedDeployment(true);
+        configuration.setDetachedDeploymentTimeoutMs(200);
+        GlassFishClientService client = new GlassFishClientService(configuration);
+        client.startUp();
+        try {
+            deployWithoutServlets(client, "app");
+            fail("the deployment job never completes");
+        } catch (GlassFishClientException e) {
+            assertTrue(e.getMessage().contains("deployment job 9 of app did not complete within 200 ms"));
+        } finally {
+            client.shutDown();
+        }
+    }
+
+    @Test
+    public void testDetachedDeploymentIsSynchronousBeforeGlassFish4() throws Exception {
+        adminServer.registerApplication("app");
+        GlassFishClientService client = startUpDetached();
+        try {
+            deployWithoutServlets(client, "app");
+        } finally {
+            client.shutDown();
+        }
+
+        assertTrue(!adminServer.getRequestBody("/applications/application").contains("__detach"));
+    }
+
+    @Test
+    public void testDeploymentProgressPhases() throws Exception {
+        adminServer.registerGlassFish4();
+        adminServer.registerApplication("app");
+        adminServer.registerDeploymentProgress(30, "Preparing application", "Loading application",
+            "Starting application");
+        final List<String> phases = new ArrayList<String>();
+        final List<Long> durations = new ArrayList<Long>();
+        GlassFishClientService client = startUpWithProgress();
+        client.addDeploymentProgressListener(new DeploymentProgressListener() {
+            public void phaseCompleted(String application, String phase, long durationMs) {
+                assertEquals("app", application);
+                phases.add(phase);
+                durations.add(durationMs);
+            }
+        });
+        try {
+            deployWithoutServlets(client, "app");
+        } finally {
+            client.shutDown();
+        }
+
+        assertEquals(Arrays.asList("upload", "Preparing application", "Loading application", "Starting application"),
+            phases);
+        // the phases cover the whole deployment, the DAS waited 30 ms before each event
+        long total = 0;
+        for (long duration : durations) {
+            total += duration;
+        }
+        assertTrue("the phases took " + durations, total >= 4 * 30);
+    }
+
+    @Test
+    public void testFailedDeploymentProgress() throws Exception {
+        adminServer.registerGlassFish4();
+        adminServer.registerApplication("app");
+        Map<String, Object> failure = AdminResponses.report("deploy", "Exception while loading the app");
+        failure.put("exit_code", "FAILURE");
+        adminServer.respond("/applications/application", failure);
+        adminServer.registerDeploymentProgress(0, "Preparing application", "Loading application");
+        GlassFishClientService client = startUpWithProgress();
+        try {
+            deployWithoutServlets(client, "app");
+            fail("the failure reported by the last event should fail the deployment");
+        } catch (GlassFishClientException e) {
+            assertTrue(e.getMessage().contains("Exception while loading the app"));
+        } finally {
+            client.shutDown();
+        }
+    }
+
+    private GlassFishClientService startUpWithProgress() {
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        configuration.setDeploymentProgress(true);
+        GlassFishClientService client = new GlassFishClientService(configuration);
+        client.startUp();
+        return client;
+    }
+
+    private GlassFishClientService startUpDetached() {
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        configuration.setDetachedDeployment(true);
+        GlassFishClientService client = new GlassFishClientService(configuration);
+        client.startUp();
+        return client;
+    }
+
+    private static HTTPContext deployWithoutServlets(GlassFishClientService client, String name) {
+        FormDataMultiPart form = new FormDataMultiPart();
+        form.field("name", name);
+        return client.doDeploy(name, form);
+    }
+
+    private GlassFishClientService startUpDeployer(int moduleResolutionThreads) {
+        CommonGlassFishConfiguration configuration = configuration(GlassFishClient.ADMINSERVER, 4);
+        configuration.setModuleResolutionThreads(moduleResolutionThreads);
+        GlassFishClientService client = new GlassFishClientService(configuration);
+        client.startUp();
+        return client;
+    }
+
+    /**
+     * Deploy the application and resolve its servlets
+     */
+    private static HTTPContext deploy(GlassFishClientService client, String name) {
+        FormDataMultiPart form = new FormDataMultiPart();
+        form.field("name", name);
+        HTTPContext context = client.doDeploy(name, form);
+        context.getServlets();
+        return context;
+    }
+
+    /**
+     * Cache the topology in a file, which requires the dotted-name discovery
+     */
+    private void useTopologyCache(File file) {
+        dottedNameDiscovery = true;
+        topologyCacheFile = file.getPath();
+    }
+
+    private GlassFishClientService startUp(int discoveryThreads) {
+        return startUp(CLUSTER, discoveryThreads);
+    }
+
+    private GlassFishClientService startUp(String target, int discoveryThreads) {
+        GlassFishClientService client = new GlassFishClientService(configuration(target, discoveryThreads));
+        try {
+            client.startUp();
+        } finally {
+            client.shutDown();
+        }
+        return client;
+    }
+
+    private CommonGlassFishConfiguration configuration(String target, int discoveryThreads) {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setTarget(target);
+        configuration.setDiscoveryThreads(discoveryThreads);
+        configuration.setTopologyCacheFile(topologyCacheFile);
+        configuration.setDottedNameDiscovery(dottedNameDiscovery);
+        return configuration;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GlassFishClientUtilTest {
+
+    private static final Logger log = Logger.getLogger(GlassFishClientUtilTest.class.getName());
+
+    private static final int MODULES = 200;
+
+    private static final int ITERATIONS = 200;
+
+    private GlassFishClientUtil clientUtil;
+
+    @Before
+    public void createClientUtil() {
+        clientUtil = new GlassFishClientUtil(new CommonGlassFishConfiguration(), "http://localhost:4848/management/domain");
+    }
+
+    @Test
+    public void testXmlToMapFromStream() throws Exception {
+        Map map = clientUtil.xmlToMap(toStream(AdminResponses.listSubComponentsXml(3)));
+
+        assertEquals("SUCCESS", map.get("exit_code"));
+        Map properties = (Map) map.get("properties");
+        assertEquals(3, properties.size());
+        assertEquals("WebModule", properties.get("module1.war"));
+        List<Map> children = (List<Map>) map.get("children");
+        assertEquals(3, children.size());
+        assertEquals("module2.war:web:/module2", ((Map) children.get(2).get("properties")).get("moduleInfo"));
+    }
+
+    @Test
+    public void testStreamAndStringParsingAgree() throws Exception {
+        String document = AdminResponses.entityXml("name", "server", "configRef", "server-config");
+
+        assertEquals(clientUtil.xmlToMap(document), clientUtil.xmlToMap(toStream(document)));
+    }
+
+    @Test
+    public void testLeadingWhitespaceIsSkipped() throws Exception {
+        Map map = clientUtil.xmlToMap(toStream("  \n\t" + AdminResponses.entityXml("name", "server")));
+
+        Map entity = (Map) ((Map) map.get("extraProperties")).get("entity");
+        assertEquals("server", entity.get("name"));
+    }
+
+    @Test
+    public void testEmptyDocument() throws Exception {
+        assertNull(clientUtil.xmlToMap(toStream("")));
+        assertNull(clientUtil.xmlToMap(toStream(" \r\n")));
+    }
+
+    @Test
+    public void testRecurringKeysAreShared() throws Exception {
+        String extraProperties = new String("extraProperties".toCharArray());
+        Map first = clientUtil.xmlToMap(toStream(AdminResponses.entityXml("name", "server")));
+        Map second = clientUtil.xmlToMap(toStream(AdminResponses.entityXml("name", "server")));
+
+        assertSame(keyOf(first, extraProperties), keyOf(second, extraProperties));
+    }
+
+    @Test
+    public void testClosedConnectionsReopened() throws Exception {
+        StubAdminServer adminServer = new StubAdminServer();
+        try {
+            adminServer.registerAdminServerDomain();
+            GlassFishClientUtil adminClient = new GlassFishClientUtil(new CommonGlassFishConfiguration(),
+                "http://localhost:" + adminServer.getPort() + "/management/domain");
+            adminClient.getCommandResult("/version");
+            assertEquals(1, adminClient.getConnectionPoolStatistics().getOpenConnections());
+
+            adminClient.closeConnections();
+            assertEquals(0, adminClient.getConnectionPoolStatistics().getOpenConnections());
+            adminClient.getCommandResult("/version");
+            assertEquals(1, adminClient.getConnectionPoolStatistics().getOpenConnections());
+            adminClient.closeConnections();
+        } finally {
+            adminServer.stop();
+        }
+    }
+
+    /**
+     * Compares the heap allocated by the streaming parser with the former buffered pipeline,
+     * which read the entity into a String, trimmed it, re-encoded it to UTF-8 and created a
+     * new XMLInputFactory before parsing.
+     */
+    @Test
+    public void testStreamingParseAllocatesLessThanBufferedParse() throws Exception {
+        byte[] document = AdminResponses.listSubComponentsXml(MODULES).getBytes("UTF-8");
+
+        // warm up both paths
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseBuffered(document);
+            parseStreamed(document);
+        }
+
+        long buffered = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseBuffered(document);
+        }
+        buffered = (allocatedBytes() - buffered) / ITERATIONS;
+
+        long streamed = allocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            parseStreamed(document);
+        }
+        streamed = (allocatedBytes() - streamed) / ITERATIONS;
+
+        log.info("list-sub-components response of " + document.length + " bytes, allocated per parse: buffered "
+            + buffered + " bytes, streamed " + streamed + " bytes");
+        assertTrue("streamed: " + streamed + ", buffered: " + buffered, streamed < buffered);
+    }
+
+    private Map parseBuffered(byte[] document) throws Exception {
+        // the entity is read into a String as Jersey does for getEntity(String.class)
+        StringBuilder entity = new StringBuilder();
+        Reader reader = new InputStreamReader(new ByteArrayInputStream(document), "UTF-8");
+        char[] buffer = new char[8192];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            entity.append(buffer, 0, read);
+        }
+        byte[] copy = entity.toString().trim().getBytes("UTF-8");
+
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_VALIDATING, false);
+
+        return clientUtil.xmlToMap(new ByteArrayInputStream(copy));
+    }
+
+    private Map parseStreamed(byte[] document) {
+        return clientUtil.xmlToMap(new ByteArrayInputStream(document));
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Object keyOf(Map map, String key) {
+        for (Object candidate : map.keySet()) {
+            if (key.equals(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private static InputStream toStream(String document) throws Exception {
+        return new ByteArrayInputStream(document.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import org.jboss.arquillian.container.glassfish.CommonGlassFishConfiguration;
+import org.jboss.arquillian.container.glassfish.clientutils.CommandResult.Section;
+import org.jboss.arquillian.container.glassfish.clientutils.ResponseReader.Token;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.entityReport;
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.map;
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.report;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JsonResponseReaderTest {
+
+    private static final Logger log = Logger.getLogger(JsonResponseReaderTest.class.getName());
+
+    private static final int ITERATIONS = 200;
+
+    private StubAdminServer adminServer;
+
+    @Before
+    public void startAdminServer() throws IOException {
+        adminServer = new StubAdminServer();
+        adminServer.registerAdminServerDomain();
+    }
+
+    @After
+    public void stopAdminServer() {
+        adminServer.stop();
+    }
+
+    @Test
+    public void testScalarValues() throws Exception {
+        ResponseReader reader = json(" {\"s\" : \"a \\\"quoted\\\" \\u00e9\\n\", \"l\": 42, \"d\": -1.5e2,"
+            + " \"t\": true, \"n\": null, \"e\": [], \"o\": {}}");
+
+        assertEquals(Token.START_MAP, reader.next());
+        Map<String, Object> map = reader.readMapEntries();
+        assertEquals("a \"quoted\" é\n", map.get("s"));
+        assertEquals(42L, map.get("l"));
+        assertEquals(-150.0, map.get("d"));
+        assertEquals("true", map.get("t"));
+        assertTrue(map.containsKey("e"));
+        assertTrue(((Map) map.get("o")).isEmpty());
+        assertTrue(!map.containsKey("n"));
+        assertEquals(Token.END_DOCUMENT, reader.next());
+    }
+
+    @Test
+    public void testSameResultAsXml() throws Exception {
+        Map<String, Object> report = entityReport("name", "server", "configRef", "server-config");
+
+        CommandResult fromXml = read(xml(AdminResponses.toXml(report)), Section.ENTITY, Section.CHILD_RESOURCES);
+        CommandResult fromJson = read(json(AdminResponses.toJson(report)), Section.ENTITY, Section.CHILD_RESOURCES);
+
+        assertEquals(fromXml.getExitCode(), fromJson.getExitCode());
+        assertEquals(fromXml.getEntity().asMap(), fromJson.getEntity().asMap());
+        assertEquals(fromXml.getChildResources().asMap(), fromJson.getChildResources().asMap());
+        assertEquals("server-config", fromJson.getEntity().get("configRef"));
+    }
+
+    @Test
+    public void testSubComponents() throws Exception {
+        Map<String, Object> report = report("list-sub-components", "");
+        report.put("properties", map("a.war", "WebModule", "b.war", "WebModule"));
+        List<Object> children = new ArrayList<Object>();
+        children.add(map("message", "a.war"));
+        Map<String, Object> child = map("message", "b.war");
+        child.put("properties", map("moduleInfo", "b.war:web:/b"));
+        children.add(child);
+        report.put("children", children);
+
+        SubComponents subComponents =
+            read(json(AdminResponses.toJson(report)), Section.PROPERTIES, Section.CHILDREN).getSubComponents();
+
+        assertEquals("WebModule", subComponents.getComponents().get("b.war"));
+        assertEquals(2, subComponents.getModules().size());
+        assertEquals("b.war:web:/b", subComponents.getModules().get(1).getProperties().get("moduleInfo"));
+    }
+
+    @Test
+    public void testSkippedSectionsWithNestedStrings() throws Exception {
+        CommandResult result = read(json("{\"extraProperties\":{\"methods\":[{\"name\":\"} ] {\\\" [\"}, 12, null],"
+            + " \"entity\":{\"name\":\"server\"}}, \"children\":[{\"message\":\"a\"}], \"exit_code\":\"SUCCESS\"}"),
+            Section.ENTITY);
+
+        assertEquals("SUCCESS", result.getExitCode());
+        assertEquals("server", result.getEntity().get("name"));
+        assertTrue(result.getChildren().isEmpty());
+    }
+
+    @Test
+    public void testAutoFallsBackToXml() throws Exception {
+        adminServer.setJsonSupported(false);
+
+        GlassFishClientService client = startUp("auto");
+
+        assertEquals(8080, client.getNodeAddress().getHttpPort());
+        assertEquals(8181, client.getNodeAddress().getHttpsPort());
+    }
+
+    @Test
+    public void testStartUpDiscoveryBenchmark() throws Exception {
+        long[] xml = discovery("xml");
+        long[] json = discovery("json");
+        long[] auto = discovery("auto");
+
+        log.info("startUp() discovery of " + xml[0] + " requests: xml " + xml[1] + " bytes, parsed in "
+            + xml[2] / 1000 + " us; json " + json[1] + " bytes, parsed in " + json[2] / 1000 + " us");
+
+        assertEquals(xml[0], json[0]);
+        assertEquals(json[1], auto[1]);
+        assertTrue("json responses should be smaller", json[1] < xml[1]);
+    }
+
+    /**
+     * Run the startUp() discovery in the given format, then parse the same responses in a loop
+     *
+     * @return the number of requests, the bytes received and the parse time in ns of one discovery
+     */
+    private long[] discovery(String format) throws Exception {
+        adminServer.resetStatistics();
+        GlassFishClientService client = startUp(format);
+
+        assertEquals("127.0.0.1", client.getNodeAddress().getHost());
+        assertEquals(8080, client.getNodeAddress().getHttpPort());
+        assertEquals(8181, client.getNodeAddress().getHttpsPort());
+        long requests = adminServer.getRequestCount();
+        long bytes = adminServer.getBytesSent();
+
+        // auto is answered in JSON by the stub
+        ResponseFormat parsedFormat = "xml".equals(format) ? ResponseFormat.XML : ResponseFormat.JSON;
+        List<byte[]> documents = discoveryDocuments(parsedFormat == ResponseFormat.XML);
+        // the first round warms up the parser
+        parseTime(parsedFormat, documents);
+        return new long[] {requests, bytes, parseTime(parsedFormat, documents)};
+    }
+
+    /**
+     * @return the mean time in ns to parse all the documents once
+     */
+    private static long parseTime(ResponseFormat format, List<byte[]> documents) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (byte[] document : documents) {
+                read(format.createReader(null, new ByteArrayInputStream(document)),
+                    Section.ENTITY, Section.CHILD_RESOURCES, Section.CHILDREN);
+            }
+        }
+        return (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    private List<byte[]> discoveryDocuments(boolean xml) throws IOException {
+        String config = "/configs/config/server-config";
+        String[] resources = {"/servers/server", "/version", "/servers/server/server",
+            config + "/http-service/list-virtual-servers?target=server", config + "/http-service/virtual-server/server",
+            config + "/network-config/network-listeners/network-listener/http-listener-1",
+            config + "/network-config/protocols/protocol/http-listener-1",
+            config + "/network-config/network-listeners/network-listener/http-listener-1",
+            config + "/network-config/protocols/protocol/http-listener-1",
+            config + "/network-config/network-listeners/network-listener/http-listener-2",
+            config + "/network-config/protocols/protocol/http-listener-2"};
+
+        List<byte[]> result = new ArrayList<byte[]>();
+        for (String resource : resources) {
+            Map<String, Object> report = adminServer.getResponse(resource);
+            result.add((xml ? AdminResponses.toXml(report) : AdminResponses.toJson(report)).getBytes("UTF-8"));
+        }
+        return result;
+    }
+
+    private GlassFishClientService startUp(String format) {
+        CommonGlassFishConfiguration configuration = new CommonGlassFishConfiguration();
+        configuration.setAdminHost("127.0.0.1");
+        configuration.setAdminPort(adminServer.getPort());
+        configuration.setResponseFormat(format);
+
+        GlassFishClientService client = new GlassFishClientService(configuration);
+        try {
+            client.startUp();
+        } finally {
+            client.shutDown();
+        }
+        return client;
+    }
+
+    private static CommandResult read(ResponseReader reader, Section... sections) throws IOException {
+        try {
+            return CommandResult.read(reader, CommandResult.sections(sections));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static ResponseReader json(String document) throws IOException {
+        return new JsonResponseReader(new ByteArrayInputStream(document.getBytes("UTF-8")), "UTF-8");
+    }
+
+    private static ResponseReader xml(String document) throws IOException {
+        return new XmlResponseReader(new ByteArrayInputStream(document.getBytes("UTF-8")));
+    }
+}
@@ -0,0 +1,685 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.clientutils;
+
+import com.sun.jersey.core.util.Base64;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.entityReport;
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.map;
+import static org.jboss.arquillian.container.glassfish.clientutils.AdminResponses.report;
+
+/**
+ * A local HTTP server standing in for the management REST API of a DAS.
+ * <p>
+ * Every resource is registered as a response tree, written as JSON or XML
+ * depending on the Accept header of the request, like the DAS does.
+ */
+public final class StubAdminServer {
+
+    public static final String BASE_PATH = "/management/domain";
+
+    /**
+     * The number of bytes of each request entity kept to be inspected
+     */
+    private static final int KEPT_BODY_SIZE = 65536;
+
+    private final HttpServer server;
+
+    private final Map<String, Map<String, Object>> resources = new ConcurrentHashMap<String, Map<String, Object>>();
+
+    private final AtomicInteger requestCount = new AtomicInteger();
+
+    private final AtomicLong bytesSent = new AtomicLong();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    private final Map<String, Headers> requestHeaders = new ConcurrentHashMap<String, Headers>();
+
+    private final Map<String, String> requestBodies = new ConcurrentHashMap<String, String>();
+
+    private final ConcurrentMap<String, AtomicInteger> resourceRequests = new ConcurrentHashMap<String, AtomicInteger>();
+
+    private final AtomicInteger activeRequests = new AtomicInteger();
+
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private volatile long latencyMs;
+
+    private volatile String authorization;
+
+    private volatile boolean jsonSupported = true;
+
+    private volatile boolean uploadRequired;
+
+    private volatile List<String> progressMessages;
+
+    private volatile long phaseMs;
+
+    private final Map<String, AtomicInteger> runningJobs = new ConcurrentHashMap<String, AtomicInteger>();
+
+    /**
+     * The dotted names of the domain, answering the get requests which have no registered response
+     */
+    private final Map<String, String> dottedValues = Collections.synchronizedMap(new TreeMap<String, String>());
+
+    public StubAdminServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/management", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Register the response of a resource
+     *
+     * @param resource
+     *     path past the management base url, with its query string, or the whole path of the
+     *     resources outside of the domain tree, like /management/jobs/id/1
+     * @param report
+     *     the response, or null to answer 404 Not Found
+     */
+    public void respond(String resource, Map<String, Object> report) {
+        if (report == null) {
+            resources.remove(resource);
+        } else {
+            resources.put(resource, report);
+        }
+    }
+
+    /**
+     * Set the value of a dotted name, reported by the get requests whose pattern matches it
+     *
+     * @param value
+     *     the value, or null to remove the dotted name
+     */
+    public void setDottedName(String name, String value) {
+        if (value == null) {
+            dottedValues.remove(name);
+        } else {
+            dottedValues.put(name, value);
+        }
+    }
+
+    public Map<String, Object> getResponse(String resource) {
+        return resources.get(resource);
+    }
+
+    /**
+     * @param jsonSupported
+     *     false to answer in XML whatever the client accepts, like older servers
+     */
+    public void setJsonSupported(boolean jsonSupported) {
+        this.jsonSupported = jsonSupported;
+    }
+
+    /**
+     * @param uploadRequired
+     *     true to fail the deployments of archives which are not uploaded, like a DAS
+     *     which can not see the path of the archive
+     */
+    public void setUploadRequired(boolean uploadRequired) {
+        this.uploadRequired = uploadRequired;
+    }
+
+    /**
+     * @param latencyMs
+     *     time each request takes to be answered
+     */
+    public void setLatencyMs(long latencyMs) {
+        this.latencyMs = latencyMs;
+    }
+
+    /**
+     * @param user
+     *     the admin user the requests must authenticate as, or null to accept any request
+     * @param password
+     *     the password of the admin user
+     */
+    public void setCredentials(String user, String password) throws IOException {
+        this.authorization = (user == null) ? null
+            : "Basic " + new String(Base64.encode((user + ":" + password).getBytes("UTF-8")), "ASCII");
+    }
+
+    public int getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * @return the number of requests of a resource, with its query string
+     */
+    public int getRequestCount(String resource) {
+        AtomicInteger count = resourceRequests.get(resource);
+        return (count != null) ? count.get() : 0;
+    }
+
+    /**
+     * @return the highest number of requests served at the same time
+     */
+    public int getPeakActiveRequests() {
+        return peakActiveRequests.get();
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    /**
+     * @return the number of request entity bytes received, after the transfer decoding
+     */
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    /**
+     * @return a header of the last request of a resource, with its query string
+     */
+    public String getRequestHeader(String resource, String name) {
+        Headers headers = requestHeaders.get(resource);
+        return (headers != null) ? headers.getFirst(name) : null;
+    }
+
+    /**
+     * @return the start of the entity of the last request of a resource, with its query string
+     */
+    public String getRequestBody(String resource) {
+        return requestBodies.get(resource);
+    }
+
+    public void resetStatistics() {
+        requestCount.set(0);
+        bytesSent.set(0);
+        bytesReceived.set(0);
+        requestHeaders.clear();
+        requestBodies.clear();
+        resourceRequests.clear();
+        peakActiveRequests.set(0);
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Register the resources discovered by {@link GlassFishClientService#startUp()} for the
+     * admin server target: a HTTP listener on 8080 and a HTTPS listener on 8181.
+     */
+    public void registerAdminServerDomain() {
+        String config = "/configs/config/server-config";
+        respond("/servers/server", childResources("server"));
+
+        Map<String, Object> version = report("version", "GlassFish Server Open Source Edition 3.1.2.2");
+        version.put("extraProperties", map("version-number", "3.1.2.2", "version", "3.1.2.2 (build 5)"));
+        respond("/version", version);
+
+        respond("/servers/server/server", entityReport("name", "server", "configRef", "server-config",
+            "lbWeight", "100", "nodeRef", "localhost-domain1"));
+
+        Map<String, Object> virtualServers = report("list-virtual-servers", "");
+        List<Object> children = new ArrayList<Object>();
+        children.add(map("message", "server"));
+        children.add(map("message", "__asadmin"));
+        virtualServers.put("children", children);
+        respond(config + "/http-service/list-virtual-servers?target=server", virtualServers);
+
+        respond(config + "/http-service/virtual-server/server", entityReport("id", "server",
+            "networkListeners", "http-listener-1,http-listener-2", "hosts", "${com.sun.aas.hostName}",
+            "state", "on", "accessLoggingEnabled", "inherit", "accessLog", "${com.sun.aas.instanceRoot}/logs/access"));
+
+        String listener = config + "/network-config/network-listeners/network-listener/";
+        respond(listener + "http-listener-1", entityReport("name", "http-listener-1", "port", "8080",
+            "protocol", "http-listener-1", "enabled", "true", "address", "0.0.0.0", "threadPool", "http-thread-pool",
+            "transport", "tcp", "jkEnabled", "false"));
+        respond(listener + "http-listener-2", entityReport("name", "http-listener-2", "port", "8181",
+            "protocol", "http-listener-2", "enabled", "true", "address", "0.0.0.0", "threadPool", "http-thread-pool",
+            "transport", "tcp", "jkEnabled", "false"));
+
+        String protocol = config + "/network-config/protocols/protocol/";
+        respond(protocol + "http-listener-1", entityReport("name", "http-listener-1", "securityEnabled", "false"));
+        respond(protocol + "http-listener-2", entityReport("name", "http-listener-2", "securityEnabled", "true"));
+
+        setDottedNames("servers.server.server.name", "server", "servers.server.server.config-ref", "server-config",
+            "servers.server.server.node-ref", "localhost-domain1", "servers.server.server.lb-weight", "100",
+            "nodes.node.localhost-domain1.name", "localhost-domain1",
+            "nodes.node.localhost-domain1.node-host", "localhost");
+        String dotted = "configs.config.server-config.";
+        setDottedNames(
+            dotted + "http-service.virtual-server.__asadmin.network-listeners", "admin-listener",
+            dotted + "http-service.virtual-server.server.network-listeners", "http-listener-1,http-listener-2",
+            dotted + "http-service.virtual-server.server.state", "on",
+            dotted + "network-config.network-listeners.network-listener.admin-listener.port", "4848",
+            dotted + "network-config.network-listeners.network-listener.admin-listener.protocol", "admin-listener",
+            dotted + "network-config.network-listeners.network-listener.http-listener-1.enabled", "true",
+            dotted + "network-config.network-listeners.network-listener.http-listener-1.port", "8080",
+            dotted + "network-config.network-listeners.network-listener.http-listener-1.protocol", "http-listener-1",
+            dotted + "network-config.network-listeners.network-listener.http-listener-2.enabled", "true",
+            dotted + "network-config.network-listeners.network-listener.http-listener-2.port", "8181",
+            dotted + "network-config.network-listeners.network-listener.http-listener-2.protocol", "http-listener-2",
+            dotted + "network-config.protocols.protocol.admin-listener.security-enabled", "false",
+            dotted + "network-config.protocols.protocol.http-listener-1.security-enabled", "false",
+            dotted + "network-config.protocols.protocol.http-listener-2.security-enabled", "true",
+            dotted + "thread-pools.thread-pool.http-thread-pool.max-thread-pool-size", "5");
+    }
+
+    /**
+     * Register the resources used to deploy and undeploy an application on a GlassFish 3.1 server,
+     * with no sub-components and a context root named after the application
+     */
+    public void registerApplication(String name) {
+        respond("/applications/application", report("deploy", ""));
+        Map<String, Object> subComponents = report("list-sub-components", "");
+        subComponents.put("properties", map());
+        respond("/applications/application/list-sub-components?id=" + name, subComponents);
+        respond("/applications/application/" + name, entityReport("name", name, "contextRoot", "/" + name));
+    }
+
+    /**
+     * Register the resources used to deploy an EAR on a GlassFish 3.1 server: web module i is
+     * named module{i}.war, has the context root /module{i} and holds the servlets Servlet{i}_{j}
+     */
+    public void registerEnterpriseApplication(String name, int modules, int servlets) {
+        respond("/applications/application", report("deploy", ""));
+        Map<String, Object> components = map();
+        List<Object> children = new ArrayList<Object>();
+        for (int i = 0; i < modules; i++) {
+            String module = "module" + i + ".war";
+            components.put(module, "WebModule");
+            Map<String, Object> child = map("message", module);
+            child.put("properties", map("moduleInfo", module + ":web:/module" + i));
+            children.add(child);
+
+            Map<String, Object> moduleServlets = map();
+            for (int j = 0; j < servlets; j++) {
+                moduleServlets.put("Servlet" + i + "_" + j, "Servlet");
+            }
+            Map<String, Object> moduleComponents = report("list-sub-components", "");
+            moduleComponents.put("properties", moduleServlets);
+            respond("/applications/application/list-sub-components?appname=" + name + "&id=" + module
+                + "&type=servlets", moduleComponents);
+        }
+        Map<String, Object> subComponents = report("list-sub-components", "");
+        subComponents.put("properties", components);
+        subComponents.put("children", children);
+        respond("/applications/application/list-sub-components?id=" + name, subComponents);
+        respond("/applications/application/" + name, entityReport("name", name));
+    }
+
+    /**
+     * Register the version and the jobs resource of a GlassFish 4 server
+     */
+    public void registerGlassFish4() {
+        Map<String, Object> version = report("version", "GlassFish Server Open Source Edition 4.1");
+        version.put("extraProperties", map("version-number", "4.1", "version", "4.1 (build 13)"));
+        respond("/version", version);
+    }
+
+    /**
+     * Stream the progress of the deployments as server-sent events, to the clients accepting them:
+     * each message is sent the given time after the previous one, then the result of the deployment
+     */
+    public void registerDeploymentProgress(long phaseMs, String... messages) {
+        this.phaseMs = phaseMs;
+        this.progressMessages = Arrays.asList(messages);
+    }
+
+    /**
+     * Register the job of a detached deployment: the deploy command answers with the job id,
+     * and the job is reported running for the given number of polls before it completes
+     */
+    public void registerDeploymentJob(String job, int runningPolls, String exitCode) {
+        respond("/applications/application", report("deploy", "Job ID: " + job));
+        String resource = "/management/jobs/id/" + job;
+        runningJobs.put(resource, new AtomicInteger(runningPolls));
+        Map<String, Object> report = report("", "");
+        report.put("extraProperties", map("jobId", job, "jobName", "deploy", "jobState", "COMPLETED",
+            "exitCode", exitCode, "message", "Application deployed"));
+        respond(resource, report);
+    }
+
+    /**
+     * Register the commands adding, removing and listing the libraries of applibs, holding the given libraries
+     */
+    public void registerLibraries(String... libraries) {
+        respond("/add-library", report("add-library", ""));
+        respond("/remove-library", report("remove-library", ""));
+        List<Object> children = new ArrayList<Object>();
+        for (String library : libraries) {
+            children.add(map("message", library));
+        }
+        Map<String, Object> report = report("list-libraries", "");
+        report.put("children", children);
+        respond("/list-libraries?type=app", report);
+    }
+
+    /**
+     * Register the value of a property of a deployed application, reported by the get command
+     */
+    public void registerApplicationProperty(String name, String property, String value) {
+        String dottedName = "applications.application." + name + ".property." + property;
+        setDottedName(dottedName, value);
+    }
+
+    /**
+     * Register the resources discovered by {@link GlassFishClientService#startUp()} for a cluster
+     * target. The listener ports are system properties of the cluster configuration, overridden
+     * by each instance: instance i listens on 28080 + i and 28180 + i. The instances are spread
+     * over the given number of nodes.
+     */
+    public void registerClusterDomain(String cluster, int instances, int nodes) {
+        String config = "/configs/config/" + cluster + "-config";
+        respond("/servers/server", childResources("server"));
+        respond("/clusters/cluster", childResources(cluster));
+
+        Map<String, Object> version = report("version", "GlassFish Server Open Source Edition 3.1.2.2");
+        version.put("extraProperties", map("version-number", "3.1.2.2", "version", "3.1.2.2 (build 5)"));
+        respond("/version", version);
+
+        respond("/clusters/cluster/" + cluster, entityReport("name", cluster, "configRef", cluster + "-config"));
+
+        Map<String, Object> virtualServers = report("list-virtual-servers", "");
+        List<Object> children = new ArrayList<Object>();
+        children.add(map("message", "server"));
+        virtualServers.put("children", children);
+        respond(config + "/http-service/list-virtual-servers?target=" + cluster, virtualServers);
+        respond(config + "/http-service/virtual-server/server", entityReport("id", "server",
+            "networkListeners", "http-listener-1,http-listener-2"));
+
+        String listener = config + "/network-config/network-listeners/network-listener/";
+        respond(listener + "http-listener-1", entityReport("name", "http-listener-1",
+            "port", "${HTTP_LISTENER_PORT}", "protocol", "http-listener-1", "enabled", "true"));
+        respond(listener + "http-listener-2", entityReport("name", "http-listener-2",
+            "port", "${HTTP_SSL_LISTENER_PORT}", "protocol", "http-listener-2", "enabled", "true"));
+        String protocol = config + "/network-config/protocols/protocol/";
+        respond(protocol + "http-listener-1", entityReport("name", "http-listener-1", "securityEnabled", "false"));
+        respond(protocol + "http-listener-2", entityReport("name", "http-listener-2", "securityEnabled", "true"));
+        respond(config + "/system-property/HTTP_LISTENER_PORT", entityReport("name", "HTTP_LISTENER_PORT",
+            "value", "28080"));
+        respond(config + "/system-property/HTTP_SSL_LISTENER_PORT", entityReport("name", "HTTP_SSL_LISTENER_PORT",
+            "value", "28181"));
+
+        String dotted = "configs.config." + cluster + "-config.";
+        setDottedNames(
+            dotted + "http-service.virtual-server.server.network-listeners", "http-listener-1,http-listener-2",
+            dotted + "network-config.network-listeners.network-listener.http-listener-1.port", "${HTTP_LISTENER_PORT}",
+            dotted + "network-config.network-listeners.network-listener.http-listener-1.protocol", "http-listener-1",
+            dotted + "network-config.network-listeners.network-listener.http-listener-2.port",
+            "${HTTP_SSL_LISTENER_PORT}",
+            dotted + "network-config.network-listeners.network-listener.http-listener-2.protocol", "http-listener-2",
+            dotted + "network-config.protocols.protocol.http-listener-2.security-enabled", "true",
+            dotted + "system-property.HTTP_LISTENER_PORT.name", "HTTP_LISTENER_PORT",
+            dotted + "system-property.HTTP_LISTENER_PORT.value", "28080",
+            dotted + "system-property.HTTP_SSL_LISTENER_PORT.name", "HTTP_SSL_LISTENER_PORT",
+            dotted + "system-property.HTTP_SSL_LISTENER_PORT.value", "28181");
+        setDottedNames("clusters.cluster." + cluster + ".name", cluster,
+            "clusters.cluster." + cluster + ".config-ref", cluster + "-config");
+
+        String[] names = new String[instances];
+        List<Object> instanceList = new ArrayList<Object>();
+        for (int i = 0; i < instances; i++) {
+            names[i] = cluster + "-instance-" + i;
+            String node = "node-" + (i % nodes);
+            respond("/servers/server/" + names[i], entityReport("name", names[i], "configRef", cluster + "-config",
+                "nodeRef", node));
+            respond("/servers/server/" + names[i] + "/system-property/HTTP_LISTENER_PORT",
+                entityReport("name", "HTTP_LISTENER_PORT", "value", String.valueOf(28080 + i)));
+            respond("/servers/server/" + names[i] + "/system-property/HTTP_SSL_LISTENER_PORT",
+                entityReport("name", "HTTP_SSL_LISTENER_PORT", "value", String.valueOf(28180 + i)));
+            instanceList.add(map("name", names[i], "status", "RUNNING"));
+            String server = "servers.server." + names[i] + ".";
+            setDottedNames(server + "name", names[i], server + "config-ref", cluster + "-config",
+                server + "node-ref", node,
+                server + "system-property.HTTP_LISTENER_PORT.value", String.valueOf(28080 + i),
+                server + "system-property.HTTP_SSL_LISTENER_PORT.value", String.valueOf(28180 + i),
+                "clusters.cluster." + cluster + ".server-ref." + names[i] + ".ref", names[i]);
+        }
+        respond("/clusters/cluster/" + cluster + "/server-ref", childResources(names));
+        for (int i = 0; i < nodes; i++) {
+            respond("/nodes/node/node-" + i, entityReport("name", "node-" + i, "nodeHost", "host-" + i));
+            setDottedNames("nodes.node.node-" + i + ".name", "node-" + i, "nodes.node.node-" + i + ".node-host",
+                "host-" + i);
+        }
+
+        Map<String, Object> extraProperties = map();
+        extraProperties.put("instanceList", instanceList);
+        Map<String, Object> listInstances = report("list-instances", "");
+        listInstances.put("extraProperties", extraProperties);
+        respond("/list-instances", listInstances);
+    }
+
+    /**
+     * Set the values of dotted names, given as name and value pairs
+     */
+    private void setDottedNames(String... values) {
+        for (int i = 0; i + 1 < values.length; i += 2) {
+            setDottedName(values[i], values[i + 1]);
+        }
+    }
+
+    /**
+     * The report of the get command for the patterns of a query, one child message per
+     * matching dotted name, or null if none matches
+     */
+    private Map<String, Object> getDottedNamesReport(String query) throws IOException {
+        List<Pattern> patterns = new ArrayList<Pattern>();
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith("pattern=")) {
+                String pattern = URLDecoder.decode(parameter.substring("pattern=".length()), "UTF-8");
+                patterns.add(Pattern.compile(Pattern.quote(pattern).replace("*", "\\E.*\\Q")));
+            }
+        }
+        List<Object> children = new ArrayList<Object>();
+        synchronized (dottedValues) {
+            for (Map.Entry<String, String> value : dottedValues.entrySet()) {
+                for (Pattern pattern : patterns) {
+                    if (pattern.matcher(value.getKey()).matches()) {
+                        children.add(map("message", value.getKey() + "=" + value.getValue()));
+                        break;
+                    }
+                }
+            }
+        }
+        if (children.isEmpty()) {
+            return null;
+        }
+        Map<String, Object> report = report("get", "");
+        report.put("children", children);
+        return report;
+    }
+
+    static Map<String, Object> childResources(String... names) {
+        Map<String, Object> childResources = map();
+        for (String name : names) {
+            childResources.put(name, "http://localhost:4848/management/domain/" + name);
+        }
+        Map<String, Object> extraProperties = map();
+        extraProperties.put("childResources", childResources);
+        Map<String, Object> report = report("", "");
+        report.put("extraProperties", extraProperties);
+        return report;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        requestCount.incrementAndGet();
+        int active = activeRequests.incrementAndGet();
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try {
+                updatePeak(active);
+                bytesReceived.addAndGet(drain(exchange.getRequestBody(), body));
+                if (latencyMs > 0) {
+                    Thread.sleep(latencyMs);
+                }
+            } finally {
+                // before the response is sent, the client may send its next request as soon as it is received
+                activeRequests.decrementAndGet();
+            }
+            serveResource(exchange, body.toString("UTF-8"));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    private void updatePeak(int active) {
+        int peak = peakActiveRequests.get();
+        while (active > peak && !peakActiveRequests.compareAndSet(peak, active)) {
+            peak = peakActiveRequests.get();
+        }
+    }
+
+    private void serveResource(HttpExchange exchange, String requestBody) throws IOException, InterruptedException {
+        String path = exchange.getRequestURI().getRawPath();
+        if (path.startsWith(BASE_PATH)) {
+            path = path.substring(BASE_PATH.length());
+        }
+        String query = exchange.getRequestURI().getRawQuery();
+        String resource = (query != null) ? path + "?" + query : path;
+        AtomicInteger count = resourceRequests.get(resource);
+        if (count == null) {
+            resourceRequests.putIfAbsent(resource, new AtomicInteger());
+            count = resourceRequests.get(resource);
+        }
+        count.incrementAndGet();
+        requestHeaders.put(resource, exchange.getRequestHeaders());
+        requestBodies.put(resource, requestBody);
+        Map<String, Object> report = resources.get(resource);
+        if (report == null && path.equals("/get") && query != null) {
+            report = getDottedNamesReport(query);
+        }
+        if (authorization != null && !authorization.equals(exchange.getRequestHeaders().getFirst("Authorization"))) {
+            exchange.sendResponseHeaders(401, -1);
+            exchange.close();
+            return;
+        }
+        if (uploadRequired && report != null && "POST".equals(exchange.getRequestMethod())
+            && path.equals("/applications/application") && !requestBody.contains("filename=")) {
+            report = report("deploy", "The archive path does not exist.");
+            report.put("exit_code", "FAILURE");
+        }
+
+        AtomicInteger runningPolls = runningJobs.get(resource);
+        if (report != null && runningPolls != null && runningPolls.getAndDecrement() > 0) {
+            report = report("", "");
+            report.put("extraProperties", map("jobState", "RUNNING"));
+        }
+
+        if (report == null) {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+            return;
+        }
+
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (progressMessages != null && accept != null && accept.contains("text/event-stream")) {
+            serveProgress(exchange, report);
+            return;
+        }
+        boolean json = jsonSupported && accept != null && accept.contains("application/json");
+        byte[] body = (json ? AdminResponses.toJson(report) : AdminResponses.toXml(report)).getBytes("UTF-8");
+
+        exchange.getResponseHeaders().set("Content-Type", json ? "application/json" : "application/xml");
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            output.write(body);
+        } finally {
+            output.close();
+        }
+        bytesSent.addAndGet(body.length);
+    }
+
+    private void serveProgress(HttpExchange exchange, Map<String, Object> report)
+        throws IOException, InterruptedException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream output = exchange.getResponseBody();
+        try {
+            output.write(": progress of the command\n\n".getBytes("UTF-8"));
+            for (String message : progressMessages) {
+                Thread.sleep(phaseMs);
+                Map<String, Object> event = map();
+                event.put("progress-status-event", map("message", message, "id", "1"));
+                writeEvent(output, "ProgressStatus/change", AdminResponses.toJson(event));
+            }
+            Thread.sleep(phaseMs);
+            writeEvent(output, "AdminCommandInstance/stateChanged", AdminResponses.toJson(report));
+        } finally {
+            output.close();
+        }
+    }
+
+    private void writeEvent(OutputStream output, String name, String data) throws IOException {
+        StringBuilder event = new StringBuilder("event: ").append(name).append('\n');
+        for (String line : data.split("\n")) {
+            event.append("data: ").append(line).append('\n');
+        }
+        byte[] bytes = event.append('\n').toString().getBytes("UTF-8");
+        output.write(bytes);
+        output.flush();
+        bytesSent.addAndGet(bytes.length);
+    }
+
+    /**
+     * Discard the request entity, but its first bytes
+     *
+     * @return the number of bytes read
+     */
+    private static long drain(InputStream input, ByteArrayOutputStream head) throws IOException {
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+            head.write(buffer, 0, (int) Math.max(0, Math.min(read, KEPT_BODY_SIZE - total)));
+            total += read;
+        }
+        input.close();
+        return total;
+    }
+}
@@ -44,6 +44,7 @@ public class GlassFishConfiguration implements ContainerConfiguration {
     private String configurationXml;
     private String resourcesXml;
     private boolean cleanup = true;
+    private String explodedDirectory;
 
     /* (non-Javadoc)
      * @see org.jboss.arquillian.spi.client.container.ContainerConfiguration#validate()
@@ -141,6 +142,20 @@ public class GlassFishConfiguration implements ContainerConfiguration {
         this.cleanup = cleanup;
     }
 
+    public String getExplodedDirectory() {
+        return explodedDirectory;
+    }
+
+    /**
+     * @param explodedDirectory
+     *     The directory where the archives are written as directory trees, to be deployed in place. The later
+     *     deployments of an archive only rewrite the files which changed. If not set, packed archives are
+     *     deployed.
+     */
+    public void setExplodedDirectory(String explodedDirectory) {
+        this.explodedDirectory = explodedDirectory;
+    }
+
     public List<String> getResourcesXml() {
         if (resourcesXml == null) {
             return Collections.emptyList();
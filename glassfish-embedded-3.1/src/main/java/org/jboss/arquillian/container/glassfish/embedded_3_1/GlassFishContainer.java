@@ -29,6 +29,7 @@ import org.glassfish.embeddable.GlassFishRuntime;
 import org.glassfish.embeddable.web.Context;
 import org.glassfish.embeddable.web.VirtualServer;
 import org.glassfish.embeddable.web.WebContainer;
+import org.jboss.arquillian.container.glassfish.ExplodedArchive;
 import org.jboss.arquillian.container.spi.client.container.DeployableContainer;
 import org.jboss.arquillian.container.spi.client.container.DeploymentException;
 import org.jboss.arquillian.container.spi.client.container.LifecycleException;
@@ -188,9 +189,19 @@ public class GlassFishContainer implements DeployableContainer<GlassFishConfigur
     public ProtocolMetaData deploy(Archive<?> archive) throws DeploymentException {
         String deploymentName = createDeploymentName(archive.getName());
         try {
-            URL deploymentUrl = ShrinkWrapUtil.toURL(archive);
+            if (configuration.getExplodedDirectory() != null) {
+                // deployed in place, the directory is kept to be updated by the next deployment
+                ExplodedArchive exploded = new ExplodedArchive(new File(configuration.getExplodedDirectory(),
+                    deploymentName));
+                int written = exploded.write(archive);
+                log.fine("Wrote " + written + " changed files of " + archive.getName() + " to " + exploded.getDirectory());
+
+                glassfish.getDeployer().deploy(exploded.getDirectory().toURI(), "--name", deploymentName);
+            } else {
+                URL deploymentUrl = ShrinkWrapUtil.toURL(archive);
 
-            glassfish.getDeployer().deploy(deploymentUrl.toURI(), "--name", deploymentName);
+                glassfish.getDeployer().deploy(deploymentUrl.toURI(), "--name", deploymentName);
+            }
         } catch (Exception e) {
             throw new DeploymentException("Could not deploy " + archive.getName(), e);
         }
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A long-lived asadmin process in multimode, running the admin commands read from its input
+ * one after the other, so the JVM and the admin-cli bootstrap are paid once for all of them.
+ * <p>
+ * The output of a command ends with the status line asadmin prints for it, like
+ * <code>Command start-domain executed successfully.</code> or <code>Command start-domain failed.</code>
+ */
+class AsadminSession implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(AsadminSession.class.getName());
+
+    private final Process process;
+
+    private final Writer input;
+
+    private final BufferedReader output;
+
+    private final long commandTimeoutMs;
+
+    /**
+     * ends the process of a command running longer than the timeout
+     */
+    private final Timer watchdog = new Timer("glassfish-asadmin-watchdog", true);
+
+    /**
+     * Start the asadmin process
+     *
+     * @param adminCli
+     *     the command running admin-cli.jar, without its arguments
+     * @param commandTimeoutMs
+     *     the longest time a command may run before the session is ended
+     */
+    AsadminSession(List<String> adminCli, long commandTimeoutMs) throws IOException {
+        this.commandTimeoutMs = commandTimeoutMs;
+        List<String> cmd = new ArrayList<String>(adminCli);
+        cmd.add("--interactive=false");
+        cmd.add("multimode");
+        cmd.add("--printprompt=false");
+        this.process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+        this.input = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+        this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+    }
+
+    /**
+     * Run a command and wait for its status line
+     *
+     * @param command
+     *     the name of the command
+     * @param args
+     *     the arguments of the command
+     * @param consumer
+     *     receives the output of the command, line by line, while it runs
+     *
+     * @return the result of the command
+     *
+     * @throws IOException
+     *     if the asadmin process ended before the command completed, or was ended as the command timed out
+     */
+    synchronized Result execute(String command, List<String> args,
+        GlassFishServerControl.ProcessOutputConsumer consumer) throws IOException {
+        StringBuilder line = new StringBuilder(command);
+        for (String arg : args) {
+            line.append(' ').append(quote(arg));
+        }
+
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        TimerTask timeout = new TimerTask() {
+            @Override
+            public void run() {
+                // the output ends with the process, which unblocks the reads
+                timedOut.set(true);
+                process.destroy();
+            }
+        };
+        watchdog.schedule(timeout, commandTimeoutMs);
+        String status = "Command " + command + " ";
+        List<String> lines = new ArrayList<String>();
+        try {
+            input.write(line.append('\n').toString());
+            input.flush();
+
+            for (String outputLine = output.readLine(); outputLine != null; outputLine = output.readLine()) {
+                consumer.consume(outputLine);
+                if (outputLine.startsWith(status) && outputLine.endsWith(".")) {
+                    return new Result(outputLine.contains(" failed") ? 1 : 0, lines);
+                }
+                lines.add(outputLine);
+            }
+        } catch (IOException e) {
+            if (!timedOut.get()) {
+                throw e;
+            }
+        } finally {
+            timeout.cancel();
+        }
+        if (timedOut.get()) {
+            throw new IOException("The asadmin command " + command + " did not complete within " + commandTimeoutMs
+                + " ms: " + lines);
+        }
+        throw new IOException("The asadmin session ended while running " + command + ": " + lines);
+    }
+
+    /**
+     * @return true until the asadmin process ended
+     */
+    boolean isAlive() {
+        try {
+            process.exitValue();
+            return false;
+        } catch (IllegalThreadStateException running) {
+            return true;
+        }
+    }
+
+    /**
+     * End the asadmin process, once the running command completed
+     */
+    public synchronized void close() {
+        try {
+            // multimode ends at the end of its input
+            input.close();
+            process.waitFor();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "The asadmin session already ended", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            watchdog.cancel();
+            process.destroy();
+        }
+    }
+
+    /**
+     * Quote an argument for the command line of multimode, which takes the backslash as an escape
+     * character, in the quotes or not, so the separators of Windows paths are escaped as well
+     */
+    static String quote(String arg) {
+        String escaped = arg.replace("\\", "\\\\").replace("\"", "\\\"");
+        if (arg.indexOf(' ') == -1 && arg.indexOf('\t') == -1 && arg.indexOf('"') == -1) {
+            return escaped;
+        }
+        return "\"" + escaped + "\"";
+    }
+
+    /**
+     * The exit status and the output of a command
+     */
+    static class Result {
+
+        private final int exitCode;
+
+        private final List<String> output;
+
+        Result(int exitCode, List<String> output) {
+            this.exitCode = exitCode;
+            this.output = Collections.unmodifiableList(output);
+        }
+
+        /**
+         * @return 0 if the command succeeded
+         */
+        int getExitCode() {
+            return exitCode;
+        }
+
+        /**
+         * @return the lines printed by the command, but its status line
+         */
+        List<String> getOutput() {
+            return output;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Builds the command line of the DAS JVM from the java-config of the domain.xml, the way
+ * <code>asadmin start-domain</code> does, so the server can be launched without the admin CLI.
+ * <p>
+ * Like asadmin, the JDK is the java-home of the java-config, else the AS_JAVA of the asenv
+ * configuration of the installation, else the JDK running the tests.
+ */
+class DomainLauncher {
+
+    private static final Logger logger = Logger.getLogger(DomainLauncher.class.getName());
+
+    private static final String MAIN_CLASS = "com.sun.enterprise.glassfish.bootstrap.ASMain";
+
+    private static final String SERVER_CONFIG = "server-config";
+
+    private static final Pattern TOKEN = Pattern.compile("\\$\\{([^}]+)\\}");
+
+    /**
+     * a JDK version range prefixing a JVM option, like [1.7|1.8]
+     */
+    private static final Pattern VERSION_RANGE = Pattern.compile("^\\[([^|\\]]*)\\|([^\\]]*)\\](.*)$");
+
+    /**
+     * the AS_JAVA line of asenv.conf or asenv.bat, like AS_JAVA="/usr/lib/jvm/java-8" or set AS_JAVA=C:\jdk8
+     */
+    private static final Pattern AS_JAVA = Pattern.compile("^\\s*(?:set\\s+)?AS_JAVA\\s*=\\s*\"?([^\"]*?)\"?\\s*$");
+
+    private final File installRoot;
+
+    private final File domainDir;
+
+    /**
+     * the JDK launching the DAS, resolved along with the command
+     */
+    private File javaHome;
+
+    /**
+     * where the java root comes from, for the log
+     */
+    private String javaRootOrigin;
+
+    /**
+     * @param config
+     *     the configuration of the container
+     * @param domainDir
+     *     the directory of the domain to launch
+     */
+    DomainLauncher(GlassFishManagedContainerConfiguration config, File domainDir) {
+        this.installRoot = new File(config.getGlassFishHome(), "glassfish");
+        this.domainDir = domainDir;
+    }
+
+    /**
+     * @return the directory of the configured domain in the installation
+     */
+    static File getDomainDir(GlassFishManagedContainerConfiguration config) {
+        return new File(new File(config.getGlassFishHome(), "glassfish/domains"), getDomainName(config));
+    }
+
+    /**
+     * Build the command launching the DAS of the domain
+     *
+     * @param debug
+     *     add the debug-options of the java-config
+     *
+     * @return the command, starting with the java executable
+     *
+     * @throws IOException
+     *     if the domain.xml can't be read
+     */
+    List<String> buildCommand(boolean debug) throws IOException {
+        Element javaConfig = readJavaConfig(new File(domainDir, "config/domain.xml"));
+        File javaRoot = getJavaRoot();
+        Map<String, String> tokens = getTokens(javaConfig, javaRoot);
+        javaHome = getJavaHome(javaConfig, tokens, javaRoot);
+        tokens.put("java.home", javaHome.getAbsolutePath());
+
+        List<String> cmd = new ArrayList<String>();
+        cmd.add(new File(javaHome, "bin/java").getAbsolutePath());
+        cmd.add("-cp");
+        cmd.add(buildClasspath(javaConfig, tokens));
+
+        boolean installRootSet = false;
+        boolean instanceRootSet = false;
+        for (String option : getChildTexts(javaConfig, "jvm-options")) {
+            option = getSupportedOption(option);
+            if (option != null) {
+                installRootSet |= option.startsWith("-Dcom.sun.aas.installRoot=");
+                instanceRootSet |= option.startsWith("-Dcom.sun.aas.instanceRoot=");
+                cmd.add(resolve(option, tokens));
+            }
+        }
+        if (!installRootSet) {
+            cmd.add("-Dcom.sun.aas.installRoot=" + installRoot.getAbsolutePath());
+        }
+        if (!instanceRootSet) {
+            cmd.add("-Dcom.sun.aas.instanceRoot=" + domainDir.getAbsolutePath());
+        }
+        if (debug && javaConfig.hasAttribute("debug-options")) {
+            for (String option : resolve(javaConfig.getAttribute("debug-options"), tokens).trim().split("\\s+")) {
+                cmd.add(option);
+            }
+        }
+
+        cmd.add(MAIN_CLASS);
+        cmd.add("-domainname");
+        cmd.add(domainDir.getName());
+        cmd.add("-domaindir");
+        cmd.add(domainDir.getAbsolutePath());
+        cmd.add("-instancename");
+        cmd.add("server");
+        cmd.add("-type");
+        cmd.add("DAS");
+        cmd.add("-verbose");
+        cmd.add("false");
+        cmd.add("-debug");
+        cmd.add(String.valueOf(debug));
+        cmd.add("-upgrade");
+        cmd.add("false");
+        return cmd;
+    }
+
+    private String buildClasspath(Element javaConfig, Map<String, String> tokens) {
+        StringBuilder classpath = new StringBuilder();
+        appendClasspath(classpath, javaConfig.getAttribute("classpath-prefix"), tokens);
+        appendClasspath(classpath, new File(installRoot, "modules/glassfish.jar").getAbsolutePath(), tokens);
+        appendClasspath(classpath, javaConfig.getAttribute("system-classpath"), tokens);
+        appendClasspath(classpath, javaConfig.getAttribute("classpath-suffix"), tokens);
+        return classpath.toString();
+    }
+
+    private void appendClasspath(StringBuilder classpath, String entries, Map<String, String> tokens) {
+        if (entries == null || entries.length() == 0) {
+            return;
+        }
+        if (classpath.length() > 0) {
+            classpath.append(File.pathSeparatorChar);
+        }
+        classpath.append(resolve(entries, tokens));
+    }
+
+    /**
+     * @return the AS_JAVA of the asenv configuration, or the JDK running the tests
+     */
+    private File getJavaRoot() {
+        File asenv = new File(installRoot, File.separatorChar == '\\' ? "config/asenv.bat" : "config/asenv.conf");
+        if (asenv.isFile()) {
+            try {
+                BufferedReader reader = new BufferedReader(new FileReader(asenv));
+                try {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        String asJava = parseAsJava(line);
+                        if (asJava != null) {
+                            File javaRoot = new File(asJava);
+                            if (!javaRoot.isAbsolute()) {
+                                javaRoot = new File(asenv.getParentFile(), asJava);
+                            }
+                            if (isJdk(javaRoot)) {
+                                javaRootOrigin = "the AS_JAVA of " + asenv;
+                                return javaRoot;
+                            }
+                            logger.log(Level.WARNING, "Ignoring the AS_JAVA {0} of {1}, which is not a JDK",
+                                new Object[] {javaRoot, asenv});
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Unable to read " + asenv, e);
+            }
+        }
+        javaRootOrigin = "the JDK running the tests";
+        return new File(System.getProperty("java.home"));
+    }
+
+    /**
+     * @return the value of an AS_JAVA line of asenv.conf or asenv.bat, or null for the other lines
+     */
+    static String parseAsJava(String line) {
+        Matcher asJava = AS_JAVA.matcher(line);
+        if (asJava.matches() && asJava.group(1).length() > 0) {
+            return asJava.group(1);
+        }
+        return null;
+    }
+
+    /**
+     * @return the java-home of the java-config, or the java root
+     */
+    private File getJavaHome(Element javaConfig, Map<String, String> tokens, File javaRoot) {
+        String configured = javaConfig.getAttribute("java-home");
+        if (configured.length() > 0) {
+            File javaHome = new File(resolve(configured, tokens));
+            if (javaHome.equals(javaRoot)) {
+                // like the java-home="${com.sun.aas.javaRoot}" of the older domains
+            } else if (isJdk(javaHome)) {
+                logger.log(Level.INFO, "Launching the DAS with the JDK {0}, the java-home of the java-config",
+                    javaHome);
+                return javaHome;
+            } else {
+                logger.log(Level.WARNING, "Ignoring the java-home {0} of the java-config, which is not a JDK",
+                    javaHome);
+            }
+        }
+        logger.log(Level.INFO, "Launching the DAS with the JDK {0}, {1}", new Object[] {javaRoot, javaRootOrigin});
+        return javaRoot;
+    }
+
+    private static boolean isJdk(File javaHome) {
+        return new File(javaHome, "bin/java").isFile() || new File(javaHome, "bin/java.exe").isFile();
+    }
+
+    private Map<String, String> getTokens(Element javaConfig, File javaRoot) {
+        Map<String, String> tokens = new HashMap<String, String>();
+        // the system properties of the configuration, like the ports
+        for (Element property : getChildElements((Element) javaConfig.getParentNode(), "system-property")) {
+            tokens.put(property.getAttribute("name"), property.getAttribute("value"));
+        }
+        tokens.put("com.sun.aas.installRoot", installRoot.getAbsolutePath());
+        tokens.put("com.sun.aas.instanceRoot", domainDir.getAbsolutePath());
+        tokens.put("com.sun.aas.javaRoot", javaRoot.getAbsolutePath());
+        tokens.put("path.separator", File.pathSeparator);
+        tokens.put("file.separator", File.separator);
+        return tokens;
+    }
+
+    /**
+     * @return the option without its version range, or null if it doesn't apply to the JVM in use
+     */
+    private String getSupportedOption(String option) {
+        Matcher range = VERSION_RANGE.matcher(option);
+        if (!range.matches()) {
+            return option;
+        }
+        int[] version = parseVersion(getJavaVersion());
+        String min = range.group(1);
+        String max = range.group(2);
+        if (min.length() > 0 && compareVersions(version, parseVersion(min)) < 0) {
+            return null;
+        }
+        if (max.length() > 0 && compareVersions(version, parseVersion(max)) > 0) {
+            return null;
+        }
+        return range.group(3);
+    }
+
+    /**
+     * @return the version of the JDK launching the DAS, from its release file if it has one
+     */
+    private String getJavaVersion() {
+        File release = new File(javaHome, "release");
+        if (!release.isFile() && "jre".equals(javaHome.getName())) {
+            // the JRE of a JDK 8
+            release = new File(javaHome.getParentFile(), "release");
+        }
+        if (release.isFile()) {
+            try {
+                Properties properties = new Properties();
+                InputStream input = new FileInputStream(release);
+                try {
+                    properties.load(input);
+                } finally {
+                    input.close();
+                }
+                String version = properties.getProperty("JAVA_VERSION");
+                if (version != null) {
+                    return version.replace("\"", "");
+                }
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to read " + release, e);
+            }
+        }
+        return System.getProperty("java.version");
+    }
+
+    /**
+     * Parse versions like 1.8.0_191, 1.8.0u191 or 11.0.2
+     */
+    static int[] parseVersion(String version) {
+        String[] parts = version.split("[^0-9]+");
+        List<Integer> numbers = new ArrayList<Integer>();
+        for (String part : parts) {
+            if (part.length() > 0) {
+                numbers.add(Integer.valueOf(part));
+            }
+        }
+        int[] parsed = new int[numbers.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            parsed[i] = numbers.get(i);
+        }
+        return parsed;
+    }
+
+    /**
+     * Compare two versions on the components present in both, so 1.8 covers all the 1.8 updates
+     */
+    static int compareVersions(int[] version, int[] bound) {
+        for (int i = 0; i < version.length && i < bound.length; i++) {
+            if (version[i] != bound[i]) {
+                return version[i] < bound[i] ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static String resolve(String value, Map<String, String> tokens) {
+        Matcher token = TOKEN.matcher(value);
+        StringBuffer resolved = new StringBuffer();
+        while (token.find()) {
+            String replacement = tokens.get(token.group(1));
+            if (replacement == null) {
+                replacement = token.group();
+            }
+            token.appendReplacement(resolved, Matcher.quoteReplacement(replacement));
+        }
+        token.appendTail(resolved);
+        return resolved.toString();
+    }
+
+    private static Element readJavaConfig(File domainXml) throws IOException {
+        Document document;
+        try {
+            document = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(domainXml);
+        } catch (ParserConfigurationException e) {
+            throw new IOException("Unable to read " + domainXml + ": " + e.getMessage());
+        } catch (SAXException e) {
+            throw new IOException("Unable to read " + domainXml + ": " + e.getMessage());
+        }
+
+        NodeList configs = document.getElementsByTagName("config");
+        for (int i = 0; i < configs.getLength(); i++) {
+            Element config = (Element) configs.item(i);
+            if (SERVER_CONFIG.equals(config.getAttribute("name"))) {
+                List<Element> javaConfigs = getChildElements(config, "java-config");
+                if (!javaConfigs.isEmpty()) {
+                    return javaConfigs.get(0);
+                }
+            }
+        }
+        throw new IOException("No java-config of the " + SERVER_CONFIG + " in " + domainXml);
+    }
+
+    private static List<Element> getChildElements(Element parent, String name) {
+        List<Element> children = new ArrayList<Element>();
+        for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && name.equals(child.getNodeName())) {
+                children.add((Element) child);
+            }
+        }
+        return children;
+    }
+
+    private static List<String> getChildTexts(Element parent, String name) {
+        List<String> texts = new ArrayList<String>();
+        for (Element child : getChildElements(parent, name)) {
+            texts.add(child.getTextContent().trim());
+        }
+        return texts;
+    }
+
+    /**
+     * The configured domain, or the only domain of the installation like asadmin does, or domain1
+     */
+    private static String getDomainName(GlassFishManagedContainerConfiguration config) {
+        if (config.getDomain() != null) {
+            return config.getDomain();
+        }
+        File[] domains = new File(config.getGlassFishHome(), "glassfish/domains").listFiles();
+        if (domains != null) {
+            File onlyDomain = null;
+            for (File domain : domains) {
+                if (new File(domain, "config/domain.xml").isFile()) {
+                    if (onlyDomain != null) {
+                        return "domain1";
+                    }
+                    onlyDomain = domain;
+                }
+            }
+            if (onlyDomain != null) {
+                return onlyDomain.getName();
+            }
+        }
+        return "domain1";
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A warmed domain directory, its OSGi cache, generated classes and compiled pages already
+ * populated by a first start, cloned for each run and discarded afterwards.
+ * <p>
+ * The clone is made by the cp command with copy-on-write clones where the file system supports
+ * them, else copied file by file. Hard links are not used: the server writes to the files
+ * of its domain in place, so a hard linked clone would change the template.
+ */
+class DomainTemplate {
+
+    private static final Logger logger = Logger.getLogger(DomainTemplate.class.getName());
+
+    private final File template;
+
+    DomainTemplate(File template) {
+        this.template = template;
+    }
+
+    /**
+     * Choose the directory of the next clone, in a new temporary directory
+     *
+     * @return the directory of the clone, named after the template like the domain it holds
+     */
+    File createCloneDir() throws IOException {
+        File parent = File.createTempFile("arquillian-domain", "");
+        if (!parent.delete() || !parent.mkdir()) {
+            throw new IOException("Unable to create the directory " + parent);
+        }
+        return new File(parent, template.getName());
+    }
+
+    /**
+     * Clone the template, without the logs and the pid file of the run which warmed it
+     *
+     * @param clone
+     *     the directory of the clone, which must not exist
+     */
+    void cloneTo(File clone) throws IOException {
+        long start = System.currentTimeMillis();
+        String method = "cp";
+        if (!cloneWithCp(clone)) {
+            method = "copy";
+            delete(clone);
+            copy(template, clone);
+        }
+
+        delete(new File(clone, "logs"));
+        if (!new File(clone, "logs").mkdir()) {
+            throw new IOException("Unable to create the logs of " + clone);
+        }
+        delete(new File(clone, "config/pid"));
+        delete(new File(clone, "config/pid.prev"));
+
+        logger.log(Level.INFO, "Cloned the domain template {0} by {1} in {2} ms",
+            new Object[] {template, method, System.currentTimeMillis() - start});
+    }
+
+    /**
+     * Delete a file, or a directory with its content. A symbolic link is deleted without
+     * descending into its target, which may be out of the directory.
+     */
+    static void delete(File file) {
+        File[] children = isSymbolicLink(file) ? null : file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        // a dangling link doesn't exist, but is deleted
+        if (!file.delete() && file.exists()) {
+            logger.warning("Unable to delete " + file);
+        }
+    }
+
+    /**
+     * @return true if the file is a symbolic link, the canonical file of its parent holding another file
+     */
+    static boolean isSymbolicLink(File file) {
+        try {
+            File parent = file.getAbsoluteFile().getParentFile();
+            if (parent == null) {
+                return false;
+            }
+            File inCanonicalParent = new File(parent.getCanonicalFile(), file.getName());
+            return !inCanonicalParent.getCanonicalFile().equals(inCanonicalParent.getAbsoluteFile());
+        } catch (IOException e) {
+            // taken for a link, so its content is left rather than risking to delete out of the directory
+            logger.log(Level.FINE, "Unable to resolve " + file, e);
+            return true;
+        }
+    }
+
+    /**
+     * Clone the template with cp, asking for copy-on-write clones which cp falls back from
+     * when the file system doesn't support them
+     *
+     * @return true if cp cloned the template
+     */
+    private boolean cloneWithCp(File clone) {
+        List<String> cmd = new ArrayList<String>();
+        cmd.add("cp");
+        String os = System.getProperty("os.name").toLowerCase();
+        if (os.contains("linux")) {
+            cmd.add("-a");
+            cmd.add("--reflink=auto");
+        } else if (os.contains("mac")) {
+            // APFS clones
+            cmd.add("-Rpc");
+        } else {
+            return false;
+        }
+        cmd.add(template.getAbsolutePath());
+        cmd.add(clone.getAbsolutePath());
+
+        try {
+            Process process = new ProcessBuilder(cmd).redirectErrorStream(true).start();
+            InputStream output = process.getInputStream();
+            try {
+                byte[] buffer = new byte[1024];
+                while (output.read(buffer) != -1) {
+                    // discard
+                }
+            } finally {
+                output.close();
+            }
+            if (process.waitFor() == 0) {
+                return true;
+            }
+            logger.log(Level.FINE, "{0} failed, copying the domain template", cmd);
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Unable to run " + cmd + ", copying the domain template", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    static void copy(File source, File target) throws IOException {
+        if (source.isDirectory()) {
+            if (!target.mkdirs()) {
+                throw new IOException("Unable to create the directory " + target);
+            }
+            File[] children = source.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    copy(child, new File(target, child.getName()));
+                }
+            }
+        } else {
+            copyFile(source, target);
+            if (source.canExecute()) {
+                target.setExecutable(true);
+            }
+        }
+        target.setLastModified(source.lastModified());
+    }
+
+    private static void copyFile(File source, File target) throws IOException {
+        FileChannel input = new FileInputStream(source).getChannel();
+        try {
+            FileChannel output = new FileOutputStream(target).getChannel();
+            try {
+                long size = input.size();
+                long position = 0;
+                while (position < size) {
+                    position += input.transferTo(position, size - position, output);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
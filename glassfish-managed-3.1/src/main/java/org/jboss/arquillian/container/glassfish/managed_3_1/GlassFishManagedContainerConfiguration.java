@@ -44,6 +44,16 @@ public class GlassFishManagedContainerConfiguration extends CommonGlassFishConfi
 
     private boolean enableDerby = false;
 
+    private boolean asadminSession = false;
+
+    private boolean directLaunch = false;
+
+    private int startupTimeoutMs = 120000;
+
+    private boolean failOnStartupError = false;
+
+    private String domainTemplate = null;
+
     public String getGlassFishHome() {
         return glassFishHome;
     }
@@ -120,6 +130,74 @@ public class GlassFishManagedContainerConfiguration extends CommonGlassFishConfi
         this.enableDerby = enableDerby;
     }
 
+    public boolean isAsadminSession() {
+        return asadminSession;
+    }
+
+    /**
+     * @param asadminSession
+     *     Run the admin commands in a single asadmin process in multimode instead of starting
+     *     a JVM for each of them. By default disabled
+     */
+    public void setAsadminSession(boolean asadminSession) {
+        this.asadminSession = asadminSession;
+    }
+
+    public boolean isDirectLaunch() {
+        return directLaunch;
+    }
+
+    /**
+     * @param directLaunch
+     *     Launch the server JVM with the JVM options of the domain.xml instead of using
+     *     asadmin start-domain, and stop it by ending its process. Like asadmin, the JDK is
+     *     the java-home of the java-config, else the AS_JAVA of asenv.conf, else the JDK
+     *     running the tests. By default disabled
+     */
+    public void setDirectLaunch(boolean directLaunch) {
+        this.directLaunch = directLaunch;
+    }
+
+    public int getStartupTimeoutMs() {
+        return startupTimeoutMs;
+    }
+
+    /**
+     * @param startupTimeoutMs
+     *     The longest time to wait for the server to start, in milliseconds. Replaces the
+     *     retries, which the start no longer uses. By default 120000
+     */
+    public void setStartupTimeoutMs(int startupTimeoutMs) {
+        this.startupTimeoutMs = startupTimeoutMs;
+    }
+
+    public boolean isFailOnStartupError() {
+        return failOnStartupError;
+    }
+
+    /**
+     * @param failOnStartupError
+     *     Fail the start as soon as the server logs a SEVERE record before its startup completed,
+     *     instead of waiting for the server to answer. Some domains log harmless SEVERE records
+     *     while booting, so by default disabled
+     */
+    public void setFailOnStartupError(boolean failOnStartupError) {
+        this.failOnStartupError = failOnStartupError;
+    }
+
+    public String getDomainTemplate() {
+        return domainTemplate;
+    }
+
+    /**
+     * @param domainTemplate
+     *     The directory of a domain already started once, cloned for each run instead of
+     *     starting the configured domain, and deleted when the container stops
+     */
+    public void setDomainTemplate(String domainTemplate) {
+        this.domainTemplate = domainTemplate;
+    }
+
     @Override
     public String getTarget() {
         return GlassFishClient.ADMINSERVER;
@@ -145,6 +223,15 @@ public class GlassFishManagedContainerConfiguration extends CommonGlassFishConfi
                 "Invalid domain: " + getDomain());
         }
 
+        if (getDomainTemplate() != null) {
+            Validate.configurationDirectoryExists(getDomainTemplate() + "/config",
+                "Invalid domain template: " + getDomainTemplate());
+        }
+
+        if (getStartupTimeoutMs() <= 0) {
+            throw new ConfigurationException("startupTimeoutMs must be a positive number");
+        }
+
         super.validate();
     }
 }
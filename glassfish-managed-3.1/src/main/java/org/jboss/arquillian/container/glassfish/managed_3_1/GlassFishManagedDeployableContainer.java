@@ -17,6 +17,7 @@
 package org.jboss.arquillian.container.glassfish.managed_3_1;
 
 import org.jboss.arquillian.container.glassfish.CommonGlassFishManager;
+import org.jboss.arquillian.container.glassfish.clientutils.DASState;
 import org.jboss.arquillian.container.spi.client.container.DeployableContainer;
 import org.jboss.arquillian.container.spi.client.container.DeploymentException;
 import org.jboss.arquillian.container.spi.client.container.LifecycleException;
@@ -25,6 +26,9 @@ import org.jboss.arquillian.container.spi.client.protocol.metadata.ProtocolMetaD
 import org.jboss.shrinkwrap.api.Archive;
 import org.jboss.shrinkwrap.descriptor.api.Descriptor;
 
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 /**
  * Glassfish 3.1 managed container using REST deployments
  *
@@ -34,6 +38,10 @@ import org.jboss.shrinkwrap.descriptor.api.Descriptor;
  */
 public class GlassFishManagedDeployableContainer implements DeployableContainer<GlassFishManagedContainerConfiguration> {
 
+    private static final Logger logger = Logger.getLogger(GlassFishManagedDeployableContainer.class.getName());
+
+    private static final long MIN_PROBE_INTERVAL_MS = 10;
+
     private GlassFishManagedContainerConfiguration configuration;
     private GlassFishServerControl serverControl;
     private CommonGlassFishManager<GlassFishManagedContainerConfiguration> glassFishManager;
@@ -71,20 +79,68 @@ public class GlassFishManagedDeployableContainer implements DeployableContainer<
                     + "set allowConnectingToRunningServer to true in the container configuration");
             }
         } else {
-            serverControl.start();
-            int i = 0;
-            while (i < configuration.getRetries() && !glassFishManager.isDASRunning()) {
-                try {
-                    Thread.sleep(configuration.getWaitTimeMs());
-                } catch (InterruptedException ignore) {
-                }
-                i++;
+            long startTime = System.currentTimeMillis();
+            StartupMonitor monitor = new StartupMonitor(serverControl.getServerLog(),
+                configuration.isFailOnStartupError());
+            monitor.start();
+            try {
+                serverControl.start();
+                awaitStartup(monitor, startTime);
+            } finally {
+                monitor.close();
             }
+            String mode = configuration.isDirectLaunch() ? "direct launch" : "start-domain";
+            logger.log(Level.INFO, "GlassFish started in {0} ms using {1}",
+                new Object[] {System.currentTimeMillis() - startTime, mode});
             glassFishManager.start();
         }
     }
 
+    /**
+     * Wait for the REST management interface of the server to answer. The wait ends at once when the
+     * startup completed or a SEVERE record is logged, else the server is probed again with a growing interval.
+     */
+    private void awaitStartup(StartupMonitor monitor, long startTime) throws LifecycleException {
+        long deadline = startTime + configuration.getStartupTimeoutMs();
+        long interval = MIN_PROBE_INTERVAL_MS;
+        while (true) {
+            DASState state = glassFishManager.getDASState();
+            if (state == DASState.READY) {
+                return;
+            } else if (state == DASState.AUTH_FAILED) {
+                throw new LifecycleException("The server rejected the credentials of adminUser "
+                    + configuration.getAdminUser());
+            }
+            if (monitor.getFailure() != null) {
+                throw new LifecycleException("The server failed to start, see " + monitor.getServerLog() + ": "
+                    + monitor.getFailure());
+            }
+            if (!serverControl.isDomainProcessAlive()) {
+                throw new LifecycleException("The server process ended while starting");
+            }
+
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                throw new LifecycleException("The server did not start within "
+                    + configuration.getStartupTimeoutMs() + " ms");
+            }
+            try {
+                if (monitor.isStarted()) {
+                    // no event left to wait for, the management interface is loading
+                    Thread.sleep(Math.min(interval, remaining));
+                } else {
+                    monitor.await(Math.min(interval, remaining));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LifecycleException("Interrupted while waiting for the server to start", e);
+            }
+            interval = Math.min(interval * 2, Math.max(configuration.getWaitTimeMs(), MIN_PROBE_INTERVAL_MS));
+        }
+    }
+
     public void stop() throws LifecycleException {
+        glassFishManager.stop();
         if (!connectedToRunningServer) {
             serverControl.stop();
         }
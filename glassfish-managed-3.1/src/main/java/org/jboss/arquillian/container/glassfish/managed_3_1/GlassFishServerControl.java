@@ -21,6 +21,7 @@ import org.jboss.arquillian.container.spi.client.container.LifecycleException;
 
 import java.io.BufferedReader;
 import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -46,6 +47,13 @@ class GlassFishServerControl {
             +
             "https://issues.apache.org/jira/browse/DERBY-6438";
 
+    /**
+     * how long the server JVM launched directly is given to exit once destroyed
+     */
+    private static final long DESTROY_TIMEOUT_MS = 30000;
+
+    private static final long DESTROY_POLL_MS = 100;
+
     private static final List<String> NO_ARGS = new ArrayList<String>();
 
     private static final Logger logger = Logger.getLogger(GlassFishServerControl.class.getName());
@@ -54,22 +62,154 @@ class GlassFishServerControl {
 
     private Thread shutdownHook;
 
+    private AsadminSession asadminSession;
+
+    private boolean asadminSessionFailed;
+
+    private Process domainProcess;
+
+    private ConsoleReader domainOutputReader;
+
+    private DomainTemplate domainTemplate;
+
+    private File domainClone;
+
     GlassFishServerControl(GlassFishManagedContainerConfiguration config) {
         this.config = config;
+        if (config.getDomainTemplate() != null) {
+            this.domainTemplate = new DomainTemplate(new File(config.getDomainTemplate()));
+        }
     }
 
     void start() throws LifecycleException {
         registerShutdownHook();
 
+        if (domainTemplate != null) {
+            cloneDomainTemplate();
+        }
+
         if (config.isEnableDerby()) {
             startDerbyDatabase();
         }
 
+        if (config.isDirectLaunch()) {
+            launchDomain();
+            return;
+        }
+
         final List<String> args = new ArrayList<String>();
         if (config.isDebug()) {
             args.add("--debug");
         }
-        executeAdminDomainCommand("Starting container", "start-domain", args, createProcessOutputConsumer());
+        executeDomainCommand("Starting container", "start-domain", args, createProcessOutputConsumer());
+    }
+
+    /**
+     * @return true while the server JVM launched directly is running, or if the server was started by asadmin
+     */
+    boolean isDomainProcessAlive() {
+        if (domainProcess == null) {
+            return true;
+        }
+        try {
+            domainProcess.exitValue();
+            return false;
+        } catch (IllegalThreadStateException running) {
+            return true;
+        }
+    }
+
+    /**
+     * @return the server.log of the domain
+     */
+    File getServerLog() throws LifecycleException {
+        return new File(getDomainDir(), "logs/server.log");
+    }
+
+    /**
+     * @return the directory of the domain, or of the clone of the domain template
+     */
+    private File getDomainDir() throws LifecycleException {
+        if (domainTemplate == null) {
+            return DomainLauncher.getDomainDir(config);
+        }
+        if (domainClone == null) {
+            try {
+                domainClone = domainTemplate.createCloneDir();
+            } catch (IOException e) {
+                throw new LifecycleException("Unable to create the directory of the domain", e);
+            }
+        }
+        return domainClone;
+    }
+
+    private void cloneDomainTemplate() throws LifecycleException {
+        File clone = getDomainDir();
+        if (clone.exists()) {
+            return;
+        }
+        try {
+            domainTemplate.cloneTo(clone);
+        } catch (IOException e) {
+            discardDomainClone();
+            throw new LifecycleException("Unable to clone the domain template " + config.getDomainTemplate(), e);
+        }
+    }
+
+    private void discardDomainClone() {
+        if (domainClone != null) {
+            DomainTemplate.delete(domainClone.getParentFile());
+            domainClone = null;
+        }
+    }
+
+    private void launchDomain() throws LifecycleException {
+        File domainDir = getDomainDir();
+        List<String> cmd;
+        try {
+            cmd = new DomainLauncher(config, domainDir).buildCommand(config.isDebug());
+        } catch (IOException e) {
+            throw new LifecycleException("Unable to read the configuration of " + domainDir, e);
+        }
+
+        if (config.isOutputToConsole()) {
+            System.out.println("Starting container using command: " + cmd.toString());
+        }
+
+        try {
+            domainProcess = new ProcessBuilder(cmd).directory(new File(domainDir, "config"))
+                .redirectErrorStream(true)
+                .start();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Starting container failed.", e);
+            throw new LifecycleException("Unable to execute " + cmd.toString(), e);
+        }
+        // the output must be read for the server not to block on a full pipe
+        domainOutputReader = new ConsoleReader(domainProcess, createProcessOutputConsumer());
+        Thread readerThread = new Thread(domainOutputReader, "glassfish-domain-output");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void destroyDomain() throws LifecycleException {
+        try {
+            domainProcess.destroy();
+            long deadline = System.currentTimeMillis() + DESTROY_TIMEOUT_MS;
+            while (isDomainProcessAlive()) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new LifecycleException("The server JVM did not exit within " + DESTROY_TIMEOUT_MS
+                        + " ms of being destroyed");
+                }
+                Thread.sleep(DESTROY_POLL_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LifecycleException("Interrupted while stopping the container", e);
+        } finally {
+            domainOutputReader.close();
+            domainProcess = null;
+            domainOutputReader = null;
+        }
     }
 
     void stop() throws LifecycleException {
@@ -79,12 +219,21 @@ class GlassFishServerControl {
         } catch (LifecycleException failedStoppingContainer) {
             logger.log(Level.SEVERE, "Failed stopping container.", failedStoppingContainer);
         } finally {
-            stopDerbyDatabase();
+            try {
+                stopDerbyDatabase();
+            } finally {
+                closeAsadminSession();
+                discardDomainClone();
+            }
         }
     }
 
     private void stopContainer() throws LifecycleException {
-        executeAdminDomainCommand("Stopping container", "stop-domain", NO_ARGS, createProcessOutputConsumer());
+        if (domainProcess != null) {
+            destroyDomain();
+            return;
+        }
+        executeDomainCommand("Stopping container", "stop-domain", NO_ARGS, createProcessOutputConsumer());
     }
 
     private void startDerbyDatabase() throws LifecycleException {
@@ -121,6 +270,9 @@ class GlassFishServerControl {
                     stopDerbyDatabase();
                 } catch (LifecycleException e) {
                     logger.log(Level.SEVERE, "Failed stopping services through shutdown hook.", e);
+                } finally {
+                    closeAsadminSession();
+                    discardDomainClone();
                 }
             }
         });
@@ -129,14 +281,64 @@ class GlassFishServerControl {
 
     private void executeAdminDomainCommand(String description, String adminCmd, List<String> args,
         ProcessOutputConsumer consumer) throws LifecycleException {
+        List<String> domainArgs = new ArrayList<String>(args);
         if (config.getDomain() != null) {
-            args.add(config.getDomain());
+            domainArgs.add(config.getDomain());
         }
 
-        executeAdminCommand(description, adminCmd, args, consumer);
+        executeAdminCommand(description, adminCmd, domainArgs, consumer);
+    }
+
+    /**
+     * Execute start-domain or stop-domain, for the clone of the domain template if any
+     */
+    private void executeDomainCommand(String description, String adminCmd, List<String> args,
+        ProcessOutputConsumer consumer) throws LifecycleException {
+        if (domainClone == null) {
+            executeAdminDomainCommand(description, adminCmd, args, consumer);
+            return;
+        }
+
+        List<String> domainArgs = new ArrayList<String>(args);
+        domainArgs.add("--domaindir");
+        domainArgs.add(domainClone.getParent());
+        domainArgs.add(domainClone.getName());
+        executeAdminCommand(description, adminCmd, domainArgs, consumer);
     }
 
     private void executeAdminCommand(String description, String command, List<String> args,
+        ProcessOutputConsumer consumer) throws LifecycleException {
+        long start = System.currentTimeMillis();
+        AsadminSession session = getAsadminSession();
+        if (session != null) {
+            executeSessionCommand(session, description, command, args, consumer);
+        } else {
+            executeProcessCommand(description, command, args, consumer);
+        }
+        logger.log(Level.FINE, "{0} took {1} ms", new Object[] {description, System.currentTimeMillis() - start});
+    }
+
+    private void executeSessionCommand(AsadminSession session, String description, String command,
+        List<String> args, ProcessOutputConsumer consumer) throws LifecycleException {
+        if (config.isOutputToConsole()) {
+            System.out.println(description + " using asadmin session command: " + command + " " + args);
+        }
+
+        AsadminSession.Result result;
+        try {
+            result = session.execute(command, args, consumer);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, description + " failed.", e);
+            closeAsadminSession();
+            throw new LifecycleException("Unable to execute " + command + " " + args, e);
+        }
+
+        if (result.getExitCode() != 0) {
+            throw new LifecycleException("Unable to execute " + command + " " + args + ": " + result.getOutput());
+        }
+    }
+
+    private void executeProcessCommand(String description, String command, List<String> args,
         ProcessOutputConsumer consumer) throws LifecycleException {
         final List<String> cmd = buildCommand(command, args);
 
@@ -172,12 +374,48 @@ class GlassFishServerControl {
         }
     }
 
-    private List<String> buildCommand(String command, List<String> args) {
+    /**
+     * The asadmin session of the commands, started on first use when enabled. If it can't be
+     * started the commands fall back to a process of their own.
+     */
+    private synchronized AsadminSession getAsadminSession() {
+        if (!config.isAsadminSession() || asadminSessionFailed) {
+            return null;
+        }
+        if (asadminSession != null && !asadminSession.isAlive()) {
+            closeAsadminSession();
+        }
+        if (asadminSession == null) {
+            try {
+                // start-domain waits for the server to start, no command takes longer
+                asadminSession = new AsadminSession(buildAdminCliCommand(), config.getStartupTimeoutMs());
+            } catch (IOException e) {
+                logger.log(Level.WARNING,
+                    "Unable to start the asadmin session, running each command in its own process", e);
+                asadminSessionFailed = true;
+            }
+        }
+        return asadminSession;
+    }
+
+    private synchronized void closeAsadminSession() {
+        if (asadminSession != null) {
+            asadminSession.close();
+            asadminSession = null;
+        }
+    }
+
+    private List<String> buildAdminCliCommand() {
         List<String> cmd = new ArrayList<String>();
         cmd.add("java");
 
         cmd.add("-jar");
         cmd.add(config.getAdminCliJar().getAbsolutePath());
+        return cmd;
+    }
+
+    private List<String> buildCommand(String command, List<String> args) {
+        List<String> cmd = buildAdminCliCommand();
 
         cmd.add(command);
         cmd.addAll(args);
@@ -220,7 +458,7 @@ class GlassFishServerControl {
         }
     }
 
-    private interface ProcessOutputConsumer {
+    interface ProcessOutputConsumer {
 
         void consume(String line);
     }
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Follows the server.log of a starting domain, from its size when the monitor was created,
+ * for the record telling the startup completed and for the first SEVERE record logged before.
+ * The waiters of {@link #await(long)} are woken by either of them.
+ */
+class StartupMonitor implements Runnable, Closeable {
+
+    private static final Logger logger = Logger.getLogger(StartupMonitor.class.getName());
+
+    private static final long TAIL_INTERVAL_MS = 20;
+
+    /**
+     * the startup time record of GlassFish 3, or its message id in the ODL format of GlassFish 4
+     */
+    private static final Pattern STARTUP_COMPLETED = Pattern.compile("startup time :|NCLS-CORE-00017");
+
+    /**
+     * the level of the uniform log format, or the ODL format
+     */
+    private static final Pattern SEVERE = Pattern.compile("\\|SEVERE\\||\\[SEVERE\\]");
+
+    private final File serverLog;
+
+    private final boolean detectFailures;
+
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    private long position;
+
+    private volatile boolean closed;
+
+    private boolean started;
+
+    private String failure;
+
+    /**
+     * @param serverLog
+     *     the server.log of the domain
+     * @param detectFailures
+     *     report the SEVERE records
+     */
+    StartupMonitor(File serverLog, boolean detectFailures) {
+        this.serverLog = serverLog;
+        this.detectFailures = detectFailures;
+        this.position = serverLog.length();
+    }
+
+    File getServerLog() {
+        return serverLog;
+    }
+
+    /**
+     * Start following the server.log
+     */
+    void start() {
+        Thread tail = new Thread(this, "glassfish-startup-monitor");
+        tail.setDaemon(true);
+        tail.start();
+    }
+
+    public void run() {
+        while (!closed && !isStarted()) {
+            try {
+                readNewLines();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Unable to read " + serverLog, e);
+            }
+            try {
+                Thread.sleep(TAIL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true once the startup completed record was logged
+     */
+    synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * @return the SEVERE record logged before the startup completed, if any
+     */
+    synchronized String getFailure() {
+        return failure;
+    }
+
+    /**
+     * Wait for the startup to complete or to fail
+     *
+     * @param timeoutMs
+     *     the longest time to wait
+     */
+    synchronized void await(long timeoutMs) throws InterruptedException {
+        if (!started && failure == null) {
+            wait(timeoutMs);
+        }
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    private synchronized void inspect(String record) {
+        if (STARTUP_COMPLETED.matcher(record).find()) {
+            started = true;
+            notifyAll();
+        } else if (detectFailures && failure == null && SEVERE.matcher(record).find()) {
+            failure = record.trim();
+            notifyAll();
+        }
+    }
+
+    private void readNewLines() throws IOException {
+        long length = serverLog.length();
+        if (length < position) {
+            // rotated
+            position = 0;
+            line.reset();
+        }
+        if (length == position) {
+            return;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(serverLog, "r");
+        try {
+            file.seek(position);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = file.read(buffer)) > 0) {
+                position += read;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        inspect(line.toString("UTF-8"));
+                        line.reset();
+                    } else {
+                        line.write(buffer[i]);
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Runs the session against a shell script standing for asadmin multimode, which echoes each
+ * command line it reads before printing the status line of the command
+ */
+public class AsadminSessionTest {
+
+    private static final String FAKE_CLI = "#!/bin/sh\n"
+        + "while read -r line; do\n"
+        + "  printf '%s\\n' \"received: $line\"\n"
+        + "  case \"$line\" in\n"
+        + "    hang*) exec sleep 60 ;;\n"
+        + "    fail*) echo \"Command fail failed.\" ;;\n"
+        + "    exit*) exit 0 ;;\n"
+        + "    *) echo \"Command ${line%% *} executed successfully.\" ;;\n"
+        + "  esac\n"
+        + "done\n";
+
+    private static final long COMMAND_TIMEOUT_MS = 2000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AsadminSession session;
+
+    @Before
+    public void startSession() throws IOException {
+        assumeTrue(new File("/bin/sh").canExecute());
+        File script = temporaryFolder.newFile("asadmin");
+        OutputStream output = new FileOutputStream(script);
+        try {
+            output.write(FAKE_CLI.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        session = new AsadminSession(Arrays.asList("/bin/sh", script.getAbsolutePath()), COMMAND_TIMEOUT_MS);
+    }
+
+    @After
+    public void closeSession() {
+        if (session != null) {
+            session.close();
+        }
+    }
+
+    @Test
+    public void testCommandsRunInOneProcess() throws Exception {
+        RecordingConsumer consumer = new RecordingConsumer();
+        AsadminSession.Result result = session.execute("start-database", Collections.<String>emptyList(), consumer);
+
+        assertEquals(0, result.getExitCode());
+        assertEquals(Arrays.asList("received: start-database"), result.getOutput());
+        assertEquals(Arrays.asList("received: start-database", "Command start-database executed successfully."),
+            consumer.lines);
+
+        result = session.execute("stop-database", Collections.<String>emptyList(), new RecordingConsumer());
+        assertEquals(0, result.getExitCode());
+        assertTrue(session.isAlive());
+    }
+
+    @Test
+    public void testFailedCommand() throws Exception {
+        AsadminSession.Result result = session.execute("fail", Collections.<String>emptyList(),
+            new RecordingConsumer());
+
+        assertEquals(1, result.getExitCode());
+    }
+
+    @Test
+    public void testWindowsPathsEscaped() throws Exception {
+        AsadminSession.Result result = session.execute("start-domain",
+            Arrays.asList("--domaindir", "C:\\glassfish\\domains", "C:\\Program Files\\domains"),
+            new RecordingConsumer());
+
+        assertEquals(
+            "received: start-domain --domaindir C:\\\\glassfish\\\\domains \"C:\\\\Program Files\\\\domains\"",
+            result.getOutput().get(0));
+    }
+
+    @Test
+    public void testQuote() {
+        assertEquals("domain1", AsadminSession.quote("domain1"));
+        assertEquals("C:\\\\domains", AsadminSession.quote("C:\\domains"));
+        assertEquals("\"a b\"", AsadminSession.quote("a b"));
+        assertEquals("\"say \\\"hi\\\"\"", AsadminSession.quote("say \"hi\""));
+    }
+
+    @Test
+    public void testEndedSession() throws Exception {
+        try {
+            session.execute("exit", Collections.<String>emptyList(), new RecordingConsumer());
+            fail("the session ended");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("ended"));
+        }
+    }
+
+    @Test
+    public void testHangingCommandTimesOut() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            session.execute("hang", Collections.<String>emptyList(), new RecordingConsumer());
+            fail("the command timed out");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("did not complete within " + COMMAND_TIMEOUT_MS + " ms"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 10 * COMMAND_TIMEOUT_MS);
+        for (int i = 0; i < 50 && session.isAlive(); i++) {
+            Thread.sleep(100);
+        }
+        assertFalse("the session is ended", session.isAlive());
+    }
+
+    private static class RecordingConsumer implements GlassFishServerControl.ProcessOutputConsumer {
+
+        private final List<String> lines = new ArrayList<String>();
+
+        public void consume(String line) {
+            lines.add(line);
+        }
+    }
+}
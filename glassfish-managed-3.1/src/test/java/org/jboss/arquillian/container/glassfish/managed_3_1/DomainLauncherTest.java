@@ -0,0 +1,251 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds the command of the DAS of a fake installation, launched with a fake JDK of a given version
+ */
+public class DomainLauncherTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testGlassFish3Command() throws Exception {
+        File installRoot = createInstallation("domain-3.1.xml", "1.7.0_80");
+        File domainDir = new File(installRoot, "domains/domain1");
+        File jdk = new File(temporaryFolder.getRoot(), "jdk");
+
+        List<String> cmd = new DomainLauncher(createConfiguration(), domainDir).buildCommand(false);
+
+        assertEquals(new File(jdk, "bin/java").getAbsolutePath(), cmd.get(0));
+        assertEquals("-cp", cmd.get(1));
+        assertEquals(new File(installRoot, "modules/glassfish.jar").getAbsolutePath(), cmd.get(2));
+        assertTrue(cmd.contains("-XX:MaxPermSize=192m"));
+        assertTrue(cmd.contains("-Djava.endorsed.dirs=" + installRoot.getAbsolutePath() + "/modules/endorsed"
+            + File.pathSeparator + installRoot.getAbsolutePath() + "/lib/endorsed"));
+        assertTrue(cmd.contains("-Dcom.sun.aas.instanceRoot=" + domainDir.getAbsolutePath()));
+        assertTrue("the installRoot missing from the options is added",
+            cmd.contains("-Dcom.sun.aas.installRoot=" + installRoot.getAbsolutePath()));
+        assertTrue("the system properties of the config are resolved", cmd.contains("-Dosgi.shell.telnet.port=6666"));
+        assertFalse("the options of the other configs are left", cmd.contains("-Xmx256m"));
+        assertFalse(cmd.contains("-Xdebug"));
+
+        int main = cmd.indexOf("com.sun.enterprise.glassfish.bootstrap.ASMain");
+        assertEquals("domain1", cmd.get(cmd.indexOf("-domainname") + 1));
+        assertEquals(domainDir.getAbsolutePath(), cmd.get(cmd.indexOf("-domaindir") + 1));
+        assertTrue(main > 0 && main < cmd.indexOf("-domainname"));
+    }
+
+    @Test
+    public void testGlassFish3DebugCommand() throws Exception {
+        File installRoot = createInstallation("domain-3.1.xml", "1.7.0_80");
+
+        List<String> cmd = new DomainLauncher(createConfiguration(), new File(installRoot, "domains/domain1"))
+            .buildCommand(true);
+
+        int main = cmd.indexOf("com.sun.enterprise.glassfish.bootstrap.ASMain");
+        assertTrue(cmd.indexOf("-Xdebug") < main);
+        assertTrue(cmd.indexOf("-Xrunjdwp:transport=dt_socket,server=y,suspend=n,address=9009") < main);
+        assertEquals("true", cmd.get(cmd.indexOf("-debug") + 1));
+    }
+
+    @Test
+    public void testGlassFish5CommandWithEarlyJdk8() throws Exception {
+        File installRoot = createInstallation("domain-5.1.xml", "1.8.0_102");
+
+        List<String> cmd = new DomainLauncher(createConfiguration(), new File(installRoot, "domains/domain1"))
+            .buildCommand(false);
+
+        List<String> bootClasspath = getBootClasspathOptions(cmd);
+        assertEquals(1, bootClasspath.size());
+        assertTrue(bootClasspath.get(0).endsWith("/lib/grizzly-npn-bootstrap-1.6.jar"));
+        assertFalse(cmd.contains("--add-opens=java.base/jdk.internal.loader=ALL-UNNAMED"));
+    }
+
+    @Test
+    public void testGlassFish5CommandWithLateJdk8() throws Exception {
+        File installRoot = createInstallation("domain-5.1.xml", "1.8.0_191");
+        File jdk = new File(temporaryFolder.getRoot(), "jdk");
+
+        List<String> cmd = new DomainLauncher(createConfiguration(), new File(installRoot, "domains/domain1"))
+            .buildCommand(false);
+
+        List<String> bootClasspath = getBootClasspathOptions(cmd);
+        assertEquals(1, bootClasspath.size());
+        assertEquals("-Xbootclasspath/p:" + installRoot.getAbsolutePath() + "/lib/grizzly-npn-bootstrap-1.8.1.jar",
+            bootClasspath.get(0));
+        assertTrue(cmd.contains("-Djava.ext.dirs=" + jdk.getAbsolutePath() + "/lib/ext" + File.pathSeparator
+            + jdk.getAbsolutePath() + "/jre/lib/ext"));
+        assertFalse(cmd.contains("--add-opens=java.base/jdk.internal.loader=ALL-UNNAMED"));
+        assertEquals("the installRoot of the options is not repeated", 1,
+            countOptions(cmd, "-Dcom.sun.aas.installRoot="));
+    }
+
+    @Test
+    public void testGlassFish5CommandWithJdk11() throws Exception {
+        File installRoot = createInstallation("domain-5.1.xml", "11.0.2");
+
+        List<String> cmd = new DomainLauncher(createConfiguration(), new File(installRoot, "domains/domain1"))
+            .buildCommand(false);
+
+        assertTrue(getBootClasspathOptions(cmd).isEmpty());
+        assertEquals(0, countOptions(cmd, "-Djava.ext.dirs="));
+        assertTrue(cmd.contains("--add-opens=java.base/jdk.internal.loader=ALL-UNNAMED"));
+    }
+
+    @Test
+    public void testParseVersion() {
+        assertVersion("1.8.0_191", 1, 8, 0, 191);
+        assertVersion("1.8.0u120", 1, 8, 0, 120);
+        assertVersion("11.0.2", 11, 0, 2);
+        assertVersion("9", 9);
+        assertVersion("1.8.0_191-b12", 1, 8, 0, 191, 12);
+    }
+
+    @Test
+    public void testCompareVersions() {
+        assertEquals(0, compare("1.8.0_191", "1.8"));
+        assertEquals(0, compare("1.8.0_191", "1.8.0u191"));
+        assertEquals(1, compare("1.8.0_191", "1.8.0u120"));
+        assertEquals(-1, compare("1.8.0_102", "1.8.0u121"));
+        assertEquals(1, compare("11.0.2", "9"));
+        assertEquals(-1, compare("1.8.0_191", "9"));
+        assertEquals("a bound of no component matches any version", 0, compare("1.8.0_191", ""));
+    }
+
+    @Test
+    public void testAsJavaOfAsenvConf() {
+        assertEquals("/usr/lib/jvm/java-8", DomainLauncher.parseAsJava("AS_JAVA=\"/usr/lib/jvm/java-8\""));
+        assertEquals("/usr/lib/jvm/java-8", DomainLauncher.parseAsJava("  AS_JAVA = /usr/lib/jvm/java-8 "));
+        assertEquals("../../jdk8", DomainLauncher.parseAsJava("AS_JAVA=\"../../jdk8\""));
+        assertNull("an empty AS_JAVA is ignored", DomainLauncher.parseAsJava("AS_JAVA=\"\""));
+        assertNull(DomainLauncher.parseAsJava("AS_DEF_DOMAINS_PATH=\"../domains\""));
+        assertNull(DomainLauncher.parseAsJava("#AS_JAVA=\"/usr/lib/jvm/java-8\""));
+    }
+
+    @Test
+    public void testAsJavaOfAsenvBat() {
+        assertEquals("C:\\Program Files\\Java\\jdk1.8.0_191",
+            DomainLauncher.parseAsJava("set AS_JAVA=C:\\Program Files\\Java\\jdk1.8.0_191"));
+        assertEquals("C:\\jdk8", DomainLauncher.parseAsJava("set AS_JAVA=\"C:\\jdk8\""));
+        assertEquals("..\\..\\jdk8", DomainLauncher.parseAsJava("  set  AS_JAVA=..\\..\\jdk8"));
+        assertNull(DomainLauncher.parseAsJava("set AS_DEF_DOMAINS_PATH=..\\domains"));
+        assertNull(DomainLauncher.parseAsJava("REM set AS_JAVA=C:\\jdk8"));
+    }
+
+    /**
+     * Create an installation holding the domain1 of the given domain.xml, whose asenv configuration
+     * points to a JDK of the given version
+     *
+     * @return the install root of the installation
+     */
+    private File createInstallation(String domainXml, String javaVersion) throws IOException {
+        File jdk = temporaryFolder.newFolder("jdk");
+        assertTrue(new File(jdk, "bin").mkdirs());
+        assertTrue(new File(jdk, "bin/java").createNewFile());
+        write(new File(jdk, "release"), "JAVA_VERSION=\"" + javaVersion + "\"\n");
+
+        File installRoot = new File(temporaryFolder.getRoot(), "glassfish/glassfish");
+        assertTrue(new File(installRoot, "config").mkdirs());
+        write(new File(installRoot, "config/asenv.conf"), "AS_JAVA=\"" + jdk.getAbsolutePath() + "\"\n");
+        write(new File(installRoot, "config/asenv.bat"), "set AS_JAVA=" + jdk.getAbsolutePath() + "\r\n");
+
+        File config = new File(installRoot, "domains/domain1/config");
+        assertTrue(config.mkdirs());
+        InputStream input = getClass().getClassLoader().getResourceAsStream(domainXml);
+        try {
+            OutputStream output = new FileOutputStream(new File(config, "domain.xml"));
+            try {
+                byte[] buffer = new byte[8192];
+                for (int read = input.read(buffer); read != -1; read = input.read(buffer)) {
+                    output.write(buffer, 0, read);
+                }
+            } finally {
+                output.close();
+            }
+        } finally {
+            input.close();
+        }
+        return installRoot;
+    }
+
+    private GlassFishManagedContainerConfiguration createConfiguration() {
+        GlassFishManagedContainerConfiguration configuration = new GlassFishManagedContainerConfiguration();
+        configuration.setGlassFishHome(new File(temporaryFolder.getRoot(), "glassfish").getAbsolutePath());
+        return configuration;
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private static List<String> getBootClasspathOptions(List<String> cmd) {
+        List<String> options = new ArrayList<String>();
+        for (String option : cmd) {
+            if (option.startsWith("-Xbootclasspath/p:")) {
+                options.add(option);
+            }
+        }
+        return options;
+    }
+
+    private static int countOptions(List<String> cmd, String prefix) {
+        int count = 0;
+        for (String option : cmd) {
+            if (option.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void assertVersion(String version, int... expected) {
+        int[] parsed = DomainLauncher.parseVersion(version);
+        assertEquals(version, expected.length, parsed.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(version, expected[i], parsed[i]);
+        }
+    }
+
+    private static int compare(String version, String bound) {
+        return DomainLauncher.compareVersions(DomainLauncher.parseVersion(version), DomainLauncher.parseVersion(bound));
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2011, Red Hat Middleware LLC, and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.jboss.arquillian.container.glassfish.managed_3_1;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class DomainTemplateTest {
+
+    private static final long OLD_TIMESTAMP = 946684800000L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File template;
+
+    @Before
+    public void createTemplate() throws IOException {
+        template = temporaryFolder.newFolder("domain1");
+        write(new File(template, "config/domain.xml"), "<domain/>");
+        write(new File(template, "config/pid"), "1234");
+        write(new File(template, "config/pid.prev"), "1233");
+        write(new File(template, "logs/server.log"), "started");
+        write(new File(template, "osgi-cache/felix/bundle0/bundle.info"), "cached");
+        File asadmin = new File(template, "bin/asadmin");
+        write(asadmin, "#!/bin/sh");
+        assertTrue(asadmin.setExecutable(true));
+        assertTrue(new File(template, "config/domain.xml").setLastModified(OLD_TIMESTAMP));
+    }
+
+    @Test
+    public void testCloneWithoutLogsAndPid() throws Exception {
+        File clone = new File(temporaryFolder.newFolder("clones"), "domain1");
+        new DomainTemplate(template).cloneTo(clone);
+
+        assertEquals("<domain/>", read(new File(clone, "config/domain.xml")));
+        assertEquals("cached", read(new File(clone, "osgi-cache/felix/bundle0/bundle.info")));
+        assertFalse(new File(clone, "config/pid").exists());
+        assertFalse(new File(clone, "config/pid.prev").exists());
+        assertTrue(new File(clone, "logs").isDirectory());
+        assertEquals(0, new File(clone, "logs").list().length);
+        assertTrue("the template is left as it was", new File(template, "config/pid").isFile());
+    }
+
+    @Test
+    public void testCloneIsIndependentOfTemplate() throws Exception {
+        File clone = new File(temporaryFolder.newFolder("clones"), "domain1");
+        new DomainTemplate(template).cloneTo(clone);
+
+        write(new File(clone, "config/domain.xml"), "<domain changed=\"true\"/>");
+        assertEquals("<domain/>", read(new File(template, "config/domain.xml")));
+    }
+
+    @Test
+    public void testCopy() throws Exception {
+        File copy = new File(temporaryFolder.getRoot(), "copy");
+        DomainTemplate.copy(template, copy);
+
+        assertEquals("<domain/>", read(new File(copy, "config/domain.xml")));
+        assertEquals("started", read(new File(copy, "logs/server.log")));
+        assertEquals(OLD_TIMESTAMP, new File(copy, "config/domain.xml").lastModified());
+        assertTrue(new File(copy, "bin/asadmin").canExecute());
+    }
+
+    @Test
+    public void testDeleteLeavesTargetOfSymbolicLink() throws Exception {
+        File outside = temporaryFolder.newFolder("outside");
+        write(new File(outside, "keep.txt"), "keep");
+        File link = new File(template, "lib");
+        assumeTrue(createSymbolicLink(link, outside));
+
+        assertTrue(DomainTemplate.isSymbolicLink(link));
+        assertFalse(DomainTemplate.isSymbolicLink(new File(template, "config")));
+        DomainTemplate.delete(template);
+
+        assertFalse(template.exists());
+        assertTrue(new File(outside, "keep.txt").isFile());
+    }
+
+    @Test
+    public void testDeleteDanglingSymbolicLink() throws Exception {
+        File link = new File(template, "dangling");
+        assumeTrue(createSymbolicLink(link, new File(temporaryFolder.getRoot(), "missing")));
+
+        DomainTemplate.delete(template);
+        assertFalse(template.exists());
+    }
+
+    private static boolean createSymbolicLink(File link, File target) throws InterruptedException {
+        try {
+            Process process = new ProcessBuilder("ln", "-s", target.getAbsolutePath(), link.getAbsolutePath())
+                .redirectErrorStream(true).start();
+            return process.waitFor() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return reader.readLine();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -59,7 +59,7 @@ public class GlassFishRestDeployableContainer implements DeployableContainer<Gla
     }
 
     public void stop() throws LifecycleException {
-        //To change body of implemented methods use File | Settings | File Templates.
+        glassFishManager.stop();
     }
 
     public ProtocolDescription getDefaultProtocol() {